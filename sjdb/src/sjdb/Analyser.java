@@ -0,0 +1,481 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class computes the statistics of named relations from their tuples
+ * in a Database, and writes them into the Catalogue in place of those it
+ * held (ANALYZE). Each relation is read once, and for each attribute the
+ * analyser finds:
+ *
+ * - the number of distinct values, estimated with a HyperLogLog sketch
+ * - the average width of the values in bytes, as UTF-8
+ * - optionally, the most common values, found with the Misra-Gries
+ *   summary, and an equi-depth histogram over the other values, built from
+ *   a reservoir sample of the tuples
+ *
+ * The memory used for each attribute is bounded by the sizes of these
+ * sketches, however many tuples there are. Each relation is read in parts
+ * (see Database.scanPart()) on a pool of threads; each part is summarised
+ * separately, and the summaries of the parts are then merged, so the
+ * parts can be read in any order. The sample of each part is weighted by
+ * the number of tuples it stands for when the histogram is built.
+ *
+ * The most common values found by the summary are counts that may be too
+ * low by at most the number of tuples divided by the size of the summary,
+ * and a value is only kept if it is more common than the average value by
+ * a margin. The statistics of all the relations analysed are published
+ * in the catalogue together; attributes keep their indexes, but lose any
+ * synopsis that was not computed.
+ */
+public class Analyser {
+	public static final int DEFAULT_MOST_COMMON = 10;
+	public static final int DEFAULT_BUCKETS = 20;
+	public static final int DEFAULT_SAMPLE = 10000; //tuples sampled from each part
+
+	private static final double COMMON_MARGIN = 1.25; //how much more common than average a most common value must be
+	private static final int MIN_SUMMARY = 1024; //the fewest counters in a Misra-Gries summary
+
+	private final Database database;
+	private int threads = 1;
+	private int mostCommon = DEFAULT_MOST_COMMON;
+	private int buckets = DEFAULT_BUCKETS;
+	private int sampleSize = DEFAULT_SAMPLE;
+
+	/**
+	 * Create a new analyser
+	 * @param database Database that holds the tuples of the relations
+	 */
+	public Analyser(Database database) {
+		this.database = database;
+	}
+
+	/**
+	 * Set the number of threads that read the relations; each relation is
+	 * read in that many parts
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(threads, 1);
+	}
+
+	/**
+	 * Set the size of the synopses of the attributes
+	 * @param mostCommon Most common values to find for each attribute, or 0 for none
+	 * @param buckets Buckets of the histogram of each attribute, or 0 for none
+	 */
+	public void setSynopsis(int mostCommon, int buckets) {
+		this.mostCommon = Math.max(mostCommon, 0);
+		this.buckets = (buckets < 2) ? 0 : buckets;
+	}
+
+	/**
+	 * Set the number of tuples sampled from each part of a relation to
+	 * build the histograms
+	 * @param sampleSize
+	 */
+	public void setSampleSize(int sampleSize) {
+		this.sampleSize = Math.max(sampleSize, 1);
+	}
+
+	/**
+	 * Analyse every relation of a catalogue that has tuples in the database
+	 * @param catalogue
+	 * @return the number of relations analysed
+	 * @throws DatabaseException if the tuples of a relation cannot be read
+	 */
+	public int analyseAll(Catalogue catalogue) throws DatabaseException {
+		List<NamedRelation> relations = new ArrayList<NamedRelation>();
+		for (NamedRelation reln : catalogue.getRelations()) {
+			if (database.hasTuples(reln)) {
+				relations.add(reln);
+			}
+		}
+		analyse(catalogue, relations);
+		return relations.size();
+	}
+
+	/**
+	 * Analyse some relations of a catalogue
+	 * @param catalogue
+	 * @param relations
+	 * @throws DatabaseException if the tuples of a relation cannot be read
+	 */
+	public void analyse(Catalogue catalogue, List<NamedRelation> relations) throws DatabaseException {
+		// every part of every relation is summarised at once
+		List<Part> parts = new ArrayList<Part>();
+		for (NamedRelation reln : relations) {
+			for (int i = 0; i < threads; i++) {
+				parts.add(new Part(reln, i, threads));
+			}
+		}
+		List<Summary> summaries = summarise(parts);
+
+		List<NamedRelation> analysed = new ArrayList<NamedRelation>();
+		for (int r = 0; r < relations.size(); r++) {
+			Summary summary = summaries.get(r * threads);
+			for (int i = 1; i < threads; i++) {
+				summary.merge(summaries.get(r * threads + i));
+			}
+			analysed.add(statistics(relations.get(r), summary));
+		}
+
+		// the statistics are published together
+		catalogue.update(batch -> {
+			for (NamedRelation reln : analysed) {
+				batch.updateTupleCount(reln.toString(), reln.getTupleCount());
+				for (Attribute attr : reln.getAttributes()) {
+					batch.updateAttribute(reln.toString(), attr);
+				}
+			}
+		});
+	}
+
+	/**
+	 * summarises the parts, on a pool of threads if there is more than one
+	 */
+	private List<Summary> summarise(List<Part> parts) throws DatabaseException {
+		List<Summary> summaries = new ArrayList<Summary>();
+		if (threads == 1) {
+			for (Part part : parts) {
+				summaries.add(part.call());
+			}
+			return summaries;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Summary>> results = new ArrayList<Future<Summary>>();
+			for (Part part : parts) {
+				results.add(executor.submit(part));
+			}
+			for (Future<Summary> result : results) {
+				summaries.add(result.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseException("Interrupted while analysing", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof DatabaseException) {
+				throw (DatabaseException) e.getCause();
+			}
+			throw new DatabaseException("Failed to analyse", e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+		return summaries;
+	}
+
+	/**
+	 * computes the statistics of a relation from the summary of its tuples,
+	 * as a copy of the relation
+	 */
+	private NamedRelation statistics(NamedRelation reln, Summary summary) {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < summary.columns.length; i++) {
+			Attribute old = reln.getSchema().getAttributes().get(i);
+			Column column = summary.columns[i];
+
+			long values = Math.min(Math.max(column.distinct.estimate(), (summary.tuples > 0) ? 1 : 0), summary.tuples);
+			int width = (summary.tuples == 0) ? 0 : (int) Math.max(1, Math.round((double) column.bytes / summary.tuples));
+			Map<String, Double> mcvs = mostCommonValues(column, summary.tuples, values);
+			Histogram histogram = histogram(column, mcvs);
+			attributes.add(new Attribute(old.getName(), values, mcvs, histogram, width, old.isIndexed()));
+		}
+		return new NamedRelation(reln.toString(), summary.tuples, new Schema(attributes), reln.getVersion(),
+				reln.getPageCount());
+	}
+
+	/**
+	 * chooses the most common values from the counters of a summary
+	 */
+	private Map<String, Double> mostCommonValues(Column column, long tuples, long values) {
+		Map<String, Double> mcvs = new LinkedHashMap<String, Double>();
+		if (column.counters == null || tuples == 0) {
+			return mcvs;
+		}
+
+		List<Counter> counters = new ArrayList<Counter>(column.counters.values());
+		Collections.sort(counters, new Comparator<Counter>() {
+			public int compare(Counter a, Counter b) {
+				return Long.compare(b.count, a.count);
+			}
+		});
+		double threshold = Math.max(COMMON_MARGIN * tuples / Math.max(values, 1), 1);
+		for (Counter c : counters) {
+			if (mcvs.size() == mostCommon || c.count <= threshold) {
+				break;
+			}
+			mcvs.put(c.value, (double) c.count / tuples);
+		}
+		return mcvs;
+	}
+
+	/**
+	 * builds an equi-depth histogram from the weighted samples of the
+	 * values that are not most common values
+	 */
+	private Histogram histogram(Column column, Map<String, Double> mcvs) {
+		if (buckets == 0) {
+			return null;
+		}
+
+		Set<Object> common = new HashSet<Object>();
+		for (String value : mcvs.keySet()) {
+			common.add(ValueComparator.key(value));
+		}
+		List<Sample> samples = new ArrayList<Sample>();
+		double total = 0;
+		for (Sample s : column.samples) {
+			if (!common.contains(ValueComparator.key(s.value))) {
+				samples.add(s);
+				total += s.weight;
+			}
+		}
+		if (samples.size() < 2) {
+			return null;
+		}
+		Collections.sort(samples, new Comparator<Sample>() {
+			public int compare(Sample a, Sample b) {
+				return ValueComparator.KEY_ORDER.compare(ValueComparator.key(a.value), ValueComparator.key(b.value));
+			}
+		});
+
+		// each bound is the first value at which the running weight reaches its share of the total
+		int n = Math.min(buckets, samples.size() - 1);
+		List<String> bounds = new ArrayList<String>();
+		bounds.add(samples.get(0).value);
+		double seen = 0;
+		int next = 1;
+		for (Sample s : samples) {
+			seen += s.weight;
+			while (next < n && seen >= total * next / n) {
+				bounds.add(s.value);
+				next++;
+			}
+		}
+		bounds.add(samples.get(samples.size() - 1).value);
+
+		try {
+			return new Histogram(bounds);
+		} catch (IllegalArgumentException e) {
+			// numbers and other values are not ordered consistently by ValueComparator
+			return null;
+		}
+	}
+
+	/**
+	 * A part of a relation to summarise
+	 */
+	private final class Part implements Callable<Summary> {
+		private final NamedRelation reln;
+		private final int part;
+		private final int parts;
+
+		private Part(NamedRelation reln, int part, int parts) {
+			this.reln = reln;
+			this.part = part;
+			this.parts = parts;
+		}
+
+		@Override
+		public Summary call() throws DatabaseException {
+			Summary summary = new Summary(reln.getSchema().size(), part);
+			database.scanPart(reln, part, parts, summary::add);
+			summary.finish();
+			return summary;
+		}
+	}
+
+	/**
+	 * The summary of the tuples of (a part of) a relation
+	 */
+	private final class Summary {
+		private final Column[] columns;
+		private final Random random;
+		private long tuples;
+
+		private Summary(int arity, int seed) {
+			this.columns = new Column[arity];
+			for (int i = 0; i < arity; i++) {
+				columns[i] = new Column();
+			}
+			// seeded so that the same data gives the same statistics
+			this.random = new Random(seed);
+		}
+
+		private void add(Tuple t) {
+			tuples++;
+			// algorithm R: the tuple replaces a random sample with probability size/tuples
+			long slot = (tuples <= sampleSize) ? tuples - 1 : (long) (random.nextDouble() * tuples);
+			for (int i = 0; i < columns.length; i++) {
+				String value = t.get(i);
+				Column column = columns[i];
+				column.distinct.add(value);
+				column.bytes += utf8Length(value);
+				if (column.counters != null) {
+					column.count(value);
+				}
+				if (buckets > 0 && slot < sampleSize) {
+					if (slot == column.samples.size()) {
+						column.samples.add(new Sample(value));
+					} else {
+						column.samples.get((int) slot).value = value;
+					}
+				}
+			}
+		}
+
+		/**
+		 * weights the samples by the number of tuples each stands for
+		 */
+		private void finish() {
+			for (Column column : columns) {
+				for (Sample s : column.samples) {
+					s.weight = (double) tuples / column.samples.size();
+				}
+			}
+		}
+
+		private void merge(Summary other) {
+			tuples += other.tuples;
+			for (int i = 0; i < columns.length; i++) {
+				columns[i].merge(other.columns[i]);
+			}
+		}
+	}
+
+	/**
+	 * The sketches of the values of an attribute
+	 */
+	private final class Column {
+		private final HyperLogLog distinct = new HyperLogLog();
+		private final Map<Object, Counter> counters; //keyed by ValueComparator.key(); null if no most common values are wanted
+		private final int capacity;
+		private final List<Sample> samples = new ArrayList<Sample>();
+		private long bytes;
+
+		private Column() {
+			this.capacity = Math.max(MIN_SUMMARY, 100 * mostCommon);
+			this.counters = (mostCommon > 0) ? new HashMap<Object, Counter>() : null;
+		}
+
+		/**
+		 * counts a value in the Misra-Gries summary: when every counter is
+		 * in use by another value, all of them are decremented instead
+		 */
+		private void count(String value) {
+			Object key = ValueComparator.key(value);
+			Counter c = counters.get(key);
+			if (c != null) {
+				c.count++;
+			} else if (counters.size() < capacity) {
+				counters.put(key, new Counter(value, 1));
+			} else {
+				decrement(1);
+			}
+		}
+
+		/**
+		 * subtracts from every counter, removing those that reach zero
+		 */
+		private void decrement(long n) {
+			Iterator<Counter> it = counters.values().iterator();
+			while (it.hasNext()) {
+				Counter c = it.next();
+				c.count -= n;
+				if (c.count <= 0) {
+					it.remove();
+				}
+			}
+		}
+
+		private void merge(Column other) {
+			distinct.merge(other.distinct);
+			bytes += other.bytes;
+			samples.addAll(other.samples);
+
+			if (counters != null) {
+				// the counts are added, and then reduced by the count of the first counter that does not fit
+				for (Map.Entry<Object, Counter> e : other.counters.entrySet()) {
+					Counter c = counters.get(e.getKey());
+					if (c == null) {
+						counters.put(e.getKey(), new Counter(e.getValue().value, e.getValue().count));
+					} else {
+						c.count += e.getValue().count;
+					}
+				}
+				if (counters.size() > capacity) {
+					List<Long> counts = new ArrayList<Long>();
+					for (Counter c : counters.values()) {
+						counts.add(c.count);
+					}
+					Collections.sort(counts, Collections.reverseOrder());
+					decrement(counts.get(capacity));
+				}
+			}
+		}
+	}
+
+	/**
+	 * A counter of a Misra-Gries summary
+	 */
+	private static final class Counter {
+		private final String value; //the first spelling of the value counted
+		private long count;
+
+		private Counter(String value, long count) {
+			this.value = value;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * A value in a reservoir sample, weighted by the number of tuples it stands for
+	 */
+	private static final class Sample {
+		private String value;
+		private double weight;
+
+		private Sample(String value) {
+			this.value = value;
+		}
+	}
+
+	/**
+	 * returns the number of bytes of a value in UTF-8
+	 */
+	private static int utf8Length(String value) {
+		int n = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				n += 1;
+			} else if (c < 0x800) {
+				n += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				n += 4;
+				i++;
+			} else {
+				n += 3;
+			}
+		}
+		return n;
+	}
+}
@@ -3,14 +3,31 @@
  */
 package sjdb;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
+ * An attribute has a name and a number of distinct values, and may also
+ * have a synopsis of how its values are distributed: a list of its most
+ * common values, each with the fraction of the tuples that take it, and
+ * an equi-depth histogram over the remaining values. The catalogue may
+ * also give the average width of its values, which the CostModel uses to
+ * work out how many tuples fit in a page, and declare a B+-tree index on
+ * the attribute (see BPlusTree), which the optimiser may use to select
+ * tuples or to join them.
+ * 
  * @author nmg
  *
  */
 public class Attribute {
 
 	private String name;
-	private int values;
+	private long values;
+	private Map<String, Double> mostCommonValues = Collections.emptyMap();
+	private Histogram histogram;
+	private int width; //average width of the values in bytes, or 0 if not known
+	private boolean indexed;
 
 	public Attribute(String name) {
 		this.name = name;
@@ -20,14 +37,67 @@ public class Attribute {
 	 * @param name
 	 * @param values
 	 */
-	public Attribute(String name, int values) {
+	public Attribute(String name, long values) {
+		this.name = name;
+		this.values = values;
+	}
+	
+	/**
+	 * @param name
+	 * @param values
+	 * @param mostCommonValues Most common values, with the fraction of the tuples that take each
+	 * @param histogram Histogram over the values that are not most common values, or null
+	 */
+	public Attribute(String name, long values, Map<String, Double> mostCommonValues, Histogram histogram) {
+		this(name, values, mostCommonValues, histogram, 0);
+	}
+	
+	/**
+	 * @param name
+	 * @param values
+	 * @param mostCommonValues Most common values, with the fraction of the tuples that take each
+	 * @param histogram Histogram over the values that are not most common values, or null
+	 * @param width Average width of the values in bytes, or 0 if not known
+	 */
+	public Attribute(String name, long values, Map<String, Double> mostCommonValues, Histogram histogram, int width) {
+		this(name, values, mostCommonValues, histogram, width, false);
+	}
+	
+	/**
+	 * @param name
+	 * @param values
+	 * @param mostCommonValues Most common values, with the fraction of the tuples that take each
+	 * @param histogram Histogram over the values that are not most common values, or null
+	 * @param width Average width of the values in bytes, or 0 if not known
+	 * @param indexed Whether the attribute has an index
+	 */
+	public Attribute(String name, long values, Map<String, Double> mostCommonValues, Histogram histogram, int width,
+			boolean indexed) {
 		this.name = name;
 		this.values = values;
+		this.mostCommonValues = Collections.unmodifiableMap(new LinkedHashMap<String, Double>(mostCommonValues));
+		this.histogram = histogram;
+		this.width = width;
+		this.indexed = indexed;
 	}
 	
 	public Attribute(Attribute attr) {
+		this(attr, attr.values);
+	}
+	
+	/**
+	 * Copy an attribute, with its synopsis, width and index, but with a
+	 * different number of distinct values
+	 * @param attr
+	 * @param values
+	 */
+	public Attribute(Attribute attr, long values) {
 		this.name = attr.name;
-		this.values = attr.values;
+		this.values = values;
+		this.mostCommonValues = attr.mostCommonValues;
+		this.histogram = attr.histogram;
+		this.width = attr.width;
+		this.indexed = attr.indexed;
 	}
 	
 	/**
@@ -40,10 +110,48 @@ public class Attribute {
 	/**
 	 * @return the number of distinct values taken by this attribute
 	 */
-	public int getValueCount() {
+	public long getValueCount() {
 		return values;
 	}
 	
+	/**
+	 * @return the most common values of this attribute, with the fraction of
+	 * the tuples that take each; empty if there are none
+	 */
+	public Map<String, Double> getMostCommonValues() {
+		return mostCommonValues;
+	}
+	
+	/**
+	 * @return the histogram over the values that are not most common values,
+	 * or null if there is none
+	 */
+	public Histogram getHistogram() {
+		return histogram;
+	}
+	
+	/**
+	 * @return the average width of the values of this attribute in bytes,
+	 * or 0 if it is not known
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * @return true if the catalogue declares an index on this attribute
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+	
+	/**
+	 * @return true if this attribute has most common values or a histogram
+	 */
+	public boolean hasSynopsis() {
+		return !mostCommonValues.isEmpty() || histogram != null;
+	}
+	
 	
 	@Override
 	public int hashCode() {
@@ -0,0 +1,353 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class is a B+-tree index on an attribute of a named relation, which
+ * maps each value of the attribute to the RecordIds of the tuples that
+ * take it. The values are held as the keys of ValueComparator.key(), in
+ * ValueComparator.KEY_ORDER: numbers in numeric order, then other values.
+ *
+ * Each node holds at most a fixed number of keys, the order of the tree. The leaves hold the keys with their
+ * record ids, and are linked in key order, so that a range of keys is
+ * found by descending to its first key and following the links; the
+ * inner nodes hold the first key of each child but the first.
+ *
+ * A tree is built by one thread, and may then be searched by several
+ * threads at once.
+ */
+public class BPlusTree {
+	public static final int DEFAULT_ORDER = 128; //the most keys a node holds
+
+	private final int order;
+	private Node root = new Leaf();
+	private int height = 1;
+	private long keyCount;
+	private long entryCount;
+
+	/**
+	 * A node of the tree; its keys are in KEY_ORDER
+	 */
+	private abstract static class Node {
+		protected final List<Object> keys = new ArrayList<Object>();
+	}
+
+	private static final class Leaf extends Node {
+		private final List<List<RecordId>> ids = new ArrayList<List<RecordId>>(); //for each key
+		private Leaf next; //the leaf with the next keys, or null
+	}
+
+	private static final class Inner extends Node {
+		private final List<Node> children = new ArrayList<Node>(); //one more than the keys
+	}
+
+	/**
+	 * A node split in two: the key that separates them, and the new right node
+	 */
+	private static final class Split {
+		private final Object key;
+		private final Node right;
+
+		private Split(Object key, Node right) {
+			this.key = key;
+			this.right = right;
+		}
+	}
+
+	/**
+	 * Create an empty tree whose nodes hold DEFAULT_ORDER keys
+	 */
+	public BPlusTree() {
+		this(DEFAULT_ORDER);
+	}
+
+	/**
+	 * Create an empty tree
+	 * @param order The most keys a node holds
+	 */
+	public BPlusTree(int order) {
+		if (order < 3) {
+			throw new IllegalArgumentException("Order must be at least 3, not " + order);
+		}
+		this.order = order;
+	}
+
+	/**
+	 * Add a record id for a value
+	 * @param value
+	 * @param id
+	 */
+	public void insert(String value, RecordId id) {
+		Split split = insert(root, ValueComparator.key(value), id);
+		if (split != null) {
+			Inner inner = new Inner();
+			inner.children.add(root);
+			inner.keys.add(split.key);
+			inner.children.add(split.right);
+			root = inner;
+			height++;
+		}
+		entryCount++;
+	}
+
+	/**
+	 * inserts into a subtree, returning the split of its root if it overflows
+	 */
+	private Split insert(Node node, Object key, RecordId id) {
+		int i = Collections.binarySearch(node.keys, key, ValueComparator.KEY_ORDER);
+
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+			if (i >= 0) {
+				leaf.ids.get(i).add(id);
+				return null;
+			}
+			List<RecordId> ids = new ArrayList<RecordId>(1);
+			ids.add(id);
+			leaf.keys.add(-i - 1, key);
+			leaf.ids.add(-i - 1, ids);
+			keyCount++;
+			return (leaf.keys.size() > order) ? split(leaf) : null;
+		}
+
+		Inner inner = (Inner) node;
+		int child = (i >= 0) ? i + 1 : -i - 1;
+		Split split = insert(inner.children.get(child), key, id);
+		if (split == null) {
+			return null;
+		}
+		inner.keys.add(child, split.key);
+		inner.children.add(child + 1, split.right);
+		return (inner.keys.size() > order) ? split(inner) : null;
+	}
+
+	private static Split split(Leaf leaf) {
+		int mid = leaf.keys.size() / 2;
+		Leaf right = new Leaf();
+		right.keys.addAll(leaf.keys.subList(mid, leaf.keys.size()));
+		right.ids.addAll(leaf.ids.subList(mid, leaf.ids.size()));
+		leaf.keys.subList(mid, leaf.keys.size()).clear();
+		leaf.ids.subList(mid, leaf.ids.size()).clear();
+		right.next = leaf.next;
+		leaf.next = right;
+		return new Split(right.keys.get(0), right);
+	}
+
+	private static Split split(Inner inner) {
+		// the middle key moves up, and is not kept in either half
+		int mid = inner.keys.size() / 2;
+		Object key = inner.keys.get(mid);
+		Inner right = new Inner();
+		right.keys.addAll(inner.keys.subList(mid + 1, inner.keys.size()));
+		right.children.addAll(inner.children.subList(mid + 1, inner.children.size()));
+		inner.keys.subList(mid, inner.keys.size()).clear();
+		inner.children.subList(mid + 1, inner.children.size()).clear();
+		return new Split(key, right);
+	}
+
+	/**
+	 * Return the record ids of the tuples that take a value, in the order
+	 * in which they were inserted
+	 * @param value
+	 * @return the record ids, which cannot be modified; empty if there are none
+	 */
+	public List<RecordId> get(String value) {
+		Object key = ValueComparator.key(value);
+		Leaf leaf = findLeaf(key);
+		int i = Collections.binarySearch(leaf.keys, key, ValueComparator.KEY_ORDER);
+		return (i < 0) ? Collections.<RecordId>emptyList() : Collections.unmodifiableList(leaf.ids.get(i));
+	}
+
+	/**
+	 * Return the record ids of the tuples whose values have keys in a
+	 * range, in key order
+	 * @param low Key of ValueComparator.key() at the start of the range, or null to start at the first key
+	 * @param lowInclusive Whether the range includes low
+	 * @param high Key at the end of the range, or null to end at the last key
+	 * @param highInclusive Whether the range includes high
+	 * @return
+	 */
+	public List<RecordId> range(Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+		List<RecordId> result = new ArrayList<RecordId>();
+		Leaf leaf = (low == null) ? firstLeaf() : findLeaf(low);
+		int i = 0;
+		if (low != null) {
+			i = Collections.binarySearch(leaf.keys, low, ValueComparator.KEY_ORDER);
+			i = (i < 0) ? -i - 1 : (lowInclusive ? i : i + 1);
+		}
+
+		for (; leaf != null; leaf = leaf.next, i = 0) {
+			for (; i < leaf.keys.size(); i++) {
+				if (high != null) {
+					int c = ValueComparator.KEY_ORDER.compare(leaf.keys.get(i), high);
+					if (c > 0 || (c == 0 && !highInclusive)) {
+						return result;
+					}
+				}
+				result.addAll(leaf.ids.get(i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return true if a predicate comparing an attribute with values can be
+	 * looked up in an index on the attribute: an equality or IN predicate,
+	 * or a range predicate whose bounds are numbers
+	 * @param predicate
+	 * @return
+	 */
+	public static boolean supports(Predicate predicate) {
+		if (!predicate.comparesValue()) {
+			return false;
+		}
+		switch (predicate.getComparison()) {
+		case EQ:
+		case IN:
+			return true;
+		case NE:
+			return false;
+		default:
+			for (String value : predicate.getRightValues()) {
+				if (!(ValueComparator.key(value) instanceof Double)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Return the record ids of the tuples that may satisfy a predicate
+	 * supported by the index. These are exactly the tuples that satisfy an
+	 * equality or IN predicate; for a range predicate they also include
+	 * tuples whose values are not numbers, as Predicate.matches() compares
+	 * those with the bounds as strings, so the tuples must be checked.
+	 * @param predicate
+	 * @return
+	 * @throws IllegalArgumentException if the predicate is not supported
+	 */
+	public List<RecordId> lookup(Predicate predicate) {
+		if (!supports(predicate)) {
+			throw new IllegalArgumentException("Predicate " + predicate + " cannot be looked up in an index");
+		}
+
+		List<String> values = predicate.getRightValues();
+		switch (predicate.getComparison()) {
+		case EQ:
+			return get(values.get(0));
+		case IN: {
+			List<RecordId> result = new ArrayList<RecordId>();
+			Set<Object> keys = new HashSet<Object>();
+			for (String value : values) {
+				if (keys.add(ValueComparator.key(value))) {
+					result.addAll(get(value));
+				}
+			}
+			return result;
+		}
+		default:
+			break;
+		}
+
+		// the numbers come before the other values, which start with ""
+		Double low = null;
+		Double high = null;
+		boolean lowInclusive = true;
+		boolean highInclusive = true;
+		switch (predicate.getComparison()) {
+		case LT:
+		case LE:
+			high = (Double) ValueComparator.key(values.get(0));
+			highInclusive = predicate.getComparison() == Predicate.Comparison.LE;
+			break;
+		case GT:
+		case GE:
+			low = (Double) ValueComparator.key(values.get(0));
+			lowInclusive = predicate.getComparison() == Predicate.Comparison.GE;
+			break;
+		default:
+			low = (Double) ValueComparator.key(values.get(0));
+			high = (Double) ValueComparator.key(values.get(1));
+		}
+		List<RecordId> result = range(low, lowInclusive, (high == null) ? "" : high,
+				(high == null) ? false : highInclusive);
+
+		// other values are compared with the bounds as strings
+		String lowString = (low == null) ? "" : values.get(0);
+		String highString = (high == null) ? null : values.get(values.size() - 1);
+		result.addAll(range(lowString, lowInclusive, highString, highInclusive));
+		return result;
+	}
+
+	/**
+	 * descends to the leaf that holds a key, if the tree has it
+	 */
+	private Leaf findLeaf(Object key) {
+		Node node = root;
+		while (node instanceof Inner) {
+			int i = Collections.binarySearch(node.keys, key, ValueComparator.KEY_ORDER);
+			node = ((Inner) node).children.get((i >= 0) ? i + 1 : -i - 1);
+		}
+		return (Leaf) node;
+	}
+
+	private Leaf firstLeaf() {
+		Node node = root;
+		while (node instanceof Inner) {
+			node = ((Inner) node).children.get(0);
+		}
+		return (Leaf) node;
+	}
+
+	/**
+	 * Return the most keys a node holds
+	 * @return
+	 */
+	public int getOrder() {
+		return order;
+	}
+
+	/**
+	 * Return the number of levels of the tree, counting the leaves
+	 * @return
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Return the number of distinct values in the tree
+	 * @return
+	 */
+	public long getKeyCount() {
+		return keyCount;
+	}
+
+	/**
+	 * Return the number of record ids in the tree
+	 * @return
+	 */
+	public long getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * Estimate the number of levels of a tree of DEFAULT_ORDER holding a
+	 * number of distinct values, with its nodes three quarters full
+	 * @param keys
+	 * @return
+	 */
+	public static int estimateHeight(long keys) {
+		double fanout = DEFAULT_ORDER * 0.75;
+		int height = 1;
+		for (double n = fanout; n < keys; n *= fanout) {
+			height++;
+		}
+		return height;
+	}
+}
@@ -0,0 +1,110 @@
+package sjdb;
+
+/**
+ * This class holds a batch of up to SIZE tuples for vectorised execution,
+ * column by column: each column is an array of the codes given to its
+ * values by a ValueDictionary, in the order of the schema of the operator
+ * that produced the batch.
+ *
+ * The tuples in the batch are the rows listed in its selection vector,
+ * the first getCount() entries of getSelection(), in increasing order.
+ * Filtering a batch only rewrites its selection vector, so the columns
+ * are not copied.
+ */
+public class Batch {
+	/**
+	 * The number of rows in a batch; large enough to make the cost of a
+	 * call per batch negligible, and small enough for a batch to stay in
+	 * the processor's caches
+	 */
+	public static final int SIZE = 2048;
+
+	private final int[][] columns;
+	private final int[] selection;
+	private int count;
+
+	/**
+	 * Create an empty batch
+	 * @param columnCount Number of columns
+	 */
+	public Batch(int columnCount) {
+		this.columns = new int[columnCount][SIZE];
+		this.selection = new int[SIZE];
+	}
+
+	private Batch(int[][] columns, int[] selection) {
+		this.columns = columns;
+		this.selection = selection;
+	}
+
+	/**
+	 * Return a batch that shares the given columns of this batch, and its
+	 * selection vector; its count must be set separately
+	 * @param positions Positions of the columns to share
+	 * @return
+	 */
+	public Batch project(int[] positions) {
+		int[][] projected = new int[positions.length][];
+		for (int i = 0; i < positions.length; i++) {
+			projected[i] = columns[positions[i]];
+		}
+		return new Batch(projected, selection);
+	}
+
+	/**
+	 * Return the codes of the values in a column, indexed by row
+	 * @param i Position of the column
+	 * @return
+	 */
+	public int[] getColumn(int i) {
+		return columns[i];
+	}
+
+	/**
+	 * Return the number of columns
+	 * @return
+	 */
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	/**
+	 * Return the selection vector: the rows of the tuples in the batch
+	 * @return
+	 */
+	public int[] getSelection() {
+		return selection;
+	}
+
+	/**
+	 * Return the number of tuples in the batch
+	 * @return
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Set the number of tuples in the batch (the number of entries of the
+	 * selection vector in use)
+	 * @param count
+	 */
+	public void setCount(int count) {
+		this.count = count;
+	}
+
+	/**
+	 * Return a tuple in the batch, with its values decoded
+	 * @param j Position of the tuple in the selection vector
+	 * @param dictionary Dictionary that encoded the values
+	 * @return
+	 */
+	public Tuple getTuple(int j, ValueDictionary dictionary) {
+		int row = selection[j];
+		String[] values = new String[columns.length];
+		for (int c = 0; c < columns.length; c++) {
+			values[c] = dictionary.decode(columns[c][row]);
+		}
+		return new Tuple(values);
+	}
+}
@@ -0,0 +1,292 @@
+package sjdb;
+
+import java.util.Arrays;
+
+/**
+ * This class executes a Join a batch at a time, by hashing; or a Product,
+ * by pairing every tuple of its inputs.
+ *
+ * When the operator is opened, the tuples of the build side (the right
+ * input, unless the join has been given the left as its build side) are
+ * copied into columns, and for a join a hash table from the codes of the
+ * join attribute to the rows with that code is built over them; the table
+ * is an array of chain heads and an array of links, so it needs no objects
+ * per row. Each batch of the other input is then probed: the loop over
+ * the batch only collects the pairs of matching rows, and the output
+ * columns are then gathered from them one column at a time.
+ *
+ * Joins are always executed by hashing in vectorised mode, whichever
+ * method was chosen for them.
+ *
+ * The output tuples have the values of the left tuple followed by those
+ * of the right, as with NestedLoopJoinIterator.
+ */
+public class BatchJoin extends BatchOperator {
+	private static final int NOT_STARTED = -2; //the probe row has not been looked up yet
+	private static final int END = -1; //end of a hash chain
+
+	private final BatchOperator probeSide;
+	private final BatchOperator buildSide;
+	private final boolean buildLeft;
+	private final Predicate predicate; //null for a product
+	private final int probeKey; //position of the join attribute in the probe side
+	private final int buildKey; //position of the join attribute in the build side
+
+	private int[][] build; //the columns of the build side
+	private int buildRows;
+	private int[] heads; //first row of each hash chain
+	private int[] links; //next row in the chain of each row
+	private int shift;
+
+	private Batch probe; //the batch of the probe side being probed
+	private int probeIndex; //position in its selection vector
+	private int chain; //the next build row for the probe row, or NOT_STARTED
+	private int[] probeRows = new int[Batch.SIZE];
+	private int[] buildMatches = new int[Batch.SIZE];
+	private Batch batch;
+
+	/**
+	 * Create a new batch operator that executes a product
+	 * @param op Product to execute
+	 * @param left Operator that produces the left input
+	 * @param right Operator that produces the right input
+	 */
+	public BatchJoin(Product op, BatchOperator left, BatchOperator right) {
+		this(op, null, left, right, false);
+	}
+
+	/**
+	 * Create a new batch operator that executes a join
+	 * @param op Join to execute
+	 * @param left Operator that produces the left input
+	 * @param right Operator that produces the right input
+	 * @throws IllegalArgumentException if the predicate does not compare an attribute of each input
+	 */
+	public BatchJoin(Join op, BatchOperator left, BatchOperator right) {
+		this(op, op.getPredicate(), left, right, op.getMethod() != null && op.isBuildLeft());
+	}
+
+	private BatchJoin(Operator op, Predicate predicate, BatchOperator left, BatchOperator right, boolean buildLeft) {
+		super(op, left.getSchema().concat(right.getSchema()), left.getDictionary(), left, right);
+		this.probeSide = buildLeft ? right : left;
+		this.buildSide = buildLeft ? left : right;
+		this.buildLeft = buildLeft;
+		this.predicate = predicate;
+
+		if (predicate == null) {
+			this.probeKey = -1;
+			this.buildKey = -1;
+		} else {
+			int[] keys = joinPositions(predicate, left.getSchema(), right.getSchema());
+			this.probeKey = buildLeft ? keys[1] : keys[0];
+			this.buildKey = buildLeft ? keys[0] : keys[1];
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchOperator#open()
+	 */
+	@Override
+	public void open() throws DatabaseException {
+		super.open();
+		int columns = buildSide.getSchema().size();
+		int capacity = Batch.SIZE;
+		build = new int[columns][capacity];
+		buildRows = 0;
+
+		Batch b;
+		while ((b = buildSide.nextBatch()) != null) {
+			int n = b.getCount();
+			if (buildRows + n > capacity) {
+				capacity = Math.max(buildRows + n, capacity * 2);
+				for (int c = 0; c < columns; c++) {
+					build[c] = Arrays.copyOf(build[c], capacity);
+				}
+			}
+			int[] sel = b.getSelection();
+			for (int c = 0; c < columns; c++) {
+				int[] src = b.getColumn(c);
+				int[] dst = build[c];
+				for (int j = 0; j < n; j++) {
+					dst[buildRows + j] = src[sel[j]];
+				}
+			}
+			buildRows += n;
+		}
+
+		if (predicate != null) {
+			// at least twice as many chains as rows, rounded up to a power of two
+			int bits = 1;
+			while ((1 << bits) < 2 * buildRows && bits < 30) {
+				bits++;
+			}
+			shift = 32 - bits;
+			heads = new int[1 << bits];
+			Arrays.fill(heads, END);
+			links = new int[buildRows];
+			int[] keys = build[buildKey];
+			for (int r = buildRows - 1; r >= 0; r--) {
+				// inserted in reverse, so each chain lists its rows in order
+				int h = (keys[r] * 0x9E3779B9) >>> shift;
+				links[r] = heads[h];
+				heads[h] = r;
+			}
+		}
+
+		batch = new Batch(getSchema().size());
+		probe = null;
+		probeIndex = 0;
+		chain = NOT_STARTED;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchOperator#fetchBatch()
+	 */
+	@Override
+	protected Batch fetchBatch() {
+		if (buildRows == 0) {
+			return null;
+		}
+		while (true) {
+			if (probe == null || probeIndex == probe.getCount()) {
+				probe = probeSide.nextBatch();
+				probeIndex = 0;
+				chain = NOT_STARTED;
+				if (probe == null) {
+					return null;
+				}
+			}
+
+			int m = (predicate == null) ? pairAll() : probeHash();
+			if (m > 0) {
+				gather(m);
+				return batch;
+			}
+		}
+	}
+
+	/**
+	 * collects the matching pairs for the probe batch, from where the last
+	 * call stopped, until the output is full; returns the number of pairs
+	 */
+	private int probeHash() {
+		int[] sel = probe.getSelection();
+		int n = probe.getCount();
+		int[] keys = probe.getColumn(probeKey);
+		int[] buildKeys = build[buildKey];
+		int[] heads = this.heads;
+		int[] links = this.links;
+		int m = 0;
+
+		int j = probeIndex;
+		int r = chain;
+		while (j < n) {
+			int i = sel[j];
+			int key = keys[i];
+			if (r == NOT_STARTED) {
+				r = heads[(key * 0x9E3779B9) >>> shift];
+			}
+			while (r != END && m < Batch.SIZE) {
+				if (buildKeys[r] == key) {
+					probeRows[m] = i;
+					buildMatches[m] = r;
+					m++;
+				}
+				r = links[r];
+			}
+			if (r != END) {
+				// the output is full, part of the way along the chain
+				break;
+			}
+			r = NOT_STARTED;
+			j++;
+			if (m == Batch.SIZE) {
+				break;
+			}
+		}
+
+		probeIndex = j;
+		chain = r;
+		return m;
+	}
+
+	/**
+	 * collects pairs of each probe row with every build row, as for
+	 * probeHash()
+	 */
+	private int pairAll() {
+		int[] sel = probe.getSelection();
+		int n = probe.getCount();
+		int m = 0;
+
+		int j = probeIndex;
+		int r = (chain == NOT_STARTED) ? 0 : chain;
+		while (j < n && m < Batch.SIZE) {
+			int i = sel[j];
+			int k = Math.min(buildRows - r, Batch.SIZE - m);
+			for (int x = 0; x < k; x++) {
+				probeRows[m + x] = i;
+				buildMatches[m + x] = r + x;
+			}
+			m += k;
+			r += k;
+			if (r == buildRows) {
+				r = 0;
+				j++;
+			}
+		}
+
+		probeIndex = j;
+		chain = r;
+		return m;
+	}
+
+	/**
+	 * copies the columns of the collected pairs into the output batch,
+	 * with the columns of the left input first
+	 */
+	private void gather(int m) {
+		int probeFirst = buildLeft ? build.length : 0;
+		int buildFirst = buildLeft ? 0 : probe.getColumnCount();
+		for (int c = 0; c < probe.getColumnCount(); c++) {
+			int[] src = probe.getColumn(c);
+			int[] dst = batch.getColumn(probeFirst + c);
+			for (int x = 0; x < m; x++) {
+				dst[x] = src[probeRows[x]];
+			}
+		}
+		for (int c = 0; c < build.length; c++) {
+			int[] src = build[c];
+			int[] dst = batch.getColumn(buildFirst + c);
+			for (int x = 0; x < m; x++) {
+				dst[x] = src[buildMatches[x]];
+			}
+		}
+		int[] sel = batch.getSelection();
+		for (int x = 0; x < m; x++) {
+			sel[x] = x;
+		}
+		batch.setCount(m);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#close()
+	 */
+	@Override
+	public void close() {
+		build = null;
+		heads = null;
+		links = null;
+		probe = null;
+		batch = null;
+		super.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return (predicate == null) ? "PRODUCT" : "HASH JOIN [" + predicate + "]";
+	}
+}
@@ -0,0 +1,95 @@
+package sjdb;
+
+/**
+ * This abstract class represents a physical operator that is executed a
+ * batch of tuples at a time (see Batch): nextBatch() returns the next
+ * batch of output tuples, or null when there are no more. Vectorised
+ * operators work on whole columns of codes in tight loops, rather than
+ * making calls for each tuple.
+ *
+ * Each operator fills the same Batch on every call, so a batch must be
+ * used before the next call; batches are never empty. A consumer may
+ * rewrite the selection vector of a batch it has been given.
+ *
+ * A batch operator can also be used as a tuple iterator: next() decodes
+ * the tuples of its batches, so that a vectorised plan can be run like
+ * any other.
+ */
+public abstract class BatchOperator extends PhysicalOperator {
+	private final ValueDictionary dictionary;
+	private Batch current; //the batch being decoded by next()
+	private int position;
+
+	/**
+	 * Create a new batch operator
+	 * @param operator Logical operator that this operator executes
+	 * @param schema Attributes of the output tuples, in order
+	 * @param dictionary Dictionary that encodes the values
+	 * @param inputs Child operators
+	 */
+	protected BatchOperator(Operator operator, Schema schema, ValueDictionary dictionary, BatchOperator... inputs) {
+		super(operator, schema, inputs);
+		this.dictionary = dictionary;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#open()
+	 */
+	@Override
+	public void open() throws DatabaseException {
+		super.open();
+		current = null;
+		position = 0;
+	}
+
+	/**
+	 * Return the next batch of output tuples, or null if there are no more
+	 * @return
+	 */
+	public Batch nextBatch() {
+		Batch b = fetchBatch();
+		if (b != null) {
+			addRows(b.getCount());
+		}
+		return b;
+	}
+
+	/**
+	 * Produce the next batch of output tuples, or null if there are no
+	 * more; the batch must not be empty
+	 * @return
+	 */
+	protected abstract Batch fetchBatch();
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#next()
+	 */
+	@Override
+	public Tuple next() {
+		// the rows are counted by nextBatch()
+		return fetch();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#fetch()
+	 */
+	@Override
+	protected Tuple fetch() {
+		if (current == null || position == current.getCount()) {
+			current = nextBatch();
+			position = 0;
+			if (current == null) {
+				return null;
+			}
+		}
+		return current.getTuple(position++, dictionary);
+	}
+
+	/**
+	 * Return the dictionary that encodes the values
+	 * @return
+	 */
+	public ValueDictionary getDictionary() {
+		return dictionary;
+	}
+}
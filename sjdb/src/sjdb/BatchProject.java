@@ -0,0 +1,71 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class executes a Project a batch at a time. The output batches
+ * share the projected columns and the selection vector of the input
+ * batches, so nothing is copied. Duplicate tuples are not removed.
+ */
+public class BatchProject extends BatchOperator {
+	private final BatchOperator input;
+	private final int[] positions;
+	private Batch source; //the input batch that the output batch shares
+	private Batch batch;
+
+	/**
+	 * Create a new batch project
+	 * @param op Project to execute
+	 * @param input Operator that produces the input of the project
+	 */
+	public BatchProject(Project op, BatchOperator input) {
+		super(op, input.getSchema().project(op.getAttributes()), input.getDictionary(), input);
+		this.input = input;
+
+		List<Attribute> attrs = getSchema().getAttributes();
+		this.positions = new int[attrs.size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = position(input.getSchema(), attrs.get(i));
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchOperator#fetchBatch()
+	 */
+	@Override
+	protected Batch fetchBatch() {
+		Batch b = input.nextBatch();
+		if (b == null) {
+			return null;
+		}
+		if (b != source) {
+			source = b;
+			batch = b.project(positions);
+		}
+		batch.setCount(b.getCount());
+		return batch;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#close()
+	 */
+	@Override
+	public void close() {
+		source = null;
+		batch = null;
+		super.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder ret = new StringBuilder("PROJECT [");
+		List<Attribute> attrs = getSchema().getAttributes();
+		for (int i = 0; i < attrs.size(); i++) {
+			ret.append((i > 0) ? "," : "").append(attrs.get(i).getName());
+		}
+		return ret.append("]").toString();
+	}
+}
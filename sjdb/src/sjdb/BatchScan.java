@@ -0,0 +1,182 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class executes a Scan a batch at a time, copying slices of the
+ * columns of a named relation held in a Database.
+ *
+ * A relation stored in ColumnFiles is read from them a block at a time,
+ * a block being the size of a batch, skipping the blocks ruled out by the
+ * filters and reading only the columns set (see ColumnScan). The values
+ * are recoded by the database's ValueDictionary as they are read; the
+ * codes of a dictionary-encoded column are recoded once each.
+ */
+public class BatchScan extends BatchOperator implements ColumnScan {
+	private final NamedRelation relation;
+	private final Database database;
+	private final List<Predicate> filters = new ArrayList<Predicate>();
+	private boolean[] read; //the columns to read, or null to read them all
+	private ColumnTable table;
+	private ColumnFile[] columns;
+	private int[][] recoded; //for each dictionary-encoded column file, the code of each entry, or -1 if not yet recoded
+	private Batch batch;
+	private int position; //the next row of the table, or the next block of the column files
+	private long blocksRead;
+	private long blocksSkipped;
+
+	/**
+	 * Create a new batch scan
+	 * @param op Scan to execute
+	 * @param database Database that holds the tuples
+	 */
+	public BatchScan(Scan op, Database database) {
+		super(op, op.getRelation().getSchema(), database.getDictionary());
+		this.relation = (NamedRelation) op.getRelation();
+		this.database = database;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.ColumnScan#addFilter(sjdb.Predicate)
+	 */
+	@Override
+	public void addFilter(Predicate predicate) {
+		if (predicate.comparesValue()) {
+			filters.add(predicate);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.ColumnScan#setColumns(java.util.Collection)
+	 */
+	@Override
+	public void setColumns(Collection<Attribute> attributes) {
+		read = new boolean[getSchema().size()];
+		for (Attribute attr : attributes) {
+			read[position(getSchema(), attr)] = true;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchOperator#open()
+	 */
+	@Override
+	public void open() throws DatabaseException {
+		super.open();
+		columns = database.getColumnFiles(relation);
+		if (columns != null) {
+			recoded = new int[columns.length][];
+			for (int c = 0; c < columns.length; c++) {
+				if (columns[c].getEncoding() == ColumnFile.Encoding.DICTIONARY) {
+					recoded[c] = new int[columns[c].getDictionarySize()];
+					Arrays.fill(recoded[c], -1);
+				}
+			}
+		} else {
+			table = database.getColumns(relation);
+		}
+		batch = new Batch(getSchema().size());
+		position = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchOperator#fetchBatch()
+	 */
+	@Override
+	protected Batch fetchBatch() {
+		if (columns != null) {
+			return fetchColumns();
+		}
+		int n = Math.min(Batch.SIZE, table.getRows() - position);
+		if (n <= 0) {
+			return null;
+		}
+		for (int c = 0; c < batch.getColumnCount(); c++) {
+			System.arraycopy(table.getColumn(c), position, batch.getColumn(c), 0, n);
+		}
+		select(n);
+		position += n;
+		return batch;
+	}
+
+	/**
+	 * fills the batch with the next block of the column files that is not skipped
+	 */
+	private Batch fetchColumns() {
+		while (position < columns[0].getBlockCount()
+				&& !ColumnFile.mayMatch(columns, getSchema(), position, filters)) {
+			blocksSkipped++;
+			position++;
+		}
+		if (position == columns[0].getBlockCount()) {
+			return null;
+		}
+
+		int start = position * ColumnFile.BLOCK_ROWS;
+		int n = Math.min(ColumnFile.BLOCK_ROWS, columns[0].getRows() - start);
+		ValueDictionary dictionary = getDictionary();
+		for (int c = 0; c < columns.length; c++) {
+			if (read != null && !read[c]) {
+				continue;
+			}
+			ColumnFile column = columns[c];
+			int[] codes = batch.getColumn(c);
+			if (recoded[c] != null) {
+				int[] map = recoded[c];
+				for (int j = 0; j < n; j++) {
+					int code = column.getCode(start + j);
+					if (map[code] < 0) {
+						map[code] = dictionary.encode(column.getDictionaryValue(code));
+					}
+					codes[j] = map[code];
+				}
+			} else {
+				for (int j = 0; j < n; j++) {
+					codes[j] = dictionary.encode(column.getValue(start + j));
+				}
+			}
+		}
+		select(n);
+		blocksRead++;
+		position++;
+		return batch;
+	}
+
+	/**
+	 * selects the first n rows of the batch
+	 */
+	private void select(int n) {
+		int[] sel = batch.getSelection();
+		for (int j = 0; j < n; j++) {
+			sel[j] = j;
+		}
+		batch.setCount(n);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#close()
+	 */
+	@Override
+	public void close() {
+		table = null;
+		columns = null;
+		recoded = null;
+		batch = null;
+		super.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		if (blocksRead + blocksSkipped == 0) {
+			return "SCAN " + relation;
+		}
+		return "SCAN " + relation + " [" + ScanIterator.describeColumns(read) + ", " + blocksRead
+				+ " blocks read, " + blocksSkipped + " skipped]";
+	}
+}
@@ -0,0 +1,118 @@
+package sjdb;
+
+import java.util.Arrays;
+
+/**
+ * This class executes a Select a batch at a time, by narrowing the
+ * selection vector of each input batch to the tuples that satisfy its
+ * predicate.
+ *
+ * attr=attr predicates compare codes. Predicates that compare with values
+ * are evaluated once for each distinct code, the first time it is seen,
+ * and the results are kept in a table indexed by code, so the loop over
+ * a batch only looks codes up.
+ */
+public class BatchSelect extends BatchOperator {
+	private static final byte UNKNOWN = 0;
+	private static final byte MATCH = 1;
+	private static final byte NO_MATCH = 2;
+
+	private final BatchOperator input;
+	private final Predicate predicate;
+	private final int left; //position of the left attribute
+	private final int right; //position of the right attribute, or -1 if the predicate compares with values
+	private byte[] verdicts; //whether the value with each code satisfies the predicate
+
+	/**
+	 * Create a new batch select
+	 * @param op Select to execute
+	 * @param input Operator that produces the input of the select
+	 */
+	public BatchSelect(Select op, BatchOperator input) {
+		super(op, input.getSchema(), input.getDictionary(), input);
+		this.input = input;
+		this.predicate = op.getPredicate();
+		this.left = position(input.getSchema(), predicate.getLeftAttribute());
+		this.right = predicate.comparesValue() ? -1 : position(input.getSchema(), predicate.getRightAttribute());
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchOperator#open()
+	 */
+	@Override
+	public void open() throws DatabaseException {
+		super.open();
+		// the inputs have been opened, so their values have been encoded
+		verdicts = (right < 0) ? new byte[getDictionary().size()] : null;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchOperator#fetchBatch()
+	 */
+	@Override
+	protected Batch fetchBatch() {
+		Batch b;
+		while ((b = input.nextBatch()) != null) {
+			int[] sel = b.getSelection();
+			int n = b.getCount();
+			int m = 0;
+			int[] l = b.getColumn(left);
+
+			if (right < 0) {
+				byte[] v = verdicts;
+				for (int j = 0; j < n; j++) {
+					int i = sel[j];
+					int code = l[i];
+					byte verdict = (code < v.length) ? v[code] : UNKNOWN;
+					if (verdict == UNKNOWN) {
+						verdict = evaluate(code);
+						v = verdicts;
+					}
+					sel[m] = i;
+					m += (verdict == MATCH) ? 1 : 0;
+				}
+			} else {
+				int[] r = b.getColumn(right);
+				for (int j = 0; j < n; j++) {
+					int i = sel[j];
+					sel[m] = i;
+					m += (l[i] == r[i]) ? 1 : 0;
+				}
+			}
+
+			if (m > 0) {
+				b.setCount(m);
+				return b;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * evaluates the predicate for a value seen for the first time
+	 */
+	private byte evaluate(int code) {
+		if (code >= verdicts.length) {
+			verdicts = Arrays.copyOf(verdicts, Math.max(code + 1, getDictionary().size()));
+		}
+		verdicts[code] = predicate.matches(getDictionary().decode(code)) ? MATCH : NO_MATCH;
+		return verdicts[code];
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#close()
+	 */
+	@Override
+	public void close() {
+		verdicts = null;
+		super.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SELECT [" + predicate + "]";
+	}
+}
@@ -0,0 +1,347 @@
+package sjdb;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * This class runs micro-benchmarks of catalogue parsing, loading and
+ * snapshot reading, query parsing, estimation and optimisation, over the
+ * queries in a data directory and over synthetic catalogues of 10 to 1000
+ * relations with chain and star queries from WorkloadGenerator. It also
+ * times the execution of a chain query over generated tuples, a tuple at
+ * a time and vectorised, a tuple at a time from heap files, and both
+ * ways from column files.
+ *
+ * Each benchmark is run for WARMUP_ITERATIONS iterations, which are not
+ * measured, and then for MEASURE_ITERATIONS measured iterations, each of
+ * a fixed time in which the operation is run repeatedly. The mean
+ * throughput of the measured iterations (operations per second) and its
+ * standard deviation, the allocation per operation (bytes per operation,
+ * where the JVM can measure it) and the result of the last operation
+ * are printed in a table, one line per benchmark, so that runs can be
+ * compared to track regressions.
+ *
+ * Every operation reduces its result to a number (a cost, a size or a
+ * count), which is added to a checksum printed at the end, so that the
+ * JIT compiler cannot remove the work as dead code. The benchmarks all
+ * run in one JVM, in a fixed order, so their numbers can be compared
+ * from run to run, but not with those of a harness that forks a JVM
+ * for each benchmark.
+ *
+ * Usage: Benchmark <data directory> [<measured seconds per benchmark>]
+ */
+public class Benchmark {
+	private static final int[] SIZES = {10, 100, 1000}; //relation counts of the synthetic catalogues
+	private static final WorkloadGenerator.Shape[] SHAPES = {WorkloadGenerator.Shape.CHAIN, WorkloadGenerator.Shape.STAR};
+	private static final int EXECUTION_RELATIONS = 4; //relation count of the query that is executed
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASURE_ITERATIONS = 5;
+
+	private long iterationMillis;
+	private long checksum; //the sum of the results of every operation run
+
+	/**
+	 * An operation to be benchmarked
+	 */
+	private interface Operation {
+		/**
+		 * Run the operation once
+		 * @return a number computed from the result of the operation
+		 * @throws Exception
+		 */
+		long run() throws Exception;
+	}
+
+	/**
+	 * @param measureMillis Measured time of each benchmark, which is split into iterations
+	 */
+	public Benchmark(long measureMillis) {
+		this.iterationMillis = Math.max(measureMillis / MEASURE_ITERATIONS, 1);
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.err.println("usage: Benchmark <data directory> [<measured seconds per benchmark>]");
+			return;
+		}
+		File dir = new File(args[0]);
+		long seconds = (args.length > 1) ? Long.parseLong(args[1]) : 2;
+		Benchmark benchmark = new Benchmark(seconds * 1000);
+
+		System.out.println(String.format("%-24s %-12s %14s %12s %14s %14s", "benchmark", "input", "ops/s", "+/-",
+				"bytes/op", "result"));
+
+		// the hand-written queries
+		File catFile = new File(dir, "cat.txt");
+		benchmark.runCatalogue(catFile, catFile.getName());
+		File[] files = dir.listFiles();
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.isFile() && file.getName().startsWith("q") && file.getName().endsWith(".txt")) {
+				benchmark.runQuery(catFile, file, file.getName());
+			}
+		}
+
+		// synthetic catalogues and queries
+		for (int size : SIZES) {
+			File cat = File.createTempFile("sjdb-cat", ".txt");
+			cat.deleteOnExit();
+			WorkloadGenerator generator = new WorkloadGenerator(size);
+			generator.writeCatalogue(cat);
+			benchmark.runCatalogue(cat, "cat" + size);
+
+			for (WorkloadGenerator.Shape shape : SHAPES) {
+				File query = File.createTempFile("sjdb-query", ".txt");
+				query.deleteOnExit();
+				generator.writeQuery(query, shape);
+				benchmark.runQuery(cat, query, shape.toString().toLowerCase() + size);
+			}
+		}
+
+		// execution over generated tuples
+		File data = Files.createTempDirectory("sjdb-data").toFile();
+		data.deleteOnExit();
+		WorkloadGenerator generator = new WorkloadGenerator(EXECUTION_RELATIONS);
+		generator.setTuples(10000, 100000);
+		generator.writeCatalogue(new File(data, "cat.txt"));
+		generator.writeQuery(new File(data, "chain.txt"), WorkloadGenerator.Shape.CHAIN);
+		generator.writeData(data);
+		for (File file : data.listFiles()) {
+			file.deleteOnExit();
+		}
+		benchmark.runExecution(data, "chain" + EXECUTION_RELATIONS);
+
+		System.out.println("checksum " + benchmark.checksum);
+	}
+
+	/**
+	 * Benchmark parsing a catalogue
+	 * @param catFile Catalogue file
+	 * @param name Name of the input, used to label the results
+	 * @throws Exception
+	 */
+	private void runCatalogue(final File catFile, String name) throws Exception {
+		run("CatalogueParser.parse", name, new Operation() {
+			public long run() throws Exception {
+				Catalogue c = new Catalogue();
+				new CatalogueParser(catFile.getPath(), c).parse();
+				return c.getRelations().size();
+			}
+		});
+		run("CatalogueLoader.load", name, new Operation() {
+			public long run() throws Exception {
+				Catalogue c = new Catalogue();
+				new CatalogueLoader(catFile, c).load();
+				return c.getRelations().size();
+			}
+		});
+
+		// opening a snapshot and reading every relation from it
+		final File snapshot = File.createTempFile("sjdb-snapshot", ".bin");
+		snapshot.deleteOnExit();
+		Catalogue cat = new Catalogue();
+		new CatalogueLoader(catFile, cat).load();
+		cat.writeSnapshot(snapshot);
+		run("CatalogueSnapshot.open", name, new Operation() {
+			public long run() throws Exception {
+				Catalogue c = new Catalogue(CatalogueSnapshot.open(snapshot));
+				return c.getRelations().size();
+			}
+		});
+	}
+
+	/**
+	 * Benchmark each stage of planning a query
+	 * @param catFile Catalogue file
+	 * @param queryFile Query file
+	 * @param name Name of the input, used to label the results
+	 * @throws Exception
+	 */
+	private void runQuery(final File catFile, final File queryFile, String name) throws Exception {
+		final Catalogue cat = new Catalogue();
+		new CatalogueParser(catFile.getPath(), cat).parse();
+		final String query = read(queryFile);
+		final Estimator estimator = new Estimator();
+		final Optimiser optimiser = new Optimiser(cat);
+
+		final Operator canonical = new QueryParser(cat, new StringReader(query)).parse();
+		final Operator optimised = optimiser.optimise(canonical);
+
+		run("QueryParser.parse", name, new Operation() {
+			public long run() throws Exception {
+				return countOperators(new QueryParser(cat, new StringReader(query)).parse());
+			}
+		});
+		run("Estimator.visit", name, new Operation() {
+			public long run() {
+				optimised.accept(estimator);
+				return optimised.getOutput().getTupleCount();
+			}
+		});
+		run("Optimiser.optimise", name, new Operation() {
+			public long run() {
+				return Math.round(optimiser.optimise(canonical).getCost().getTotal());
+			}
+		});
+	}
+
+	/**
+	 * Benchmark executing a query, a tuple at a time and vectorised, a
+	 * tuple at a time from heap files, and both ways from column files
+	 * @param dir Directory with the catalogue, the query (chain.txt) and the tuples
+	 * @param name Name of the input, used to label the results
+	 * @throws Exception
+	 */
+	private void runExecution(File dir, String name) throws Exception {
+		final Catalogue cat = new Catalogue();
+		new CatalogueParser(new File(dir, "cat.txt").getPath(), cat).parse();
+		final Operator plan = new Optimiser(cat).optimise(
+				new QueryParser(cat, new StringReader(read(new File(dir, "chain.txt")))).parse());
+		plan.accept(new Estimator());
+		final Database database = new Database(dir);
+
+		run("Executor.execute", name, new Operation() {
+			public long run() throws Exception {
+				Executor exec = new Executor(database);
+				return exec.execute(exec.build(plan)).size();
+			}
+		});
+		run("Executor.vectorised", name, new Operation() {
+			public long run() throws Exception {
+				Executor exec = new Executor(database, true);
+				return exec.execute(exec.build(plan)).size();
+			}
+		});
+
+		// the heap files are read instead of the .csv files once they exist
+		final Database heapDatabase = new Database(dir);
+		heapDatabase.storeAll(cat);
+		for (File file : dir.listFiles()) {
+			file.deleteOnExit();
+		}
+		run("Executor.heap", name, new Operation() {
+			public long run() throws Exception {
+				Executor exec = new Executor(heapDatabase);
+				return exec.execute(exec.build(plan)).size();
+			}
+		});
+
+		// the column files replace the heap files
+		final Database columnDatabase = new Database(dir);
+		columnDatabase.storeAllColumns(cat);
+		for (File file : dir.listFiles()) {
+			// a directory is deleted after the files in it
+			file.deleteOnExit();
+			File[] columns = file.listFiles();
+			if (columns != null) {
+				for (File column : columns) {
+					column.deleteOnExit();
+				}
+			}
+		}
+		run("Executor.columnar", name, new Operation() {
+			public long run() throws Exception {
+				Executor exec = new Executor(columnDatabase);
+				return exec.execute(exec.build(plan)).size();
+			}
+		});
+		run("Executor.columnar.batch", name, new Operation() {
+			public long run() throws Exception {
+				Executor exec = new Executor(columnDatabase, true);
+				return exec.execute(exec.build(plan)).size();
+			}
+		});
+	}
+
+	/**
+	 * Warm up an operation, then measure its throughput and allocation
+	 * and print them
+	 */
+	private void run(String benchmark, String input, Operation op) throws Exception {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			iteration(op);
+		}
+
+		double[] throughput = new double[MEASURE_ITERATIONS];
+		long ops = 0;
+		long allocated = allocatedBytes();
+		for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+			long start = System.nanoTime();
+			long n = iteration(op);
+			throughput[i] = n / ((System.nanoTime() - start) / 1e9);
+			ops += n;
+		}
+		long bytes = allocatedBytes() - allocated;
+
+		double mean = 0;
+		for (double t : throughput) {
+			mean += t / MEASURE_ITERATIONS;
+		}
+		double variance = 0;
+		for (double t : throughput) {
+			variance += (t - mean) * (t - mean) / (MEASURE_ITERATIONS - 1);
+		}
+
+		System.out.println(String.format("%-24s %-12s %14.1f %12.1f %14s %14d", benchmark, input, mean,
+				Math.sqrt(variance), (allocated < 0) ? "n/a" : String.valueOf(bytes / ops), op.run()));
+	}
+
+	/**
+	 * runs an operation repeatedly for one iteration and returns the
+	 * number of times it was run
+	 */
+	private long iteration(Operation op) throws Exception {
+		long end = System.nanoTime() + iterationMillis * 1000000;
+		long ops = 0;
+		do {
+			checksum += op.run();
+			ops++;
+		} while (System.nanoTime() < end);
+		return ops;
+	}
+
+	/**
+	 * returns the number of operators in a plan
+	 */
+	private static long countOperators(Operator op) {
+		long n = 1;
+		if (op.getInputs() != null) {
+			for (Operator input : op.getInputs()) {
+				n += countOperators(input);
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * returns the number of bytes allocated by the current thread, or -1
+	 * if the JVM doesn't support measuring it
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static String read(File file) throws IOException {
+		StringBuilder b = new StringBuilder();
+		FileReader reader = new FileReader(file);
+		try {
+			char[] buf = new char[4096];
+			int n;
+			while ((n = reader.read(buf)) > 0) {
+				b.append(buf, 0, n);
+			}
+		} finally {
+			reader.close();
+		}
+		return b.toString();
+	}
+}
@@ -0,0 +1,139 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class executes a Join by block nested loops, for inputs too large
+ * to hold in memory: the outer input is read a block of tuples at a time,
+ * and the inner input is read again in full for each block, each of its
+ * tuples being compared with every tuple of the block.
+ *
+ * The output tuples have the values of the left tuple followed by those
+ * of the right, whichever input is the outer one.
+ */
+public class BlockNestedLoopJoinIterator extends PhysicalOperator {
+	private final PhysicalOperator outerSide;
+	private final PhysicalOperator innerSide;
+	private final boolean outerLeft;
+	private final Predicate predicate;
+	private final int blockSize;
+	private final int outerKey; //position of the join attribute in the outer input
+	private final int innerKey; //position of the join attribute in the inner input
+
+	private List<Tuple> block;
+	private boolean outerDone; //whether the last block has been read
+	private Tuple inner; //the inner tuple being matched against the block
+	private int index;
+
+	/**
+	 * Create a new block nested loop join iterator
+	 * @param op Join to execute
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input
+	 * @param outerLeft Whether the left input is the outer one, read in blocks
+	 * @param blockSize Number of outer tuples held in memory at once
+	 */
+	public BlockNestedLoopJoinIterator(Join op, PhysicalOperator left, PhysicalOperator right,
+			boolean outerLeft, int blockSize) {
+		super(op, left.getSchema().concat(right.getSchema()), left, right);
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+		}
+		this.outerSide = outerLeft ? left : right;
+		this.innerSide = outerLeft ? right : left;
+		this.outerLeft = outerLeft;
+		this.predicate = op.getPredicate();
+		this.blockSize = blockSize;
+
+		int[] keys = joinPositions(predicate, left.getSchema(), right.getSchema());
+		this.outerKey = outerLeft ? keys[0] : keys[1];
+		this.innerKey = outerLeft ? keys[1] : keys[0];
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#open()
+	 */
+	@Override
+	public void open() throws DatabaseException {
+		super.open();
+		block = new ArrayList<Tuple>();
+		outerDone = false;
+		readBlock();
+		inner = null;
+		index = 0;
+	}
+
+	/**
+	 * reads the next block of the outer input, returning false if it is empty
+	 */
+	private boolean readBlock() {
+		block.clear();
+		Tuple t;
+		while (block.size() < blockSize && (t = outerSide.next()) != null) {
+			block.add(t);
+		}
+		outerDone = block.size() < blockSize;
+		return !block.isEmpty();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#fetch()
+	 */
+	@Override
+	protected Tuple fetch() {
+		if (block.isEmpty()) {
+			return null;
+		}
+		while (true) {
+			if (inner == null || index == block.size()) {
+				inner = innerSide.next();
+				index = 0;
+				if (inner == null) {
+					// the inner input is exhausted: move on to the next block
+					if (outerDone || !readBlock()) {
+						return null;
+					}
+					rescan();
+					continue;
+				}
+			}
+			Tuple outer = block.get(index++);
+			if (ValueComparator.INSTANCE.compare(outer.get(outerKey), inner.get(innerKey)) == 0) {
+				return outerLeft ? outer.concat(inner) : inner.concat(outer);
+			}
+		}
+	}
+
+	/**
+	 * starts the inner input again from its first tuple
+	 */
+	private void rescan() {
+		innerSide.close();
+		try {
+			innerSide.open();
+		} catch (DatabaseException e) {
+			// the inner input was opened successfully before, so its
+			// relations have already been read
+			throw new IllegalStateException("Failed to reopen " + innerSide, e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#close()
+	 */
+	@Override
+	public void close() {
+		block = null;
+		inner = null;
+		super.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "BLOCK NESTED LOOP JOIN [" + predicate + "]";
+	}
+}
@@ -0,0 +1,386 @@
+package sjdb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class caches the Pages of HeapFiles in a fixed number of frames,
+ * each the size of a page. A page is pinned while it is used, and
+ * unpinned when it is no longer needed, saying whether it was changed;
+ * a pinned page stays in its frame, and a changed (dirty) page is written
+ * back to its file before its frame is reused. When a page that is not
+ * in the pool is pinned and no frame is free, the EvictionPolicy chooses
+ * an unpinned frame to reuse.
+ *
+ * The pool may be used by several threads at once. A page that is in the
+ * pool is pinned without taking a lock: the page table is a concurrent
+ * map, and each frame has an atomic pin count. A frame is claimed for
+ * eviction by setting its pin count to a large negative number, so that
+ * a thread that finds the frame just as it is being evicted sees that it
+ * has lost it and looks again. Misses take one of a set of latches,
+ * chosen by page, so that two threads do not read the same page into two
+ * frames, while misses on other pages go ahead at the same time; only the
+ * choice of a victim is made by one thread at a time.
+ *
+ * The pool counts its hits, misses, evictions and writes, so that it can
+ * be sized for a workload.
+ */
+public class BufferPool {
+	public static final int DEFAULT_FRAMES = 1024; //4MB of pages
+
+	private static final int CLAIMED = Integer.MIN_VALUE / 2; //added to the pin count of a frame being evicted
+	private static final int LATCHES = 64;
+
+	private final Frame[] frames;
+	private final EvictionPolicy policy;
+	private final Map<PageKey, Frame> table = new ConcurrentHashMap<PageKey, Frame>();
+	private final Queue<Frame> free = new ConcurrentLinkedQueue<Frame>();
+	private final Object[] latches = new Object[LATCHES];
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+
+	/**
+	 * A page of a heap file
+	 */
+	private static final class PageKey {
+		private final HeapFile file;
+		private final int number;
+
+		private PageKey(HeapFile file, int number) {
+			this.file = file;
+			this.number = number;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(file) * 31 + number;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof PageKey)) {
+				return false;
+			}
+			PageKey rhs = (PageKey) obj;
+			return file == rhs.file && number == rhs.number;
+		}
+	}
+
+	/**
+	 * A frame of the pool, which holds a page while it is in the pool
+	 */
+	private static final class Frame {
+		private final int index;
+		private final AtomicInteger pins = new AtomicInteger();
+		private ByteBuffer buf; //allocated when the frame is first used
+		private volatile PageKey key; //null if the frame is free
+		private volatile Page page;
+		private volatile boolean dirty;
+
+		private Frame(int index) {
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Create a new buffer pool that evicts frames by the CLOCK algorithm
+	 * @param frames Number of pages the pool can hold
+	 */
+	public BufferPool(int frames) {
+		this(frames, new ClockPolicy());
+	}
+
+	/**
+	 * Create a new buffer pool
+	 * @param frames Number of pages the pool can hold
+	 * @param policy Policy that chooses the frames to evict, which is not shared with another pool
+	 */
+	public BufferPool(int frames, EvictionPolicy policy) {
+		if (frames < 1) {
+			throw new IllegalArgumentException("A buffer pool needs at least one frame, not " + frames);
+		}
+		this.frames = new Frame[frames];
+		for (int i = 0; i < frames; i++) {
+			this.frames[i] = new Frame(i);
+			free.add(this.frames[i]);
+		}
+		for (int i = 0; i < LATCHES; i++) {
+			latches[i] = new Object();
+		}
+		this.policy = policy;
+		policy.init(frames);
+	}
+
+	/**
+	 * Pin a page of a heap file, reading it into the pool if it is not
+	 * there already; the page must be unpinned once it is no longer used
+	 * @param file
+	 * @param number Number of the page
+	 * @return the page, which is shared by every thread that pins it
+	 * @throws IOException if the page cannot be read, or a dirty page cannot be written back to make room
+	 * @throws IllegalStateException if every frame is pinned
+	 */
+	public Page pin(HeapFile file, int number) throws IOException {
+		PageKey key = new PageKey(file, number);
+
+		while (true) {
+			Frame frame = table.get(key);
+			if (frame != null) {
+				// the frame may have been claimed for another page since it was looked up
+				if (frame.pins.incrementAndGet() > 0 && key.equals(frame.key)) {
+					hits.incrementAndGet();
+					policy.accessed(frame.index);
+					return frame.page;
+				}
+				frame.pins.decrementAndGet();
+				Thread.yield();
+				continue;
+			}
+
+			synchronized (latch(key)) {
+				if (table.containsKey(key)) {
+					// another thread read the page first
+					continue;
+				}
+				frame = claim();
+				Page page;
+				try {
+					page = file.readPage(number, frame.buf);
+				} catch (IOException e) {
+					release(frame);
+					throw e;
+				}
+				frame.page = page;
+				frame.dirty = false;
+				frame.key = key;
+				policy.loaded(frame.index);
+				frame.pins.addAndGet(1 - CLAIMED);
+				table.put(key, frame);
+				misses.incrementAndGet();
+				return page;
+			}
+		}
+	}
+
+	/**
+	 * Unpin a page pinned by pin()
+	 * @param file
+	 * @param number Number of the page
+	 * @param dirty Whether the page was changed while it was pinned
+	 * @throws IllegalStateException if the page is not pinned
+	 */
+	public void unpin(HeapFile file, int number, boolean dirty) {
+		Frame frame = table.get(new PageKey(file, number));
+		if (frame == null || frame.pins.get() <= 0) {
+			throw new IllegalStateException("Page " + number + " of " + file + " is not pinned");
+		}
+		if (dirty) {
+			frame.dirty = true;
+		}
+		frame.pins.decrementAndGet();
+	}
+
+	/**
+	 * Write back the dirty pages of a heap file
+	 * @param file
+	 * @throws IOException
+	 */
+	public void flush(HeapFile file) throws IOException {
+		for (Frame frame : frames) {
+			PageKey key = frame.key;
+			if (key != null && key.file == file && frame.dirty) {
+				// pinned while it is written, so that it is not evicted meanwhile
+				try {
+					if (frame.pins.incrementAndGet() > 0 && frame.key == key && frame.dirty) {
+						write(frame, key);
+					}
+				} finally {
+					frame.pins.decrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write back the dirty pages of a heap file and remove all of its
+	 * pages from the pool, before the file is closed or replaced
+	 * @param file
+	 * @throws IOException
+	 * @throws IllegalStateException if a page of the file is pinned
+	 */
+	public void drop(HeapFile file) throws IOException {
+		flush(file);
+		for (Frame frame : frames) {
+			PageKey key = frame.key;
+			if (key == null || key.file != file) {
+				continue;
+			}
+			if (!frame.pins.compareAndSet(0, CLAIMED)) {
+				throw new IllegalStateException("Page " + key.number + " of " + file + " is pinned");
+			}
+			table.remove(key, frame);
+			release(frame);
+		}
+	}
+
+	/**
+	 * Return the number of frames in the pool
+	 * @return
+	 */
+	public int getFrameCount() {
+		return frames.length;
+	}
+
+	/**
+	 * Return the eviction policy of the pool
+	 * @return
+	 */
+	public EvictionPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Return the number of pins of pages that were in the pool
+	 * @return
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Return the number of pins of pages that were read into the pool
+	 * @return
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Return the number of pages evicted to make room for others
+	 * @return
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Return the number of dirty pages written back to their files
+	 * @return
+	 */
+	public long getWrites() {
+		return writes.get();
+	}
+
+	/**
+	 * Return the fraction of pins that were hits, or 0 if there were none
+	 * @return
+	 */
+	public double getHitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return (total == 0) ? 0 : (double) h / total;
+	}
+
+	/**
+	 * Render the size, policy and counters of the pool
+	 * @return
+	 */
+	public String render() {
+		return "frames=" + frames.length + " (" + policy.getName() + "), hits=" + hits.get()
+				+ ", misses=" + misses.get() + ", evictions=" + evictions.get() + ", writes=" + writes.get()
+				+ ", hit ratio=" + String.format("%.3f", getHitRatio());
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return render();
+	}
+
+	/**
+	 * claims a free frame, or evicts one; the frame is returned out of the
+	 * page table, with CLAIMED added to its pin count and a buffer for a page
+	 */
+	private Frame claim() throws IOException {
+		Frame frame = free.poll();
+		if (frame != null) {
+			frame.pins.addAndGet(CLAIMED);
+		} else {
+			int victim;
+			synchronized (policy) {
+				victim = policy.victim(new EvictionPolicy.Frames() {
+					public boolean evict(int i) {
+						return frames[i].pins.compareAndSet(0, CLAIMED);
+					}
+
+					public boolean isPinned(int i) {
+						return frames[i].pins.get() != 0;
+					}
+				});
+			}
+			if (victim < 0) {
+				throw new IllegalStateException("All " + frames.length + " frames of the buffer pool are pinned");
+			}
+			frame = frames[victim];
+
+			// write the page back while it is still in the table, so that it is not read again before then
+			PageKey key = frame.key;
+			if (key != null) {
+				if (frame.dirty) {
+					try {
+						write(frame, key);
+					} catch (IOException e) {
+						frame.pins.addAndGet(-CLAIMED);
+						throw e;
+					}
+				}
+				table.remove(key, frame);
+				evictions.incrementAndGet();
+			}
+		}
+
+		if (frame.buf == null) {
+			frame.buf = ByteBuffer.allocate(Page.SIZE);
+		}
+		frame.key = null;
+		frame.page = null;
+		return frame;
+	}
+
+	/**
+	 * frees a claimed frame that is out of the page table
+	 */
+	private void release(Frame frame) {
+		frame.key = null;
+		frame.page = null;
+		frame.dirty = false;
+		frame.pins.addAndGet(-CLAIMED);
+		free.add(frame);
+	}
+
+	private void write(Frame frame, PageKey key) throws IOException {
+		frame.dirty = false;
+		try {
+			key.file.writePage(frame.page);
+		} catch (IOException e) {
+			frame.dirty = true;
+			throw e;
+		}
+		writes.incrementAndGet();
+	}
+
+	private Object latch(PageKey key) {
+		return latches[(key.hashCode() & 0x7fffffff) % LATCHES];
+	}
+}
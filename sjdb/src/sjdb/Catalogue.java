@@ -1,6 +1,15 @@
 package sjdb;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * This class contains the system catalogue for the database; it
@@ -16,18 +25,138 @@ import java.util.HashMap;
  * the attributes therein is stored on the relations or attributes,
  * and not in the catalogue.
  * 
+ * A catalogue can also be backed by a binary CatalogueSnapshot, in which
+ * case each relation is read from the snapshot when it is first looked
+ * up.
+ * 
+ * The statistics of a relation can be updated after it has been built.
+ * An update does not change the NamedRelation: it replaces it in the
+ * directory with a copy that has the new statistics and the next version
+ * number, so plans that are being built or run keep a consistent view,
+ * and anything that caches plans or estimates can tell which relations
+ * have changed.
+ * 
+ * The directory itself is copied on write. Every change publishes a new
+ * version of the directory atomically, and changes are made one at a
+ * time, so any number of threads can read the catalogue without locking
+ * while another updates it. snapshot() returns a read-only view of the
+ * current version, which is not affected by later changes; QueryParser
+ * reads each query against one. The versions share their structure, so
+ * a change only copies the entries on the path to the relation and
+ * attributes it changes, in O(log n) time for n relations. Changes that
+ * must be seen together should be made with update(), which publishes
+ * them all at once (or none of them, if it fails).
+ * 
  * @author nmg
  *
  */
 public class Catalogue {
 	
-	private HashMap<String, NamedRelation> relations;
-	private HashMap<String, Attribute> attributes;
+	/**
+	 * A set of changes made by update()
+	 */
+	public interface Update {
+		/**
+		 * Make the changes
+		 * @param catalogue The catalogue to change; the changes are only
+		 * visible through it until they are published
+		 * @throws DatabaseException
+		 */
+		void apply(Catalogue catalogue) throws DatabaseException;
+	}
+	
+	private final AtomicReference<Directory> current; //the latest published version, shared with snapshots
+	private final Object writeLock; //held while a new version is made
+	private final CatalogueSnapshot backing; //relations not found in the directory are read from here, if set
+	private final Map<String, NamedRelation> backingRelations; //relations read from the backing snapshot
+	private final Map<String, Attribute> backingAttributes;
+	
+	private final Directory view; //the version seen by a snapshot, or changed by an update; null for the catalogue itself
+	private final boolean readOnly;
 
 
 	public Catalogue() {
-		this.relations = new HashMap<String, NamedRelation>();
-		this.attributes = new HashMap<String, Attribute>();
+		this((CatalogueSnapshot) null);
+	}
+	
+	/**
+	 * Create a catalogue backed by a snapshot
+	 * 
+	 * @param snapshot
+	 */
+	public Catalogue(CatalogueSnapshot snapshot) {
+		this.current = new AtomicReference<Directory>(new Directory());
+		this.writeLock = new Object();
+		this.backing = snapshot;
+		this.backingRelations = new ConcurrentHashMap<String, NamedRelation>();
+		this.backingAttributes = new ConcurrentHashMap<String, Attribute>();
+		this.view = null;
+		this.readOnly = false;
+	}
+	
+	/**
+	 * creates a view of a version of the catalogue
+	 */
+	private Catalogue(Catalogue catalogue, Directory view, boolean readOnly) {
+		this.current = catalogue.current;
+		this.writeLock = catalogue.writeLock;
+		this.backing = catalogue.backing;
+		this.backingRelations = catalogue.backingRelations;
+		this.backingAttributes = catalogue.backingAttributes;
+		this.view = view;
+		this.readOnly = readOnly;
+	}
+	
+	/**
+	 * Return a read-only view of the current version of this catalogue,
+	 * which is not affected by later changes.
+	 * 
+	 * @return
+	 */
+	public Catalogue snapshot() {
+		if (readOnly) {
+			return this;
+		}
+		return new Catalogue(this, directory(), true);
+	}
+	
+	/**
+	 * Make a set of changes to this catalogue, and publish them together:
+	 * readers see either all of the changes or none of them. If the changes
+	 * fail, none of them are published.
+	 * 
+	 * @param update
+	 * @throws DatabaseException if the changes fail
+	 */
+	public void update(Update update) throws DatabaseException {
+		if (view != null) {
+			// already part of a set of changes
+			checkWritable();
+			update.apply(this);
+			return;
+		}
+		
+		synchronized (writeLock) {
+			Directory next = new Directory(current.get());
+			next.open = true;
+			try {
+				update.apply(new Catalogue(this, next, false));
+			} finally {
+				next.open = false;
+			}
+			current.set(next);
+		}
+	}
+	
+	/**
+	 * Return the version of this catalogue, which increases with every
+	 * set of changes; relations read from a backing snapshot do not
+	 * change it.
+	 * 
+	 * @return
+	 */
+	public long getVersion() {
+		return directory().version;
 	}
 	
 	/**
@@ -37,10 +166,8 @@ public class Catalogue {
 	 * @param relName
 	 * @param size
 	 */
-	public NamedRelation createRelation(String relName, int size) {
-		NamedRelation reln = new NamedRelation(relName, size);
-		relations.put(relName, reln);
-		return reln;
+	public NamedRelation createRelation(String relName, long size) {
+		return write(d -> d.put(new NamedRelation(relName, size, Schema.EMPTY, nextVersion(find(d, relName)))));
 	}
 	
 	/**
@@ -53,11 +180,214 @@ public class Catalogue {
 	 * @param values
 	 * @return
 	 */
-	public Attribute createAttribute(String relName, String attName, int values) {
-		Attribute attr = new Attribute(attName, values);
-		attributes.put(attName, attr);
-		relations.get(relName).addAttribute(attr);
-		return attr;
+	public Attribute createAttribute(String relName, String attName, long values) {
+		return addAttribute(relName, new Attribute(attName, values));
+	}
+	
+	/**
+	 * Create a new Attribute with the specified name, number of distinct
+	 * values and synopsis of its value distribution, add it to the directory
+	 * and associate it with the specified NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param values
+	 * @param mostCommonValues Most common values, with the fraction of the tuples that take each
+	 * @param histogram Histogram over the other values, or null
+	 * @return
+	 */
+	public Attribute createAttribute(String relName, String attName, long values,
+			Map<String, Double> mostCommonValues, Histogram histogram) {
+		return addAttribute(relName, new Attribute(attName, values, mostCommonValues, histogram));
+	}
+	
+	/**
+	 * Add an Attribute that has already been created to the directory and
+	 * associate it with the specified NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attr
+	 * @return
+	 */
+	public Attribute addAttribute(String relName, Attribute attr) {
+		return write(d -> {
+			NamedRelation old = find(d, relName);
+			if (old == null) {
+				throw new IllegalArgumentException("Named relation " + relName + " not found");
+			}
+			Schema schema = old.getSchema().concat(new Schema(Collections.singletonList(attr)));
+			d.putAttribute(attr);
+			d.put(new NamedRelation(relName, old.getTupleCount(), schema, old.getVersion() + 1, old.getPageCount()));
+			return attr;
+		});
+	}
+	
+	/**
+	 * Add a NamedRelation that has already been created, with its
+	 * attributes, to the directory; it replaces any relation of the same
+	 * name. The relation cannot be changed once it has been added.
+	 * 
+	 * @param reln
+	 * @return
+	 */
+	public NamedRelation addRelation(NamedRelation reln) {
+		return write(d -> {
+			String name = reln.toString();
+			NamedRelation old = find(d, name);
+			NamedRelation added = d.put((old == null) ? reln
+					: new NamedRelation(name, reln.getTupleCount(), reln.getSchema(), nextVersion(old), reln.getPageCount()));
+			for (Attribute attr : added.getAttributes()) {
+				d.putAttribute(attr);
+			}
+			return added;
+		});
+	}
+	
+	/**
+	 * Set the tuple count of a NamedRelation. Value counts larger than
+	 * the new tuple count are reduced to it.
+	 * 
+	 * @param relName
+	 * @param size
+	 * @return the updated relation
+	 */
+	public NamedRelation updateTupleCount(String relName, long size) throws DatabaseException {
+		return update(relName, old -> new NamedRelation(relName, size, old.getSchema(), old.getVersion() + 1,
+				old.getPageCount()));
+	}
+	
+	/**
+	 * Set the number of pages that hold the tuples of a NamedRelation.
+	 * 
+	 * @param relName
+	 * @param pages
+	 * @return the updated relation
+	 */
+	public NamedRelation updatePageCount(String relName, long pages) throws DatabaseException {
+		return update(relName, old -> new NamedRelation(relName, old.getTupleCount(), old.getSchema(),
+				old.getVersion() + 1, pages));
+	}
+	
+	/**
+	 * Set the number of distinct values of an Attribute of a NamedRelation,
+	 * keeping its synopsis.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param values
+	 * @return the updated relation
+	 */
+	public NamedRelation updateValueCount(String relName, String attName, long values) throws DatabaseException {
+		return update(relName, old -> {
+			Attribute attr = new Attribute(attName);
+			if (!old.getSchema().contains(attr)) {
+				throw new IllegalArgumentException("Attribute " + attr + " not found in " + relName);
+			}
+			attr = new Attribute(old.getAttribute(attr), values);
+			return new NamedRelation(relName, old.getTupleCount(), old.getSchema().replace(attr), old.getVersion() + 1,
+					old.getPageCount());
+		});
+	}
+	
+	/**
+	 * Replace an Attribute of a NamedRelation (the one with the same name)
+	 * with one with new statistics.
+	 * 
+	 * @param relName
+	 * @param attr
+	 * @return the updated relation
+	 */
+	public NamedRelation updateAttribute(String relName, Attribute attr) throws DatabaseException {
+		return update(relName, old -> {
+			if (!old.getSchema().contains(attr)) {
+				throw new IllegalArgumentException("Attribute " + attr + " not found in " + relName);
+			}
+			return new NamedRelation(relName, old.getTupleCount(), old.getSchema().replace(attr), old.getVersion() + 1,
+					old.getPageCount());
+		});
+	}
+	
+	/**
+	 * replaces a relation with an updated copy, and the attributes of the
+	 * copy in the directory
+	 */
+	private NamedRelation update(String relName, Function<NamedRelation, NamedRelation> change) throws DatabaseException {
+		try {
+			return write(d -> {
+				NamedRelation old = find(d, relName);
+				if (old == null) {
+					throw new IllegalArgumentException("Named relation " + relName + " not found");
+				}
+				NamedRelation reln = d.put(change.apply(old));
+				for (Attribute attr : reln.getAttributes()) {
+					d.putAttribute(attr);
+				}
+				return reln;
+			});
+		} catch (IllegalArgumentException e) {
+			throw new DatabaseException(e.getMessage());
+		}
+	}
+	
+	private static long nextVersion(NamedRelation old) {
+		return (old == null) ? 0 : old.getVersion() + 1;
+	}
+	
+	/**
+	 * makes a change to a new version of the directory, and publishes it;
+	 * within update(), the change is made to the version being built
+	 */
+	private <T> T write(Function<Directory, T> change) {
+		if (view != null) {
+			checkWritable();
+			return change.apply(view);
+		}
+		
+		synchronized (writeLock) {
+			Directory next = new Directory(current.get());
+			T ret = change.apply(next);
+			current.set(next);
+			return ret;
+		}
+	}
+	
+	private void checkWritable() {
+		if (readOnly) {
+			throw new UnsupportedOperationException("A catalogue snapshot cannot be changed");
+		}
+		if (!view.open) {
+			throw new IllegalStateException("The update has finished");
+		}
+	}
+	
+	/**
+	 * returns the version of the directory read by this catalogue
+	 */
+	private Directory directory() {
+		return (view != null) ? view : current.get();
+	}
+	
+	/**
+	 * looks up a relation in a version of the directory, and then in the
+	 * backing snapshot; returns null if there is none
+	 */
+	private NamedRelation find(Directory d, String name) {
+		NamedRelation reln = d.relations.get(name);
+		
+		if (reln==null && backing!=null) {
+			reln = backingRelations.get(name);
+			if (reln==null) {
+				reln = backing.getRelation(name);
+				if (reln!=null) {
+					// another thread may have read the same relation
+					reln.publish();
+					NamedRelation existing = backingRelations.putIfAbsent(name, reln);
+					reln = (existing==null) ? reln : existing;
+				}
+			}
+		}
+		
+		return reln;
 	}
 	
 	/**
@@ -67,7 +397,7 @@ public class Catalogue {
 	 * @return
 	 */
 	public NamedRelation getRelation(String name) throws DatabaseException {
-		NamedRelation reln = relations.get(name);
+		NamedRelation reln = find(directory(), name);
 		
 		if (reln==null) {
 			throw new DatabaseException("Named relation " + name + " not found");
@@ -83,7 +413,18 @@ public class Catalogue {
 	 * @return
 	 */
 	public Attribute getAttribute(String name) throws DatabaseException {
-		Attribute attr = attributes.get(name);
+		Attribute attr = directory().attributes.get(name);
+		
+		if (attr==null && backing!=null) {
+			attr = backingAttributes.get(name);
+			if (attr==null) {
+				attr = backing.getAttribute(name);
+				if (attr!=null) {
+					Attribute existing = backingAttributes.putIfAbsent(name, attr);
+					attr = (existing==null) ? attr : existing;
+				}
+			}
+		}
 		
 		if (attr==null) {
 			throw new DatabaseException("Attribute " + name + " not found");
@@ -91,4 +432,78 @@ public class Catalogue {
 		
 		return attr;
 	}
+	
+	/**
+	 * Return all the NamedRelations, in order of name; a catalogue backed
+	 * by a snapshot reads every relation from it.
+	 * 
+	 * @return
+	 */
+	public List<NamedRelation> getRelations() throws DatabaseException {
+		Directory d = directory();
+		
+		List<String> names;
+		if (backing!=null) {
+			TreeSet<String> all = new TreeSet<String>(d.relations.keys());
+			all.addAll(backing.getRelationNames());
+			names = new ArrayList<String>(all);
+		} else {
+			names = d.relations.keys();
+			Collections.sort(names);
+		}
+		
+		List<NamedRelation> ret = new ArrayList<NamedRelation>(names.size());
+		for (String name : names) {
+			ret.add(find(d, name));
+		}
+		return ret;
+	}
+	
+	/**
+	 * Write a binary snapshot of this catalogue, which can be opened
+	 * with CatalogueSnapshot.open() much faster than the text form can
+	 * be parsed.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 * @throws DatabaseException
+	 */
+	public void writeSnapshot(File file) throws IOException, DatabaseException {
+		CatalogueSnapshot.write(this, file);
+	}
+	
+	/**
+	 * A version of the directory. Once it has been published it is never
+	 * changed; the next version starts out sharing its maps, and each
+	 * change to it copies only the part of a map that holds the entry
+	 * changed (see PersistentMap).
+	 */
+	private static class Directory {
+		private PersistentMap<String, NamedRelation> relations;
+		private PersistentMap<String, Attribute> attributes;
+		private final long version;
+		private volatile boolean open; //true while update() is building this version
+		
+		private Directory() {
+			this.relations = new PersistentMap<String, NamedRelation>();
+			this.attributes = new PersistentMap<String, Attribute>();
+			this.version = 0;
+		}
+		
+		private Directory(Directory previous) {
+			this.relations = previous.relations;
+			this.attributes = previous.attributes;
+			this.version = previous.version + 1;
+		}
+		
+		private NamedRelation put(NamedRelation reln) {
+			reln.publish();
+			relations = relations.put(reln.toString(), reln);
+			return reln;
+		}
+		
+		private void putAttribute(Attribute attr) {
+			attributes = attributes.put(attr.getName(), attr);
+		}
+	}
 }
@@ -0,0 +1,321 @@
+package sjdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class loads a serialised system catalogue, in the format read by
+ * CatalogueParser, into a Catalogue. It is meant for very large catalogues:
+ *
+ * - the file is read through memory-mapped regions of a FileChannel
+ * - lines are tokenised directly from the mapped bytes; counts are parsed
+ *   without creating strings, so the only objects created per field are
+ *   the names and the relations and attributes themselves
+ * - the file can be split into chunks at line boundaries and parsed on
+ *   several threads; the relations are still added to the catalogue in
+ *   the order of the file
+ *
+ * Blank lines are ignored. A malformed line stops the load with a
+ * DatabaseException that gives the file name and line number, and none
+ * of the relations are added to the catalogue.
+ */
+public class CatalogueLoader {
+	private static final long MAX_CHUNK = 64L << 20; //size of the regions of the file mapped at once
+
+	private File file;
+	private Catalogue catalogue;
+	private int threads = 1;
+
+	/**
+	 * Create a loader that reads the given file into a catalogue
+	 * @param file
+	 * @param catalogue
+	 */
+	public CatalogueLoader(File file, Catalogue catalogue) {
+		this.file = file;
+		this.catalogue = catalogue;
+	}
+
+	/**
+	 * Set the number of threads that parse the file
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(threads, 1);
+	}
+
+	/**
+	 * Load the catalogue
+	 * @throws IOException if the file cannot be read
+	 * @throws DatabaseException if a line is malformed
+	 */
+	public void load() throws IOException, DatabaseException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			List<Chunk> chunks = split(channel);
+			if (threads == 1 || chunks.size() == 1) {
+				for (Chunk chunk : chunks) {
+					if (chunk.call().error != null) {
+						break;
+					}
+				}
+			} else {
+				parseAll(chunks);
+			}
+
+			// the relations are published together, rather than copying the
+			// catalogue's directory for each one
+			catalogue.update(batch -> {
+				int lines = 0;
+				for (Chunk chunk : chunks) {
+					if (chunk.error != null) {
+						throw new DatabaseException(file + ":" + (lines + chunk.errorLine) + ": " + chunk.error);
+					}
+					for (NamedRelation reln : chunk.relations) {
+						batch.addRelation(reln);
+					}
+					lines += chunk.lines;
+				}
+			});
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * parses the chunks on a pool of threads
+	 */
+	private void parseAll(List<Chunk> chunks) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Chunk>> results = new ArrayList<Future<Chunk>>();
+			for (Chunk chunk : chunks) {
+				results.add(executor.submit(chunk));
+			}
+			for (Future<Chunk> result : results) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading " + file, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Failed to load " + file, e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * splits the file into chunks that end at line boundaries: one per
+	 * thread, or more if the file is large
+	 */
+	private List<Chunk> split(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long count = Math.max(threads, (size + MAX_CHUNK - 1) / MAX_CHUNK);
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		ByteBuffer buf = ByteBuffer.allocate(4096);
+
+		long start = 0;
+		for (long i = 1; i < count; i++) {
+			long end = nextLine(channel, Math.max(size / count * i, start), buf);
+			if (end > start && end < size) {
+				chunks.add(new Chunk(channel, start, end));
+				start = end;
+			}
+		}
+		chunks.add(new Chunk(channel, start, size));
+		return chunks;
+	}
+
+	/**
+	 * returns the position after the first newline at or after a position,
+	 * or the size of the file if there is none
+	 */
+	private static long nextLine(FileChannel channel, long position, ByteBuffer buf) throws IOException {
+		if (position == 0) {
+			return 0;
+		}
+		long p = position - 1; //the chunk may end just after a newline
+		while (true) {
+			buf.clear();
+			int n = channel.read(buf, p);
+			if (n <= 0) {
+				return channel.size();
+			}
+			for (int i = 0; i < n; i++) {
+				if (buf.get(i) == '\n') {
+					return p + i + 1;
+				}
+			}
+			p += n;
+		}
+	}
+
+	/**
+	 * A region of the file, parsed into the relations it describes
+	 */
+	private static class Chunk implements Callable<Chunk> {
+		private FileChannel channel;
+		private long start;
+		private long end;
+
+		private List<NamedRelation> relations = new ArrayList<NamedRelation>();
+		private int lines = 0;
+		private String error; //the first error in the chunk, if any
+		private int errorLine;
+
+		private MappedByteBuffer buf;
+		private byte[] scratch = new byte[64]; //reused to decode names
+
+		private Chunk(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		public Chunk call() throws IOException {
+			if (end - start > Integer.MAX_VALUE) {
+				error = "line too long";
+				errorLine = 1;
+				return this;
+			}
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			int limit = buf.limit();
+			int pos = 0;
+
+			while (pos < limit) {
+				int eol = indexOf((byte) '\n', pos, limit);
+				int next = (eol < 0) ? limit : eol + 1;
+				int lineEnd = (eol < 0) ? limit : eol;
+				if (lineEnd > pos && buf.get(lineEnd - 1) == '\r') {
+					lineEnd--;
+				}
+				lines++;
+
+				if (lineEnd > pos) {
+					try {
+						relations.add(parseRelation(pos, lineEnd));
+					} catch (RuntimeException e) {
+						error = (e.getMessage() == null) ? e.toString() : e.getMessage();
+						errorLine = lines;
+						break;
+					}
+				}
+				pos = next;
+			}
+
+			buf = null;
+			return this;
+		}
+
+		/**
+		 * parses <relation name>:<tuple count>:<attribute>:...:<attribute>
+		 */
+		private NamedRelation parseRelation(int from, int to) {
+			int colon = indexOf((byte) ':', from, to);
+			if (colon <= from) {
+				throw new IllegalArgumentException("expected <relation name>:<tuple count>");
+			}
+			String name = string(from, colon);
+
+			int p = colon + 1;
+			colon = indexOf((byte) ':', p, to);
+			int fieldEnd = (colon < 0) ? to : colon;
+			NamedRelation reln = new NamedRelation(name, number(p, fieldEnd, "tuple count", name));
+
+			while (fieldEnd < to) {
+				p = fieldEnd + 1;
+				colon = indexOf((byte) ':', p, to);
+				fieldEnd = (colon < 0) ? to : colon;
+				reln.addAttribute(parseAttribute(p, fieldEnd));
+			}
+			return reln;
+		}
+
+		/**
+		 * parses <attribute name>,<value count>[,<synopsis>...]
+		 */
+		private Attribute parseAttribute(int from, int to) {
+			int comma = indexOf((byte) ',', from, to);
+			if (comma <= from) {
+				throw new IllegalArgumentException("expected <attribute name>,<value count> but found \""
+						+ string(from, to) + "\"");
+			}
+			String name = string(from, comma);
+
+			int p = comma + 1;
+			comma = indexOf((byte) ',', p, to);
+			int fieldEnd = (comma < 0) ? to : comma;
+			long values = number(p, fieldEnd, "value count", name);
+
+			if (comma < 0) {
+				return new Attribute(name, values);
+			}
+			return CatalogueParser.parseSynopsis(name, values, string(comma + 1, to).split(","), 0);
+		}
+
+		/**
+		 * parses a count; plain decimal numbers are parsed from the bytes,
+		 * and anything else (such as hexadecimal) falls back on Long.decode
+		 */
+		private long number(int from, int to, String what, String name) {
+			int length = to - from;
+			if (length > 0 && length <= 18 && (length == 1 || buf.get(from) != '0')) {
+				long n = 0;
+				int i = from;
+				for (; i < to; i++) {
+					int d = buf.get(i) - '0';
+					if (d < 0 || d > 9) {
+						break;
+					}
+					n = n * 10 + d;
+				}
+				if (i == to) {
+					return n;
+				}
+			}
+
+			String s = string(from, to);
+			try {
+				return Long.decode(s);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("bad " + what + " of " + name + ": \"" + s + "\"");
+			}
+		}
+
+		private String string(int from, int to) {
+			int length = to - from;
+			if (scratch.length < length) {
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+			}
+			for (int i = 0; i < length; i++) {
+				scratch[i] = buf.get(from + i);
+			}
+			return new String(scratch, 0, length, StandardCharsets.UTF_8);
+		}
+
+		private int indexOf(byte b, int from, int to) {
+			for (int i = from; i < to; i++) {
+				if (buf.get(i) == b) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+}
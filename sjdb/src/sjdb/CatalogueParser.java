@@ -1,5 +1,8 @@
 package sjdb;
 import java.io.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * This class parses a serialised system catalogue, and uses the
@@ -10,6 +13,17 @@ import java.io.*;
  * 
  * <relation name>:<tuple count>:<attr name>,<value count>:<attr name>,<value count>
  * 
+ * An attribute may be followed by a synopsis of its value distribution,
+ * with the most common values and the fraction of the tuples that take
+ * each, and the bounds of an equi-depth histogram over the other values:
+ * 
+ * <attr name>,<value count>,mcv=<value>/<fraction>;<value>/<fraction>,hist=<bound>;<bound>;<bound>
+ * 
+ * and by the average width of its values in bytes, as width=<bytes>. An
+ * attribute followed by the field index has a B+-tree index:
+ * 
+ * <attr name>,<value count>,width=<bytes>,index
+ * 
  * @author nmg
  */
 public class CatalogueParser {
@@ -31,32 +45,93 @@ public class CatalogueParser {
 	}
 	
 	public void parse() {
-		String line;
-
 		try {
-			while ((line = this.read.readLine()) != null) {
-				parseRelation(line.split(":", 0));
-			}
+			// the relations are published together, and none of them are
+			// if a line cannot be read or parsed
+			catalogue.update(batch -> {
+				String line;
+				try {
+					while ((line = this.read.readLine()) != null) {
+						parseRelation(batch, line.split(":", 0));
+					}
+				} catch (IOException e) {
+					throw new DatabaseException("Failed to read the catalogue", e);
+				}
+			});
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			try {
+				this.read.close();
+			} catch (Exception e) {
+				// nothing more to do if the file can't be closed
+			}
 		}
 	}
 	
-	private void parseRelation(String[] parts) {
+	private void parseRelation(Catalogue catalogue, String[] parts) {
 		String reln = parts[0];
-		int size = Integer.decode(parts[1]).intValue();
+		long size = Long.decode(parts[1]).longValue();
 		
 		catalogue.createRelation(reln, size);
 		
 		for (int i = 2; i < parts.length; i++) {
-			parseAttribute(reln, parts[i].split(",", 0));
+			parseAttribute(catalogue, reln, parts[i].split(",", 0));
 		}
 	}
 
-	private void parseAttribute(String reln, String[] parts) {
+	private void parseAttribute(Catalogue catalogue, String reln, String[] parts) {
 		String attr = parts[0];
-		int values = Integer.decode(parts[1]).intValue();
+		long values = Long.decode(parts[1]).longValue();
+		
+		catalogue.addAttribute(reln, parseSynopsis(attr, values, parts, 2));
+	}
+	
+	/**
+	 * Create an attribute with the synopsis given by the mcv=, hist=,
+	 * width= and index fields in parts[from] onwards (if any)
+	 * @param attr Name of the attribute
+	 * @param values Value count
+	 * @param parts Fields of the attribute
+	 * @param from Position of the first synopsis field
+	 * @return
+	 */
+	static Attribute parseSynopsis(String attr, long values, String[] parts, int from) {
+		if (parts.length <= from) {
+			return new Attribute(attr, values);
+		}
+		
+		Map<String, Double> mostCommonValues = new LinkedHashMap<String, Double>();
+		Histogram histogram = null;
+		int width = 0;
+		boolean indexed = false;
+		for (int i = from; i < parts.length; i++) {
+			if (parts[i].startsWith("mcv=")) {
+				for (String mcv : parts[i].substring(4).split(";")) {
+					int slash = mcv.lastIndexOf('/');
+					if (slash < 0) {
+						throw new IllegalArgumentException("Bad most common value " + mcv + " for " + attr);
+					}
+					mostCommonValues.put(mcv.substring(0, slash), Double.valueOf(mcv.substring(slash + 1)));
+				}
+			} else if (parts[i].startsWith("hist=")) {
+				histogram = new Histogram(Arrays.asList(parts[i].substring(5).split(";")));
+			} else if (parts[i].startsWith("width=")) {
+				try {
+					width = Integer.parseInt(parts[i].substring(6));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Bad width " + parts[i].substring(6) + " for " + attr);
+				}
+				if (width <= 0) {
+					throw new IllegalArgumentException("Bad width " + width + " for " + attr);
+				}
+			} else if (parts[i].equals("index")) {
+				indexed = true;
+			} else {
+				throw new IllegalArgumentException("Bad synopsis " + parts[i] + " for " + attr);
+			}
+		}
 		
-		catalogue.createAttribute(reln, attr, values);
+		return new Attribute(attr, values, mostCommonValues, histogram, width, indexed);
 	}
 }
@@ -0,0 +1,464 @@
+package sjdb;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reads and writes binary snapshots of a catalogue. A snapshot
+ * is memory-mapped when it is opened, and a relation is only read from it
+ * when it is first looked up, so opening a snapshot takes the same time
+ * however large the catalogue is.
+ *
+ * A snapshot is laid out as follows (all numbers big-endian):
+ *
+ * - header: the magic bytes "SJDBSNAP", the format version, the numbers
+ *   of relations, attributes and strings, the sizes of the two hash
+ *   indexes, and the offsets of the sections below
+ * - string table: the offsets of the strings, then their UTF-8 bytes;
+ *   each distinct name or value is stored once
+ * - relations: fixed-width records of (name, tuple count, first
+ *   attribute, number of attributes, page count)
+ * - attributes: fixed-width records of (name, value count, synopsis,
+ *   width, flags); the only flag is INDEXED
+ * - relation and attribute indexes: open-addressing hash tables of
+ *   (hash of the name, record number + 1)
+ * - synopses: the most common values with their fractions and the
+ *   histogram bounds of the attributes that have them
+ *
+ * Snapshots of earlier versions can still be read: version 3 snapshots
+ * have no flags, version 2 snapshots have no page counts either, and
+ * version 1 snapshots have no widths either.
+ *
+ * Snapshots are limited to 2GB, the most that can be mapped at once.
+ */
+public class CatalogueSnapshot {
+	private static final byte[] MAGIC = "SJDBSNAP".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 4;
+	private static final int HEADER_SIZE = 88;
+	private static final int RELATION_SIZE = 28;
+	private static final int RELATION_SIZE_V2 = 20;
+	private static final int ATTRIBUTE_SIZE = 24;
+	private static final int ATTRIBUTE_SIZE_V3 = 20;
+	private static final int ATTRIBUTE_SIZE_V1 = 16;
+	private static final int SLOT_SIZE = 8;
+	private static final int INDEXED = 1; //flag of an attribute with an index
+
+	private final ByteBuffer buf; //only accessed with absolute gets, so it can be shared by threads
+	private final int version;
+	private final int relationSize; //sizes of the records, which depend on the version
+	private final int attributeSize;
+	private final int relationCount;
+	private final int relationSlots;
+	private final int attributeSlots;
+	private final int stringOffsets;
+	private final int stringData;
+	private final int relations;
+	private final int attributes;
+	private final int relationIndex;
+	private final int attributeIndex;
+	private final int synopses;
+
+	private CatalogueSnapshot(ByteBuffer buf, File file) throws DatabaseException {
+		this.buf = buf;
+		if (buf.limit() < HEADER_SIZE) {
+			throw new DatabaseException(file + " is not a catalogue snapshot");
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (buf.get(i) != MAGIC[i]) {
+				throw new DatabaseException(file + " is not a catalogue snapshot");
+			}
+		}
+		version = buf.getInt(8);
+		if (version < 1 || version > VERSION) {
+			throw new DatabaseException(file + " has snapshot version " + version + ", expected at most " + VERSION);
+		}
+		relationSize = (version < 3) ? RELATION_SIZE_V2 : RELATION_SIZE;
+		attributeSize = (version < 2) ? ATTRIBUTE_SIZE_V1 : (version < 4) ? ATTRIBUTE_SIZE_V3 : ATTRIBUTE_SIZE;
+		relationCount = buf.getInt(12);
+		relationSlots = buf.getInt(24);
+		attributeSlots = buf.getInt(28);
+		stringOffsets = (int) buf.getLong(32);
+		stringData = (int) buf.getLong(40);
+		relations = (int) buf.getLong(48);
+		attributes = (int) buf.getLong(56);
+		relationIndex = (int) buf.getLong(64);
+		attributeIndex = (int) buf.getLong(72);
+		synopses = (int) buf.getLong(80);
+	}
+
+	/**
+	 * Return true if a file starts with the snapshot magic bytes
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isSnapshot(File file) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		InputStream in = Files.newInputStream(file.toPath());
+		try {
+			int n = 0;
+			while (n < magic.length) {
+				int r = in.read(magic, n, magic.length - n);
+				if (r < 0) {
+					return false;
+				}
+				n += r;
+			}
+		} finally {
+			in.close();
+		}
+		return Arrays.equals(magic, MAGIC);
+	}
+
+	/**
+	 * Open a snapshot by mapping it into memory
+	 * @param file
+	 * @return
+	 * @throws IOException if the file cannot be read
+	 * @throws DatabaseException if the file is not a snapshot of a version that can be read
+	 */
+	public static CatalogueSnapshot open(File file) throws IOException, DatabaseException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new DatabaseException(file + " is too large to map");
+			}
+			// the mapping stays valid after the channel is closed
+			return new CatalogueSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Return the number of relations in the snapshot
+	 * @return
+	 */
+	public int getRelationCount() {
+		return relationCount;
+	}
+
+	/**
+	 * Return the names of the relations in the snapshot, in the order in
+	 * which they are stored
+	 * @return
+	 */
+	public List<String> getRelationNames() {
+		List<String> names = new ArrayList<String>(relationCount);
+		for (int i = 0; i < relationCount; i++) {
+			names.add(string(buf.getInt(relations + i * relationSize)));
+		}
+		return names;
+	}
+
+	/**
+	 * Read the relation with the given name, with its attributes
+	 * @param name
+	 * @return the relation, or null if there is none
+	 */
+	public NamedRelation getRelation(String name) {
+		int i = find(relationIndex, relationSlots, relations, relationSize, name);
+		if (i < 0) {
+			return null;
+		}
+		int record = relations + i * relationSize;
+		int first = buf.getInt(record + 12);
+		int count = buf.getInt(record + 16);
+		long pages = (version < 3) ? 0 : buf.getLong(record + 20);
+		List<Attribute> attrs = new ArrayList<Attribute>(count);
+		for (int a = first; a < first + count; a++) {
+			attrs.add(attribute(a));
+		}
+		long tuples = buf.getLong(record + 4);
+		return new NamedRelation(name, tuples, new Schema(attrs).limit(tuples), 0, pages);
+	}
+
+	/**
+	 * Read the attribute with the given name
+	 * @param name
+	 * @return the attribute, or null if there is none
+	 */
+	public Attribute getAttribute(String name) {
+		int i = find(attributeIndex, attributeSlots, attributes, attributeSize, name);
+		return (i < 0) ? null : attribute(i);
+	}
+
+	/**
+	 * reads an attribute record, with its synopsis
+	 */
+	private Attribute attribute(int i) {
+		int record = attributes + i * attributeSize;
+		String name = string(buf.getInt(record));
+		long values = buf.getLong(record + 4);
+		int synopsis = buf.getInt(record + 12);
+		int width = (version < 2) ? 0 : buf.getInt(record + 16);
+		boolean indexed = (version >= 4) && (buf.getInt(record + 20) & INDEXED) != 0;
+		if (synopsis < 0) {
+			return new Attribute(name, values, Collections.<String, Double>emptyMap(), null, width, indexed);
+		}
+
+		int p = synopses + synopsis;
+		int mcvs = buf.getInt(p);
+		p += 4;
+		Map<String, Double> mostCommonValues = new LinkedHashMap<String, Double>();
+		for (int m = 0; m < mcvs; m++) {
+			mostCommonValues.put(string(buf.getInt(p)), buf.getDouble(p + 4));
+			p += 12;
+		}
+		int bounds = buf.getInt(p);
+		p += 4;
+		Histogram histogram = null;
+		if (bounds > 0) {
+			List<String> list = new ArrayList<String>(bounds);
+			for (int b = 0; b < bounds; b++) {
+				list.add(string(buf.getInt(p)));
+				p += 4;
+			}
+			histogram = new Histogram(list);
+		}
+		return new Attribute(name, values, mostCommonValues, histogram, width, indexed);
+	}
+
+	/**
+	 * looks a name up in a hash index; returns the record number, or -1
+	 */
+	private int find(int index, int slots, int records, int recordSize, String name) {
+		if (slots == 0) {
+			return -1;
+		}
+		int hash = hash(name);
+		for (int s = hash & (slots - 1); ; s = (s + 1) & (slots - 1)) {
+			int slot = index + s * SLOT_SIZE;
+			int record = buf.getInt(slot + 4) - 1;
+			if (record < 0) {
+				return -1;
+			}
+			if (buf.getInt(slot) == hash && string(buf.getInt(records + record * recordSize)).equals(name)) {
+				return record;
+			}
+		}
+	}
+
+	private String string(int id) {
+		int from = buf.getInt(stringOffsets + id * 4);
+		int to = buf.getInt(stringOffsets + id * 4 + 4);
+		byte[] bytes = new byte[to - from];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buf.get(stringData + from + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write a snapshot of a catalogue
+	 * @param catalogue
+	 * @param file
+	 * @throws IOException
+	 * @throws DatabaseException if the catalogue cannot read a relation from its own snapshot
+	 */
+	public static void write(Catalogue catalogue, File file) throws IOException, DatabaseException {
+		List<NamedRelation> rels = new ArrayList<NamedRelation>(catalogue.getRelations());
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<byte[]> strings = new ArrayList<byte[]>();
+		ByteArrayOutputStream synopsisBytes = new ByteArrayOutputStream();
+		DataOutputStream synopsisOut = new DataOutputStream(synopsisBytes);
+
+		int attributeCount = 0;
+		for (NamedRelation reln : rels) {
+			attributeCount += reln.getAttributes().size();
+		}
+		int[] relationNames = new int[rels.size()];
+		int[] attributeNames = new int[attributeCount];
+		int a = 0;
+		for (int r = 0; r < rels.size(); r++) {
+			relationNames[r] = intern(rels.get(r).toString(), ids, strings);
+			for (Attribute attr : rels.get(r).getAttributes()) {
+				attributeNames[a++] = intern(attr.getName(), ids, strings);
+			}
+		}
+
+		// the synopses refer to strings, so they are encoded first
+		int[] synopsisOffsets = new int[attributeCount];
+		a = 0;
+		for (NamedRelation reln : rels) {
+			for (Attribute attr : reln.getAttributes()) {
+				if (!attr.hasSynopsis()) {
+					synopsisOffsets[a++] = -1;
+					continue;
+				}
+				synopsisOffsets[a++] = synopsisOut.size();
+				synopsisOut.writeInt(attr.getMostCommonValues().size());
+				for (Map.Entry<String, Double> mcv : attr.getMostCommonValues().entrySet()) {
+					synopsisOut.writeInt(intern(mcv.getKey(), ids, strings));
+					synopsisOut.writeDouble(mcv.getValue());
+				}
+				List<String> bounds = (attr.getHistogram() == null)
+						? new ArrayList<String>() : attr.getHistogram().getBounds();
+				synopsisOut.writeInt(bounds.size());
+				for (String bound : bounds) {
+					synopsisOut.writeInt(intern(bound, ids, strings));
+				}
+			}
+		}
+
+		int relationSlots = slots(rels.size());
+		int attributeSlots = slots(attributeCount);
+		long stringBytes = 0;
+		for (byte[] s : strings) {
+			stringBytes += s.length;
+		}
+
+		long stringOffsets = HEADER_SIZE;
+		long stringData = stringOffsets + 4L * (strings.size() + 1);
+		long relations = stringData + stringBytes;
+		long attributes = relations + (long) RELATION_SIZE * rels.size();
+		long relationIndex = attributes + (long) ATTRIBUTE_SIZE * attributeCount;
+		long attributeIndex = relationIndex + (long) SLOT_SIZE * relationSlots;
+		long synopses = attributeIndex + (long) SLOT_SIZE * attributeSlots;
+		if (synopses + synopsisOut.size() > Integer.MAX_VALUE) {
+			throw new IOException("Catalogue is too large for a snapshot");
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(rels.size());
+			out.writeInt(attributeCount);
+			out.writeInt(strings.size());
+			out.writeInt(relationSlots);
+			out.writeInt(attributeSlots);
+			out.writeLong(stringOffsets);
+			out.writeLong(stringData);
+			out.writeLong(relations);
+			out.writeLong(attributes);
+			out.writeLong(relationIndex);
+			out.writeLong(attributeIndex);
+			out.writeLong(synopses);
+
+			int offset = 0;
+			for (byte[] s : strings) {
+				out.writeInt(offset);
+				offset += s.length;
+			}
+			out.writeInt(offset);
+			for (byte[] s : strings) {
+				out.write(s);
+			}
+
+			int first = 0;
+			for (int r = 0; r < rels.size(); r++) {
+				NamedRelation reln = rels.get(r);
+				out.writeInt(relationNames[r]);
+				out.writeLong(reln.getTupleCount());
+				out.writeInt(first);
+				out.writeInt(reln.getAttributes().size());
+				out.writeLong(reln.getPageCount());
+				first += reln.getAttributes().size();
+			}
+
+			a = 0;
+			int[] relationHashes = new int[rels.size()];
+			int[] attributeHashes = new int[attributeCount];
+			Map<Integer, Integer> attributeRecords = new HashMap<Integer, Integer>(); //by name
+			for (int r = 0; r < rels.size(); r++) {
+				relationHashes[r] = hash(rels.get(r).toString());
+				for (Attribute attr : rels.get(r).getAttributes()) {
+					out.writeInt(attributeNames[a]);
+					out.writeLong(attr.getValueCount());
+					out.writeInt(synopsisOffsets[a]);
+					out.writeInt(attr.getWidth());
+					out.writeInt(attr.isIndexed() ? INDEXED : 0);
+					attributeHashes[a] = hash(attr.getName());
+					// as in the catalogue, a later attribute of the same name replaces an earlier one
+					attributeRecords.put(attributeNames[a], a);
+					a++;
+				}
+			}
+
+			int[] relationRecords = new int[rels.size()];
+			for (int r = 0; r < relationRecords.length; r++) {
+				relationRecords[r] = r;
+			}
+			writeIndex(out, relationSlots, relationHashes, relationRecords);
+
+			int[] records = new int[attributeRecords.size()];
+			int n = 0;
+			for (int record : attributeRecords.values()) {
+				records[n++] = record;
+			}
+			writeIndex(out, attributeSlots, attributeHashes, records);
+
+			synopsisBytes.writeTo(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * writes a hash index over the given records, with linear probing
+	 */
+	private static void writeIndex(DataOutputStream out, int slots, int[] hashes, int[] records) throws IOException {
+		int[] table = new int[slots * 2];
+		for (int record : records) {
+			int s = hashes[record] & (slots - 1);
+			while (table[s * 2 + 1] != 0) {
+				s = (s + 1) & (slots - 1);
+			}
+			table[s * 2] = hashes[record];
+			table[s * 2 + 1] = record + 1;
+		}
+		for (int t : table) {
+			out.writeInt(t);
+		}
+	}
+
+	/**
+	 * returns a power of two that leaves the table at most three quarters
+	 * full, so that probes stay short and there is always an empty slot
+	 */
+	private static int slots(int entries) {
+		int slots = 1;
+		while (slots < entries + entries / 3 + 1) {
+			slots <<= 1;
+		}
+		return slots;
+	}
+
+	/**
+	 * spreads the bits of a string's hash code, as the hash codes of
+	 * similar names (R1, R2, ...) are close together and would otherwise
+	 * fill runs of neighbouring slots
+	 */
+	private static int hash(String name) {
+		int h = name.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int intern(String s, Map<String, Integer> ids, List<byte[]> strings) {
+		Integer id = ids.get(s);
+		if (id == null) {
+			id = strings.size();
+			ids.put(s, id);
+			strings.add(s.getBytes(StandardCharsets.UTF_8));
+		}
+		return id;
+	}
+}
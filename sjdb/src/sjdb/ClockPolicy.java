@@ -0,0 +1,67 @@
+package sjdb;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class evicts the frames of a BufferPool by the CLOCK algorithm, an
+ * approximation of least recently used. Each frame has a reference bit,
+ * set when it is accessed; a hand sweeps the frames in a circle, clearing
+ * the bits it finds set, and evicts the first unpinned frame whose bit is
+ * already clear. An access costs a single write, so scans that hit in the
+ * pool do not contend for a lock.
+ */
+public class ClockPolicy implements EvictionPolicy {
+	private AtomicIntegerArray referenced;
+	private int hand; //only moved by victim()
+
+	/* (non-Javadoc)
+	 * @see sjdb.EvictionPolicy#init(int)
+	 */
+	@Override
+	public void init(int frames) {
+		referenced = new AtomicIntegerArray(frames);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.EvictionPolicy#accessed(int)
+	 */
+	@Override
+	public void accessed(int frame) {
+		referenced.lazySet(frame, 1);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.EvictionPolicy#loaded(int)
+	 */
+	@Override
+	public void loaded(int frame) {
+		referenced.lazySet(frame, 1);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.EvictionPolicy#victim(sjdb.EvictionPolicy.Frames)
+	 */
+	@Override
+	public int victim(Frames frames) {
+		int n = referenced.length();
+		// two sweeps clear every bit, so a third finds any unpinned frame
+		for (int i = 0; i < 3 * n; i++) {
+			int frame = hand;
+			hand = (hand + 1) % n;
+			if (referenced.get(frame) != 0) {
+				referenced.set(frame, 0);
+			} else if (frames.evict(frame)) {
+				return frame;
+			}
+		}
+		return -1;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.EvictionPolicy#getName()
+	 */
+	@Override
+	public String getName() {
+		return "clock";
+	}
+}
@@ -0,0 +1,466 @@
+package sjdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * This class stores the values of one attribute of a named relation, one
+ * per tuple in the order of the tuples, in a file that is mapped into
+ * memory when it is read. The values are encoded in one of three ways,
+ * chosen when the file is written:
+ *
+ * - INT: every value is an int written the way Integer.toString() writes
+ *   it, and is stored in 4 bytes
+ * - DOUBLE: every value is written the way Double.toString() writes it,
+ *   and is stored in 8 bytes
+ * - DICTIONARY: each value is stored as the 4-byte code of its spelling
+ *   in a dictionary at the end of the file, which is sorted in
+ *   ValueComparator.KEY_ORDER (and then by spelling), so that codes are
+ *   in the same order as their values
+ *
+ * The tuples are divided into blocks of BLOCK_ROWS, and the file has a
+ * zone map with the least and greatest values in each block: those that
+ * are numbers and those that are not are kept apart, as Predicate.matches()
+ * compares them with a bound in different ways. mayMatch() uses the zone
+ * map to rule out blocks in which no value satisfies a predicate.
+ *
+ * The file holds a header, the zone map, the values and the dictionary:
+ *
+ * <magic><version><encoding><rows><block rows><dictionary size>
+ * <least number><greatest number><least other><greatest other>... for each block
+ * <value>... for each tuple
+ * <length><UTF-8 bytes>... for each dictionary entry
+ *
+ * A column file is never changed once it is written, so it may be read by
+ * several threads at once; write() replaces a file by renaming a new one
+ * over it, so that it can be written while the old file is mapped.
+ */
+public class ColumnFile {
+	/**
+	 * The number of tuples in a block of the zone map: one batch (see Batch)
+	 */
+	public static final int BLOCK_ROWS = Batch.SIZE;
+
+	private static final int MAGIC = 0x534a4346; //"SJCF"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+	private static final int ZONE_SIZE = 24;
+
+	/**
+	 * The ways values are encoded in a column file
+	 */
+	public enum Encoding {
+		INT(4), DOUBLE(8), DICTIONARY(4);
+
+		private final int width;
+
+		private Encoding(int width) {
+			this.width = width;
+		}
+
+		/**
+		 * Return the number of bytes each value takes
+		 * @return
+		 */
+		public int getWidth() {
+			return width;
+		}
+	}
+
+	/**
+	 * Orders the spellings of values in a dictionary: in KEY_ORDER, and
+	 * then by spelling, so that equal numbers spelled differently ("1" and
+	 * "1.0") get different codes
+	 */
+	private static final Comparator<String> DICTIONARY_ORDER = new Comparator<String>() {
+		public int compare(String a, String b) {
+			int cmp = ValueComparator.KEY_ORDER.compare(ValueComparator.key(a), ValueComparator.key(b));
+			return (cmp != 0) ? cmp : a.compareTo(b);
+		}
+	};
+
+	private final File file;
+	private final ByteBuffer buf;
+	private final Encoding encoding;
+	private final int rows;
+	private final int blocks;
+	private final int valuesOffset;
+	private final String[] dictionary; //null unless the encoding is DICTIONARY
+
+	private ColumnFile(File file, ByteBuffer buf) throws IOException {
+		this.file = file;
+		this.buf = buf;
+		if (buf.capacity() < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+			throw new IOException(file + " is not a column file");
+		}
+		if (buf.getInt(4) != VERSION) {
+			throw new IOException(file + " has unsupported version " + buf.getInt(4));
+		}
+		int e = buf.getInt(8);
+		if (e < 0 || e >= Encoding.values().length || buf.getInt(16) != BLOCK_ROWS) {
+			throw new IOException(file + " is malformed");
+		}
+		this.encoding = Encoding.values()[e];
+		this.rows = buf.getInt(12);
+		this.blocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+		this.valuesOffset = HEADER_SIZE + blocks * ZONE_SIZE;
+
+		int size = buf.getInt(20);
+		long end = (long) valuesOffset + (long) rows * encoding.getWidth();
+		if (rows < 0 || size < 0 || end > buf.capacity()) {
+			throw new IOException(file + " is malformed");
+		}
+		if (encoding == Encoding.DICTIONARY) {
+			dictionary = new String[size];
+			int offset = (int) end;
+			for (int i = 0; i < size; i++) {
+				int length = (offset + 4 <= buf.capacity()) ? buf.getInt(offset) : -1;
+				if (length < 0 || offset + 4 + length > buf.capacity()) {
+					throw new IOException(file + " is malformed");
+				}
+				byte[] bytes = new byte[length];
+				ByteBuffer b = buf.duplicate();
+				b.position(offset + 4);
+				b.get(bytes);
+				dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+				offset += 4 + length;
+			}
+		} else {
+			dictionary = null;
+		}
+	}
+
+	/**
+	 * Open an existing column file, mapping it into memory
+	 * @param file
+	 * @return
+	 * @throws IOException if the file cannot be read, or is not a column file
+	 */
+	public static ColumnFile open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to map");
+			}
+			// the mapping stays valid once the channel is closed
+			return new ColumnFile(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Write the values at a position of some tuples to a column file,
+	 * replacing any file of the same name, and open it
+	 * @param file
+	 * @param tuples
+	 * @param position Position of the attribute in the tuples
+	 * @return
+	 * @throws IOException
+	 */
+	public static ColumnFile write(File file, List<Tuple> tuples, int position) throws IOException {
+		int rows = tuples.size();
+		Encoding encoding = encoding(tuples, position);
+
+		// the dictionary, sorted so that codes are in the order of their values
+		String[] dictionary = new String[0];
+		Map<String, Integer> codes = new HashMap<String, Integer>();
+		long dictionaryBytes = 0;
+		if (encoding == Encoding.DICTIONARY) {
+			TreeSet<String> values = new TreeSet<String>(DICTIONARY_ORDER);
+			for (Tuple t : tuples) {
+				values.add(t.get(position));
+			}
+			dictionary = values.toArray(dictionary);
+			for (int i = 0; i < dictionary.length; i++) {
+				codes.put(dictionary[i], i);
+				dictionaryBytes += 4 + dictionary[i].getBytes(StandardCharsets.UTF_8).length;
+			}
+		}
+
+		int blocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+		int valuesOffset = HEADER_SIZE + blocks * ZONE_SIZE;
+		long size = valuesOffset + (long) rows * encoding.getWidth() + dictionaryBytes;
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Column of " + rows + " values is too large for " + file);
+		}
+
+		// written under another name, so that the file being replaced may still be mapped
+		File tmp = new File(file.getPath() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			out.putInt(0, MAGIC);
+			out.putInt(4, VERSION);
+			out.putInt(8, encoding.ordinal());
+			out.putInt(12, rows);
+			out.putInt(16, BLOCK_ROWS);
+			out.putInt(20, dictionary.length);
+
+			for (int block = 0; block < blocks; block++) {
+				// no numbers in the block while the least is greater than the greatest
+				double least = Double.NaN;
+				double greatest = Double.NEGATIVE_INFINITY;
+				int leastOther = -1;
+				int greatestOther = -1;
+				int end = Math.min((block + 1) * BLOCK_ROWS, rows);
+				for (int row = block * BLOCK_ROWS; row < end; row++) {
+					String value = tuples.get(row).get(position);
+					int offset = valuesOffset + row * encoding.getWidth();
+					switch (encoding) {
+					case INT:
+						out.putInt(offset, Integer.parseInt(value));
+						break;
+					case DOUBLE:
+						out.putDouble(offset, Double.parseDouble(value));
+						break;
+					default:
+						out.putInt(offset, codes.get(value));
+					}
+
+					Object key = ValueComparator.key(value);
+					if (key instanceof Double) {
+						double d = (Double) key;
+						least = (Double.compare(d, least) < 0) ? d : least;
+						greatest = (Double.compare(d, greatest) > 0) ? d : greatest;
+					} else {
+						int code = codes.get(value);
+						leastOther = (leastOther < 0) ? code : Math.min(code, leastOther);
+						greatestOther = Math.max(code, greatestOther);
+					}
+				}
+				int zone = HEADER_SIZE + block * ZONE_SIZE;
+				out.putDouble(zone, least);
+				out.putDouble(zone + 8, greatest);
+				out.putInt(zone + 16, leastOther);
+				out.putInt(zone + 20, greatestOther);
+			}
+
+			int offset = valuesOffset + rows * encoding.getWidth();
+			for (String value : dictionary) {
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				out.putInt(offset, bytes.length);
+				ByteBuffer b = out.duplicate();
+				b.position(offset + 4);
+				b.put(bytes);
+				offset += 4 + bytes.length;
+			}
+			out.force();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return open(file);
+	}
+
+	/**
+	 * chooses the narrowest encoding in which every value is spelled as
+	 * it was written
+	 */
+	private static Encoding encoding(List<Tuple> tuples, int position) {
+		boolean ints = true;
+		boolean doubles = true;
+		for (Tuple t : tuples) {
+			String value = t.get(position);
+			if (!(ValueComparator.key(value) instanceof Double)) {
+				return Encoding.DICTIONARY;
+			}
+			if (ints) {
+				try {
+					ints = Integer.toString(Integer.parseInt(value)).equals(value);
+				} catch (NumberFormatException e) {
+					ints = false;
+				}
+			}
+			if (doubles) {
+				doubles = Double.toString(Double.parseDouble(value)).equals(value);
+			}
+			if (!ints && !doubles) {
+				return Encoding.DICTIONARY;
+			}
+		}
+		return ints ? Encoding.INT : Encoding.DOUBLE;
+	}
+
+	/**
+	 * Return the encoding of the values
+	 * @return
+	 */
+	public Encoding getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Return the number of values (the number of tuples of the relation)
+	 * @return
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Return the number of blocks in the zone map
+	 * @return
+	 */
+	public int getBlockCount() {
+		return blocks;
+	}
+
+	/**
+	 * Return the number of entries in the dictionary, or 0 if the values
+	 * are not encoded by a dictionary
+	 * @return
+	 */
+	public int getDictionarySize() {
+		return (dictionary == null) ? 0 : dictionary.length;
+	}
+
+	/**
+	 * Return the size of the file in bytes
+	 * @return
+	 */
+	public long getSize() {
+		return buf.capacity();
+	}
+
+	/**
+	 * Return the value of a tuple
+	 * @param row Position of the tuple
+	 * @return
+	 */
+	public String getValue(int row) {
+		int offset = valuesOffset + row * encoding.getWidth();
+		switch (encoding) {
+		case INT:
+			return Integer.toString(buf.getInt(offset));
+		case DOUBLE:
+			return Double.toString(buf.getDouble(offset));
+		default:
+			return dictionary[buf.getInt(offset)];
+		}
+	}
+
+	/**
+	 * Return the dictionary code of the value of a tuple
+	 * @param row Position of the tuple
+	 * @return
+	 * @throws IllegalStateException if the values are not encoded by a dictionary
+	 */
+	public int getCode(int row) {
+		if (dictionary == null) {
+			throw new IllegalStateException(file + " has no dictionary");
+		}
+		return buf.getInt(valuesOffset + row * 4);
+	}
+
+	/**
+	 * Return the value with a dictionary code
+	 * @param code
+	 * @return
+	 */
+	public String getDictionaryValue(int code) {
+		return dictionary[code];
+	}
+
+	/**
+	 * Return false if no value in a block of the zone map satisfies a
+	 * predicate that compares the attribute with values; true if some may
+	 * (or if the predicate does not compare with values)
+	 * @param block
+	 * @param predicate
+	 * @return
+	 */
+	public boolean mayMatch(int block, Predicate predicate) {
+		if (!predicate.comparesValue()) {
+			return true;
+		}
+		int zone = HEADER_SIZE + block * ZONE_SIZE;
+		double least = buf.getDouble(zone);
+		double greatest = buf.getDouble(zone + 8);
+		int leastOther = buf.getInt(zone + 16);
+		int greatestOther = buf.getInt(zone + 20);
+		List<String> values = predicate.getRightValues();
+
+		// numbers are compared numerically with bounds that are numbers, and as strings with other bounds
+		if (Double.compare(least, greatest) <= 0) {
+			Object[] bounds = new Object[values.size()];
+			for (int i = 0; i < bounds.length; i++) {
+				bounds[i] = ValueComparator.key(values.get(i));
+				if (!(bounds[i] instanceof Double)) {
+					return true;
+				}
+			}
+			if (overlaps(predicate.getComparison(), bounds, least, greatest)) {
+				return true;
+			}
+		}
+
+		// other values are compared with every bound as strings
+		return leastOther >= 0 && overlaps(predicate.getComparison(), values.toArray(),
+				dictionary[leastOther], dictionary[greatestOther]);
+	}
+
+	/**
+	 * Return false if no tuple in a block of the column files of a relation
+	 * satisfies all of some predicates on the relation
+	 * @param columns Column files of the relation, in the order of its schema
+	 * @param schema Schema of the relation
+	 * @param block
+	 * @param filters
+	 * @return
+	 */
+	public static boolean mayMatch(ColumnFile[] columns, Schema schema, int block, List<Predicate> filters) {
+		for (Predicate p : filters) {
+			if (!columns[schema.indexOf(p.getLeftAttribute())].mayMatch(block, p)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * returns true if a value between least and greatest may be related to
+	 * the bounds by a comparison; the values and bounds are both Doubles or
+	 * both Strings
+	 */
+	private static boolean overlaps(Predicate.Comparison comparison, Object[] bounds, Object least, Object greatest) {
+		Comparator<Object> order = ValueComparator.KEY_ORDER;
+		switch (comparison) {
+		case EQ:
+		case IN:
+			for (Object bound : bounds) {
+				if (order.compare(least, bound) <= 0 && order.compare(bound, greatest) <= 0) {
+					return true;
+				}
+			}
+			return false;
+		case NE:
+			return order.compare(least, bounds[0]) != 0 || order.compare(greatest, bounds[0]) != 0;
+		case LT:
+			return order.compare(least, bounds[0]) < 0;
+		case LE:
+			return order.compare(least, bounds[0]) <= 0;
+		case GT:
+			return order.compare(greatest, bounds[0]) > 0;
+		case GE:
+			return order.compare(greatest, bounds[0]) >= 0;
+		default:
+			return order.compare(greatest, bounds[0]) >= 0 && order.compare(least, bounds[1]) <= 0;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return file.getPath();
+	}
+}
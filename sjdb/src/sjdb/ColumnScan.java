@@ -0,0 +1,29 @@
+package sjdb;
+
+import java.util.Collection;
+
+/**
+ * This interface is implemented by the physical operators that execute a
+ * Scan, so that the Executor can tell them what the operators above them
+ * need. A relation stored in ColumnFiles is then read selectively: blocks
+ * that the zone maps show cannot satisfy a filter are skipped, and only
+ * the columns that are needed are read. Relations stored in other ways
+ * are read in full.
+ */
+public interface ColumnScan {
+	/**
+	 * Skip the blocks in which no tuple satisfies a predicate on the
+	 * relation. Tuples that do not satisfy it are still produced from the
+	 * other blocks, so it must also be applied by a select.
+	 * @param predicate
+	 */
+	public void addFilter(Predicate predicate);
+
+	/**
+	 * Read only the values of some attributes; the other values of the
+	 * tuples produced are null (or undefined codes in batches), so they
+	 * must be projected away
+	 * @param attributes
+	 */
+	public void setColumns(Collection<Attribute> attributes);
+}
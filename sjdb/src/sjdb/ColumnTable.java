@@ -0,0 +1,47 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class holds the tuples of a named relation column by column, with
+ * each value encoded by a ValueDictionary, for vectorised execution.
+ */
+public class ColumnTable {
+	private final int rows;
+	private final int[][] columns;
+
+	/**
+	 * Create a column table from the tuples of a relation
+	 * @param tuples
+	 * @param arity Number of values in each tuple
+	 * @param dictionary Dictionary to encode the values with
+	 */
+	public ColumnTable(List<Tuple> tuples, int arity, ValueDictionary dictionary) {
+		this.rows = tuples.size();
+		this.columns = new int[arity][rows];
+		for (int r = 0; r < rows; r++) {
+			Tuple t = tuples.get(r);
+			for (int c = 0; c < arity; c++) {
+				columns[c][r] = dictionary.encode(t.get(c));
+			}
+		}
+	}
+
+	/**
+	 * Return the number of tuples
+	 * @return
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Return the codes of the values of one attribute, one per tuple; the
+	 * array must not be changed
+	 * @param i Position of the attribute
+	 * @return
+	 */
+	public int[] getColumn(int i) {
+		return columns[i];
+	}
+}
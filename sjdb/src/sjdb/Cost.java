@@ -0,0 +1,77 @@
+package sjdb;
+
+/**
+ * This class represents the estimated cost of executing an operator, as
+ * the number of pages read and written (I/O) and the number of tuples
+ * processed in memory (CPU). The two are combined into a single total by
+ * weighting them with PAGE_COST and TUPLE_COST, so that plans can be
+ * ranked.
+ */
+public class Cost {
+	public static final double PAGE_COST = 1.0; //cost of reading or writing a page
+	public static final double TUPLE_COST = 0.01; //cost of processing a tuple in memory
+
+	public static final Cost ZERO = new Cost(0, 0);
+
+	private final double pages;
+	private final double tuples;
+
+	/**
+	 * Create a new cost
+	 * @param pages Number of pages read and written
+	 * @param tuples Number of tuples processed
+	 */
+	public Cost(double pages, double tuples) {
+		this.pages = pages;
+		this.tuples = tuples;
+	}
+
+	/**
+	 * Return the number of pages read and written
+	 * @return
+	 */
+	public double getPages() {
+		return pages;
+	}
+
+	/**
+	 * Return the number of tuples processed
+	 * @return
+	 */
+	public double getTuples() {
+		return tuples;
+	}
+
+	/**
+	 * Return the I/O and CPU costs combined
+	 * @return
+	 */
+	public double getTotal() {
+		return pages * PAGE_COST + tuples * TUPLE_COST;
+	}
+
+	/**
+	 * Return the sum of this cost and another
+	 * @param other
+	 * @return
+	 */
+	public Cost add(Cost other) {
+		return new Cost(pages + other.pages, tuples + other.tuples);
+	}
+
+	/**
+	 * Render this cost as io=<pages>,cpu=<tuples>,total=<total>
+	 * @return
+	 */
+	public String render() {
+		return "io=" + Math.round(pages) + ",cpu=" + Math.round(tuples) + ",total=" + String.format("%.2f", getTotal());
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return render();
+	}
+}
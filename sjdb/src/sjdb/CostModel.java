@@ -0,0 +1,342 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class estimates the cost of executing a plan whose output sizes
+ * have already been estimated (see Estimator), and sets the Cost of each
+ * operator: the pages it reads and writes and the tuples it processes,
+ * added to the costs of its inputs.
+ *
+ * A scan reads the pages of its relation's HeapFile, if the catalogue
+ * has their number. Otherwise, and for intermediate results, a relation
+ * is taken to be stored in pages of a fixed size, each holding as many
+ * whole tuples as fit; the width of a tuple is the sum of the widths of
+ * its attributes in the catalogue (DEFAULT_WIDTH for attributes without
+ * one). Only scans read pages, as the other operators pipeline
+ * their inputs, except for joins whose inputs do not fit in the memory
+ * budget:
+ *
+ * - hash join: reads both inputs and probes with the smaller; if the
+ *   build side does not fit, both inputs are partitioned to disk first
+ * - sort-merge join: sorts both inputs, writing and reading again the
+ *   pages of each input that does not fit
+ * - block nested loop join: compares every pair of tuples, and executes
+ *   the inner input again for each block of the outer input after the first
+ * - index nested loop join: looks up each tuple of the outer input in the
+ *   index of the inner input, which is not read otherwise
+ * - nested loop join or product: compares every pair of tuples
+ *
+ * A select executed by an index scan reads only the index and the tuples
+ * that match its predicate, not its input. An index lookup reads a page
+ * for each level of the B+-tree (as though its nodes were stored in
+ * pages), and then a page for each matching tuple, as the tuples with a
+ * value are not stored together, up to the pages of the relation.
+ *
+ * The cost model can also choose the cheapest method for a join, and
+ * whether to execute a select by an index scan. It holds no state other
+ * than a cache of widths, so it can be used by several threads at once.
+ */
+public class CostModel implements PlanVisitor {
+	public static final int DEFAULT_PAGE_SIZE = Page.SIZE; //bytes
+	public static final int DEFAULT_WIDTH = 8; //bytes per value, for attributes without a width in the catalogue
+
+	private final Catalogue catalogue;
+	private final long memoryBudget;
+	private final int pageSize;
+	private final Map<String, Integer> widths = new ConcurrentHashMap<String, Integer>(); //by attribute name
+
+	/**
+	 * Create a new cost model, with pages of DEFAULT_PAGE_SIZE bytes
+	 * @param catalogue Catalogue that gives the widths of the attributes
+	 * @param memoryBudget Number of tuples a join can hold in memory
+	 */
+	public CostModel(Catalogue catalogue, long memoryBudget) {
+		this(catalogue, memoryBudget, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * Create a new cost model
+	 * @param catalogue Catalogue that gives the widths of the attributes
+	 * @param memoryBudget Number of tuples a join can hold in memory
+	 * @param pageSize Size of a page in bytes
+	 */
+	public CostModel(Catalogue catalogue, long memoryBudget, int pageSize) {
+		this.catalogue = catalogue;
+		this.memoryBudget = Math.max(memoryBudget, 1);
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Return the width in bytes of the tuples of a relation
+	 * @param reln
+	 * @return
+	 */
+	public int getWidth(Relation reln) {
+		int width = 0;
+		for (Attribute attr : reln.getAttributes()) {
+			width += width(attr.getName());
+		}
+		return width;
+	}
+
+	/**
+	 * Return the number of pages that hold the tuples of a relation
+	 * @param reln
+	 * @return
+	 */
+	public double getPages(Relation reln) {
+		long perPage = Math.max(pageSize / Math.max(getWidth(reln), 1), 1);
+		return Math.ceil((double) reln.getTupleCount() / perPage);
+	}
+
+	/**
+	 * looks up the width of an attribute in the catalogue; the output
+	 * attributes of selects and joins are copies without a width, so the
+	 * width is found by name
+	 */
+	private int width(String name) {
+		Integer width = widths.get(name);
+		if (width == null) {
+			try {
+				width = catalogue.getAttribute(name).getWidth();
+			} catch (DatabaseException e) {
+				width = 0;
+			}
+			if (width <= 0) {
+				width = DEFAULT_WIDTH;
+			}
+			widths.put(name, width);
+		}
+		return width;
+	}
+
+	/**
+	 * Choose the cheapest method for a join whose inputs have been
+	 * estimated and costed: a hash join building on the smaller input if
+	 * it fits in memory, or else the cheapest of a block nested loop join
+	 * (with either input outer) and a sort-merge join; or an index nested
+	 * loop join, if one of the inputs can probe an index and that is cheaper
+	 * still
+	 * @param op
+	 */
+	public void chooseMethod(Join op) {
+		long left = op.getLeft().getOutput().getTupleCount();
+		long right = op.getRight().getOutput().getTupleCount();
+		boolean smallerLeft = left < right;
+
+		List<JoinMethod> methods = new ArrayList<JoinMethod>();
+		List<Boolean> sides = new ArrayList<Boolean>();
+		if (Math.min(left, right) <= memoryBudget) {
+			methods.add(JoinMethod.HASH);
+			sides.add(smallerLeft);
+		} else {
+			methods.addAll(Arrays.asList(JoinMethod.BLOCK_NESTED_LOOP, JoinMethod.BLOCK_NESTED_LOOP, JoinMethod.SORT_MERGE));
+			sides.addAll(Arrays.asList(smallerLeft, !smallerLeft, smallerLeft));
+		}
+		for (boolean innerLeft : new boolean[] {true, false}) {
+			if (indexedScan(innerLeft ? op.getLeft() : op.getRight(), joinAttribute(op, innerLeft)) != null) {
+				methods.add(JoinMethod.INDEX_NESTED_LOOP);
+				sides.add(innerLeft);
+			}
+		}
+
+		// ties go to the earlier candidate
+		int best = 0;
+		double bestCost = Double.MAX_VALUE;
+		for (int i = 0; i < methods.size(); i++) {
+			double cost = totalCost(op, methods.get(i), sides.get(i)).getTotal();
+			if (cost < bestCost) {
+				best = i;
+				bestCost = cost;
+			}
+		}
+		op.setMethod(methods.get(best), sides.get(best));
+	}
+
+	/**
+	 * Choose whether to execute a select that has been estimated by an
+	 * index scan: only a select on a Scan whose predicate can be looked up
+	 * in an index on its attribute can be, if that is cheaper than scanning
+	 * @param op
+	 */
+	public void chooseAccess(Select op) {
+		if (!(op.getInput() instanceof Scan) || !BPlusTree.supports(op.getPredicate())
+				|| indexedScan(op.getInput(), op.getPredicate().getLeftAttribute()) == null) {
+			op.setIndexed(false);
+			return;
+		}
+		op.getInput().accept(this);
+		Relation input = op.getInput().getOutput();
+		Cost scan = op.getInput().getCost().add(new Cost(0, input.getTupleCount()));
+		op.setIndexed(indexCost(op).getTotal() < scan.getTotal());
+	}
+
+	/**
+	 * Return the scan of a named relation with an index on an attribute,
+	 * if an operator is such a scan under any selects (not executed by an
+	 * index scan themselves) and projects, so that it can be the inner
+	 * input of an index nested loop join
+	 * @param op
+	 * @param attr
+	 * @return the scan, or null if there is none
+	 */
+	static Scan indexedScan(Operator op, Attribute attr) {
+		while (op instanceof Project || (op instanceof Select && !((Select) op).isIndexed())) {
+			op = ((UnaryOperator) op).getInput();
+		}
+		if (!(op instanceof Scan)) {
+			return null;
+		}
+		Schema schema = ((Scan) op).getRelation().getSchema();
+		int i = schema.indexOf(attr);
+		return (i >= 0 && schema.getAttributes().get(i).isIndexed()) ? (Scan) op : null;
+	}
+
+	/**
+	 * Return the attribute of a join's predicate from one of its inputs
+	 * @param op
+	 * @param left Whether to return the attribute from the left input
+	 * @return
+	 */
+	static Attribute joinAttribute(Join op, boolean left) {
+		Predicate predicate = op.getPredicate();
+		boolean oriented = op.getLeft().getOutput().getSchema().contains(predicate.getLeftAttribute());
+		return (left == oriented) ? predicate.getLeftAttribute() : predicate.getRightAttribute();
+	}
+
+	@Override
+	public void visit(Scan op) {
+		op.setCost(new Cost(relationPages(op), op.getOutput().getTupleCount()));
+	}
+
+	@Override
+	public void visit(Project op) {
+		Operator input = op.getInput();
+		op.setCost(input.getCost().add(new Cost(0, input.getOutput().getTupleCount())));
+	}
+
+	@Override
+	public void visit(Select op) {
+		if (op.isIndexed()) {
+			op.setCost(indexCost(op));
+			return;
+		}
+		Operator input = op.getInput();
+		op.setCost(input.getCost().add(new Cost(0, input.getOutput().getTupleCount())));
+	}
+
+	@Override
+	public void visit(Product op) {
+		// nested loops over the right input, held in memory
+		double left = op.getLeft().getOutput().getTupleCount();
+		double right = op.getRight().getOutput().getTupleCount();
+		Cost cost = new Cost(0, right + left * right);
+		op.setCost(op.getLeft().getCost().add(op.getRight().getCost()).add(cost));
+	}
+
+	@Override
+	public void visit(Join op) {
+		op.setCost(totalCost(op, op.getMethod(), op.isBuildLeft()));
+	}
+
+	/**
+	 * estimates the cost of a join by a method, with the costs of the
+	 * inputs it reads
+	 */
+	private Cost totalCost(Join op, JoinMethod method, boolean buildLeft) {
+		Cost cost = joinCost(op, method, buildLeft);
+		if (method == JoinMethod.INDEX_NESTED_LOOP) {
+			// the inner input is only read through its index
+			return (buildLeft ? op.getRight() : op.getLeft()).getCost().add(cost);
+		}
+		return op.getLeft().getCost().add(op.getRight().getCost()).add(cost);
+	}
+
+	/**
+	 * estimates the cost of a join by a method, without the costs of its inputs
+	 */
+	private Cost joinCost(Join op, JoinMethod method, boolean buildLeft) {
+		Relation l = op.getLeft().getOutput();
+		Relation r = op.getRight().getOutput();
+		double left = l.getTupleCount();
+		double right = r.getTupleCount();
+		double output = op.getOutput().getTupleCount();
+
+		if (method == null) {
+			// nested loops over the right input, held in memory
+			return new Cost(0, right + left * right + output);
+		}
+
+		switch (method) {
+		case HASH: {
+			double build = buildLeft ? left : right;
+			double pages = (build <= memoryBudget) ? 0 : 2 * (getPages(l) + getPages(r));
+			return new Cost(pages, left + right + output);
+		}
+		case INDEX_NESTED_LOOP: {
+			// a lookup for each outer tuple, finding the tuples of the relation with its value
+			double outer = buildLeft ? right : left;
+			Scan scan = indexedScan(buildLeft ? op.getLeft() : op.getRight(), joinAttribute(op, buildLeft));
+			Relation relation = scan.getRelation();
+			double matches = relation.getTupleCount()
+					/ (double) Math.max(relation.getAttribute(joinAttribute(op, buildLeft)).getValueCount(), 1);
+			Cost lookup = lookupCost(scan, joinAttribute(op, buildLeft), matches);
+			return new Cost(outer * lookup.getPages(), outer * lookup.getTuples() + output);
+		}
+		case SORT_MERGE: {
+			double pages = 0;
+			if (left > memoryBudget) {
+				pages += 2 * getPages(l);
+			}
+			if (right > memoryBudget) {
+				pages += 2 * getPages(r);
+			}
+			return new Cost(pages, sort(left) + sort(right) + output);
+		}
+		default: {
+			double outer = buildLeft ? left : right;
+			Cost inner = buildLeft ? op.getRight().getCost() : op.getLeft().getCost();
+			double rescans = Math.max(Math.ceil(outer / memoryBudget) - 1, 0);
+			return new Cost(inner.getPages() * rescans, inner.getTuples() * rescans + left * right + output);
+		}
+		}
+	}
+
+	/**
+	 * estimates the cost of a select executed by an index scan
+	 */
+	private Cost indexCost(Select op) {
+		Scan scan = (Scan) op.getInput();
+		return lookupCost(scan, op.getPredicate().getLeftAttribute(), op.getOutput().getTupleCount());
+	}
+
+	/**
+	 * estimates the cost of looking up tuples of a scanned relation in the
+	 * index on an attribute
+	 */
+	private Cost lookupCost(Scan scan, Attribute attr, double matches) {
+		int height = BPlusTree.estimateHeight(scan.getRelation().getAttribute(attr).getValueCount());
+		return new Cost(height + Math.min(matches, relationPages(scan)), matches);
+	}
+
+	/**
+	 * returns the pages of a scanned relation: those of its heap file, if
+	 * the catalogue has their number
+	 */
+	private double relationPages(Scan op) {
+		long pages = ((NamedRelation) op.getRelation()).getPageCount();
+		return (pages > 0) ? pages : getPages(op.getRelation());
+	}
+
+	/**
+	 * estimates the tuples processed to sort and then merge an input
+	 */
+	private static double sort(double tuples) {
+		return tuples * (Math.log(Math.max(tuples, 2)) / Math.log(2)) + tuples;
+	}
+}
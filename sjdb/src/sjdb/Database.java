@@ -0,0 +1,783 @@
+package sjdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * This class holds the tuples of the named relations in memory, so that
+ * query plans can be executed. The tuples of a relation are added with
+ * addTuples(), or read from a data directory when they are first needed.
+ *
+ * A data directory holds a file <relation name>.csv for each named
+ * relation, with one tuple per line and the values separated by commas,
+ * in the order of the attributes of the relation in the catalogue:
+ *
+ * <value>,<value>,...,<value>
+ *
+ * Blank lines are ignored, and values cannot contain commas. Tuples may
+ * be read from several threads at once.
+ *
+ * A relation may instead be stored in a HeapFile <relation name>.heap in
+ * the data directory, which is used in preference to its .csv file; the
+ * heap files are written by store(). A ScanIterator reads a heap file a
+ * page at a time, rather than holding all of its tuples in memory, and
+ * the pages of all the heap files are cached in the database's BufferPool.
+ *
+ * A relation may also be stored column by column, in a directory
+ * <relation name>.columns in the data directory that holds a ColumnFile
+ * <attribute name>.col for each attribute; the column files are written
+ * by storeColumns(), and are used in preference to the heap file and the
+ * .csv file. Storing a relation in heap or column files removes the files
+ * of the other kind. The column files are mapped into memory, and a scan
+ * reads only the blocks and columns that its query needs (see ColumnScan).
+ *
+ * An attribute that the catalogue declares an index on has a BPlusTree,
+ * built from the tuples of its relation when it is first needed, which
+ * maps each value to the RecordIds of the tuples that take it. The tuples
+ * of a relation held in memory are given record ids too: page 0, and
+ * their position in the list of tuples as the slot.
+ *
+ * The tuples of a relation can also be read in parts with scanPart(),
+ * without holding them in memory, so that statistics can be gathered
+ * from relations of any size (see Analyser).
+ *
+ * For vectorised execution, the tuples of a relation are also held column
+ * by column in a ColumnTable, built when first needed, with the values
+ * encoded by the database's ValueDictionary.
+ */
+public class Database {
+	private final File dir; //read when a relation has no tuples, if set
+	private final BufferPool pool; //caches the pages of the heap files, if set
+	private final Map<String, List<Tuple>> tables = new ConcurrentHashMap<String, List<Tuple>>();
+	private final Set<String> added = ConcurrentHashMap.newKeySet(); //relations whose tuples were set by addTuples()
+	private final Map<String, HeapFile> heapFiles = new ConcurrentHashMap<String, HeapFile>();
+	private final Map<String, ColumnFile[]> columnFiles = new ConcurrentHashMap<String, ColumnFile[]>();
+	private final Map<String, Map<String, BPlusTree>> indexes = new ConcurrentHashMap<String, Map<String, BPlusTree>>(); //by relation, then attribute
+	private final Map<String, ColumnTable> columnTables = new ConcurrentHashMap<String, ColumnTable>();
+	private final ValueDictionary dictionary = new ValueDictionary();
+
+	/**
+	 * Create a database whose tuples are all added with addTuples()
+	 */
+	public Database() {
+		this(null, null);
+	}
+
+	/**
+	 * Create a database that reads tuples from a data directory, and
+	 * caches the pages of its heap files in a buffer pool of
+	 * BufferPool.DEFAULT_FRAMES frames
+	 * @param dir
+	 */
+	public Database(File dir) {
+		this(dir, new BufferPool(BufferPool.DEFAULT_FRAMES));
+	}
+
+	/**
+	 * Create a database that reads tuples from a data directory
+	 * @param dir
+	 * @param pool Buffer pool to cache the pages of the heap files in, or null to read them directly
+	 */
+	public Database(File dir, BufferPool pool) {
+		this.dir = dir;
+		this.pool = pool;
+	}
+
+	/**
+	 * Return the buffer pool that caches the pages of the heap files
+	 * @return the pool, or null if there is none
+	 */
+	public BufferPool getBufferPool() {
+		return pool;
+	}
+
+	/**
+	 * Set the tuples of a named relation, replacing any it already has
+	 * (including those in its data files, which are no longer read)
+	 * @param reln
+	 * @param tuples Tuples with values in the order of the attributes of the relation
+	 * @throws DatabaseException if a tuple has the wrong number of values
+	 */
+	public void addTuples(NamedRelation reln, List<Tuple> tuples) throws DatabaseException {
+		int arity = reln.getSchema().size();
+		for (Tuple t : tuples) {
+			if (t.size() != arity) {
+				throw new DatabaseException("Tuple " + t + " of " + reln + " should have " + arity + " values");
+			}
+		}
+		tables.put(reln.toString(), Collections.unmodifiableList(new ArrayList<Tuple>(tuples)));
+		added.add(reln.toString());
+		indexes.remove(reln.toString());
+		columnTables.remove(reln.toString());
+	}
+
+	/**
+	 * Return the tuples of a named relation; the list cannot be modified
+	 * @param reln
+	 * @return
+	 * @throws DatabaseException if the relation has no tuples, or its data file is malformed
+	 */
+	public List<Tuple> getTuples(NamedRelation reln) throws DatabaseException {
+		List<Tuple> tuples = tables.get(reln.toString());
+
+		if (tuples == null && dir != null) {
+			ColumnFile[] columns = getColumnFiles(reln);
+			HeapFile heap = (columns == null) ? getHeapFile(reln) : null;
+			tuples = (columns != null) ? read(columns) : (heap == null) ? read(reln) : read(heap);
+			// another thread may have read the same relation
+			List<Tuple> existing = tables.putIfAbsent(reln.toString(), tuples);
+			tuples = (existing == null) ? tuples : existing;
+		}
+
+		if (tuples == null) {
+			throw new DatabaseException("No tuples for named relation " + reln);
+		}
+
+		return tuples;
+	}
+
+	/**
+	 * Return true if there are tuples for a named relation: it has tuples
+	 * in memory, or a data file
+	 * @param reln
+	 * @return
+	 */
+	public boolean hasTuples(NamedRelation reln) {
+		String name = reln.toString();
+		return tables.containsKey(name) || (dir != null && (new File(dir, name + ".columns").isDirectory()
+				|| new File(dir, name + ".heap").isFile() || new File(dir, name + ".csv").isFile()));
+	}
+
+	/**
+	 * Pass the tuples of one part of a named relation to a consumer, in
+	 * order, without holding them in memory. The tuples are divided into
+	 * parts of about the same size, which may be read by several threads
+	 * at once: ranges of the tuples held in memory, or of the rows of the
+	 * relation's column files, the pages of its heap file or the bytes of
+	 * its .csv file, whichever the relation is read from.
+	 * @param reln
+	 * @param part Number of the part to read, from 0
+	 * @param parts Number of parts
+	 * @param consumer
+	 * @throws DatabaseException if the relation has no tuples, or its data file is malformed
+	 */
+	public void scanPart(NamedRelation reln, int part, int parts, Consumer<Tuple> consumer) throws DatabaseException {
+		List<Tuple> tuples = tables.get(reln.toString());
+		if (tuples != null) {
+			int end = (int) ((long) tuples.size() * (part + 1) / parts);
+			for (int i = (int) ((long) tuples.size() * part / parts); i < end; i++) {
+				consumer.accept(tuples.get(i));
+			}
+			return;
+		}
+		if (dir == null) {
+			throw new DatabaseException("No tuples for named relation " + reln);
+		}
+
+		ColumnFile[] columns = getColumnFiles(reln);
+		if (columns != null) {
+			int rows = columns[0].getRows();
+			int end = (int) ((long) rows * (part + 1) / parts);
+			for (int row = (int) ((long) rows * part / parts); row < end; row++) {
+				String[] values = new String[columns.length];
+				for (int c = 0; c < columns.length; c++) {
+					values[c] = columns[c].getValue(row);
+				}
+				consumer.accept(new Tuple(values));
+			}
+			return;
+		}
+
+		HeapFile heap = getHeapFile(reln);
+		if (heap != null) {
+			int pages = heap.getPageCount();
+			HeapFile.Scanner scanner = heap.scan((int) ((long) pages * part / parts),
+					(int) ((long) pages * (part + 1) / parts));
+			try {
+				try {
+					Tuple t;
+					while ((t = scanner.next()) != null) {
+						consumer.accept(t);
+					}
+				} finally {
+					scanner.close();
+				}
+			} catch (IOException e) {
+				throw new DatabaseException("Failed to read " + heap, e);
+			}
+			return;
+		}
+
+		read(reln, part, parts, consumer);
+	}
+
+	/**
+	 * Return the tuples of a named relation held column by column
+	 * @param reln
+	 * @return
+	 * @throws DatabaseException if the relation has no tuples, or its data file is malformed
+	 */
+	public ColumnTable getColumns(NamedRelation reln) throws DatabaseException {
+		ColumnTable table = columnTables.get(reln.toString());
+
+		if (table == null) {
+			table = new ColumnTable(getTuples(reln), reln.getSchema().size(), dictionary);
+			ColumnTable existing = columnTables.putIfAbsent(reln.toString(), table);
+			table = (existing == null) ? table : existing;
+		}
+
+		return table;
+	}
+
+	/**
+	 * Return the index on an attribute of a named relation, building it if
+	 * it has not been built yet
+	 * @param reln
+	 * @param attr
+	 * @return
+	 * @throws DatabaseException if the relation does not have the attribute or
+	 * has no tuples, or its data file is malformed
+	 */
+	public BPlusTree getIndex(NamedRelation reln, Attribute attr) throws DatabaseException {
+		Map<String, BPlusTree> relnIndexes = indexes.get(reln.toString());
+		if (relnIndexes == null) {
+			relnIndexes = new ConcurrentHashMap<String, BPlusTree>();
+			Map<String, BPlusTree> existing = indexes.putIfAbsent(reln.toString(), relnIndexes);
+			relnIndexes = (existing == null) ? relnIndexes : existing;
+		}
+
+		BPlusTree index = relnIndexes.get(attr.getName());
+		if (index == null) {
+			index = buildIndex(reln, attr);
+			// another thread may have built the same index
+			BPlusTree existing = relnIndexes.putIfAbsent(attr.getName(), index);
+			index = (existing == null) ? index : existing;
+		}
+		return index;
+	}
+
+	/**
+	 * Return the tuple of a named relation with a record id
+	 * @param reln
+	 * @param id Record id, from the relation's index
+	 * @return the tuple, or null if there is none
+	 * @throws DatabaseException if the relation has no tuples, or its data file is malformed
+	 */
+	public Tuple getTuple(NamedRelation reln, RecordId id) throws DatabaseException {
+		HeapFile heap = indexedHeapFile(reln);
+		if (heap == null) {
+			List<Tuple> tuples = getTuples(reln);
+			return (id.getPage() == 0 && id.getSlot() >= 0 && id.getSlot() < tuples.size())
+					? tuples.get(id.getSlot()) : null;
+		}
+		try {
+			return heap.get(id);
+		} catch (IOException e) {
+			throw new DatabaseException("Failed to read " + id + " from " + heap, e);
+		}
+	}
+
+	/**
+	 * builds an index by reading every tuple of a relation
+	 */
+	private BPlusTree buildIndex(NamedRelation reln, Attribute attr) throws DatabaseException {
+		int position = reln.getSchema().indexOf(attr);
+		if (position < 0) {
+			throw new DatabaseException("No attribute " + attr + " in named relation " + reln);
+		}
+
+		BPlusTree index = new BPlusTree();
+		HeapFile heap = indexedHeapFile(reln);
+		if (heap == null) {
+			List<Tuple> tuples = getTuples(reln);
+			for (int i = 0; i < tuples.size(); i++) {
+				index.insert(tuples.get(i).get(position), new RecordId(0, i));
+			}
+			return index;
+		}
+
+		HeapFile.Scanner scanner = heap.scan();
+		try {
+			try {
+				Tuple t;
+				while ((t = scanner.next()) != null) {
+					index.insert(t.get(position), scanner.getRecordId());
+				}
+			} finally {
+				scanner.close();
+			}
+		} catch (IOException e) {
+			throw new DatabaseException("Failed to read " + heap, e);
+		}
+		return index;
+	}
+
+	/**
+	 * returns the heap file whose record ids index a relation, or null if
+	 * its tuples are held in memory (read from its column files, if it has any)
+	 */
+	private HeapFile indexedHeapFile(NamedRelation reln) throws DatabaseException {
+		return (getColumnFiles(reln) == null) ? getHeapFile(reln) : null;
+	}
+
+	/**
+	 * Return the column files that hold the tuples of a named relation
+	 * @param reln
+	 * @return the column files, in the order of the attributes of the relation, or
+	 * null if the relation has none or its tuples were set by addTuples()
+	 * @throws DatabaseException if a column file cannot be opened, or the files do not match the relation
+	 */
+	public ColumnFile[] getColumnFiles(NamedRelation reln) throws DatabaseException {
+		String name = reln.toString();
+		if (dir == null || added.contains(name)) {
+			return null;
+		}
+
+		ColumnFile[] columns = columnFiles.get(name);
+		if (columns == null) {
+			File columnDir = new File(dir, name + ".columns");
+			if (!columnDir.isDirectory()) {
+				return null;
+			}
+			List<Attribute> attributes = reln.getSchema().getAttributes();
+			columns = new ColumnFile[attributes.size()];
+			for (int i = 0; i < columns.length; i++) {
+				File file = new File(columnDir, attributes.get(i).getName() + ".col");
+				try {
+					columns[i] = ColumnFile.open(file);
+				} catch (IOException e) {
+					throw new DatabaseException("Failed to open " + file, e);
+				}
+				if (columns[i].getRows() != columns[0].getRows()) {
+					throw new DatabaseException("Column file " + file + " has " + columns[i].getRows()
+							+ " values, but " + columns[0] + " has " + columns[0].getRows());
+				}
+			}
+			// another thread may have opened the same files
+			ColumnFile[] existing = columnFiles.putIfAbsent(name, columns);
+			columns = (existing == null) ? columns : existing;
+		}
+		return columns;
+	}
+
+	/**
+	 * Return the heap file that holds the tuples of a named relation
+	 * @param reln
+	 * @return the heap file, or null if the relation has none or its tuples were set by addTuples()
+	 * @throws DatabaseException if the heap file cannot be opened
+	 */
+	public HeapFile getHeapFile(NamedRelation reln) throws DatabaseException {
+		String name = reln.toString();
+		if (dir == null || added.contains(name)) {
+			return null;
+		}
+
+		HeapFile heap = heapFiles.get(name);
+		if (heap == null) {
+			File file = new File(dir, name + ".heap");
+			if (!file.isFile()) {
+				return null;
+			}
+			try {
+				heap = HeapFile.open(file, pool);
+			} catch (IOException e) {
+				throw new DatabaseException("Failed to open " + file, e);
+			}
+			// another thread may have opened the same file
+			HeapFile existing = heapFiles.putIfAbsent(name, heap);
+			heap = (existing == null) ? heap : existing;
+		}
+		return heap;
+	}
+
+	/**
+	 * Write the tuples of a named relation to a new heap file in the data
+	 * directory, which is read instead of its .csv file from then on
+	 * @param reln
+	 * @return the heap file
+	 * @throws DatabaseException if the database has no data directory, the
+	 * relation has no tuples, or the heap file cannot be written
+	 */
+	public HeapFile store(NamedRelation reln) throws DatabaseException {
+		if (dir == null) {
+			throw new DatabaseException("No data directory to store " + reln + " in");
+		}
+		return write(reln, getTuples(reln));
+	}
+
+	/**
+	 * Write the tuples of a named relation to new column files in the data
+	 * directory, which are read instead of its .csv or heap file from then on
+	 * @param reln
+	 * @return the column files
+	 * @throws DatabaseException if the database has no data directory, the
+	 * relation has no tuples, or the column files cannot be written
+	 */
+	public ColumnFile[] storeColumns(NamedRelation reln) throws DatabaseException {
+		if (dir == null) {
+			throw new DatabaseException("No data directory to store " + reln + " in");
+		}
+		return writeColumns(reln, getTuples(reln));
+	}
+
+	/**
+	 * Store each relation of a catalogue that has a .csv file in the data
+	 * directory in column files, replacing any it already has
+	 * @param catalogue
+	 * @return the number of relations stored
+	 * @throws DatabaseException if a data file cannot be read or a column file written
+	 */
+	public int storeAllColumns(Catalogue catalogue) throws DatabaseException {
+		int stored = 0;
+		for (String name : dataFiles(".csv")) {
+			NamedRelation reln;
+			try {
+				reln = catalogue.getRelation(name);
+			} catch (DatabaseException e) {
+				// not a relation of this catalogue
+				continue;
+			}
+			writeColumns(reln, read(reln));
+			stored++;
+		}
+		return stored;
+	}
+
+	/**
+	 * Store each relation of a catalogue that has a .csv file in the data
+	 * directory in a heap file, replacing any heap file it already has
+	 * @param catalogue
+	 * @return the number of relations stored
+	 * @throws DatabaseException if a data file cannot be read or a heap file written
+	 */
+	public int storeAll(Catalogue catalogue) throws DatabaseException {
+		int stored = 0;
+		for (String name : dataFiles(".csv")) {
+			NamedRelation reln;
+			try {
+				reln = catalogue.getRelation(name);
+			} catch (DatabaseException e) {
+				// not a relation of this catalogue
+				continue;
+			}
+			write(reln, read(reln));
+			stored++;
+		}
+		return stored;
+	}
+
+	/**
+	 * Record the number of pages in the heap file of each relation of a
+	 * catalogue that has one, as a single update of the catalogue
+	 * @param catalogue
+	 * @throws DatabaseException if a heap file cannot be opened
+	 */
+	public void updatePageCounts(Catalogue catalogue) throws DatabaseException {
+		List<String> names = dataFiles(".heap");
+		catalogue.update(batch -> {
+			for (String name : names) {
+				NamedRelation reln;
+				try {
+					reln = batch.getRelation(name);
+				} catch (DatabaseException e) {
+					// not a relation of this catalogue
+					continue;
+				}
+				HeapFile heap = getHeapFile(reln);
+				if (heap != null && heap.getPageCount() != reln.getPageCount()) {
+					batch.updatePageCount(name, heap.getPageCount());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Close the heap files of the database, writing back their changed
+	 * pages and removing them from the buffer pool; they are opened again
+	 * if they are needed
+	 * @throws DatabaseException if a heap file cannot be written or closed
+	 */
+	public void close() throws DatabaseException {
+		synchronized (heapFiles) {
+			DatabaseException failure = null;
+			for (Iterator<HeapFile> it = heapFiles.values().iterator(); it.hasNext();) {
+				HeapFile heap = it.next();
+				it.remove();
+				try {
+					heap.close();
+				} catch (IOException e) {
+					// the other files are still closed
+					if (failure == null) {
+						failure = new DatabaseException("Failed to close " + heap, e);
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * writes the heap file of a relation; its tuples are read from the new
+	 * file when they are next needed
+	 */
+	private HeapFile write(NamedRelation reln, List<Tuple> tuples) throws DatabaseException {
+		String name = reln.toString();
+		File file = new File(dir, name + ".heap");
+
+		synchronized (heapFiles) {
+			try {
+				HeapFile old = heapFiles.remove(name);
+				if (old != null) {
+					old.close();
+				}
+				HeapFile heap = HeapFile.create(file, pool);
+				heap.insertAll(tuples);
+				// the pages are only in the pool until they are written back
+				if (pool != null) {
+					pool.flush(heap);
+				}
+				heapFiles.put(name, heap);
+				removeColumnFiles(name);
+				added.remove(name);
+				tables.remove(name);
+				indexes.remove(name);
+				columnTables.remove(name);
+				return heap;
+			} catch (IOException e) {
+				throw new DatabaseException("Failed to write " + file, e);
+			}
+		}
+	}
+
+	/**
+	 * writes the column files of a relation, and removes its heap file;
+	 * its tuples are read from the new files when they are next needed
+	 */
+	private ColumnFile[] writeColumns(NamedRelation reln, List<Tuple> tuples) throws DatabaseException {
+		String name = reln.toString();
+		File columnDir = new File(dir, name + ".columns");
+		List<Attribute> attributes = reln.getSchema().getAttributes();
+
+		synchronized (heapFiles) {
+			columnDir.mkdirs();
+			ColumnFile[] columns = new ColumnFile[attributes.size()];
+			for (int i = 0; i < columns.length; i++) {
+				File file = new File(columnDir, attributes.get(i).getName() + ".col");
+				try {
+					columns[i] = ColumnFile.write(file, tuples, i);
+				} catch (IOException e) {
+					throw new DatabaseException("Failed to write " + file, e);
+				}
+			}
+
+			HeapFile old = heapFiles.remove(name);
+			try {
+				if (old != null) {
+					old.close();
+				}
+			} catch (IOException e) {
+				throw new DatabaseException("Failed to close " + old, e);
+			}
+			new File(dir, name + ".heap").delete();
+
+			columnFiles.put(name, columns);
+			added.remove(name);
+			tables.remove(name);
+			indexes.remove(name);
+			columnTables.remove(name);
+			return columns;
+		}
+	}
+
+	/**
+	 * removes the column files of a relation; files that are still mapped
+	 * stay readable until they are unmapped
+	 */
+	private void removeColumnFiles(String name) {
+		columnFiles.remove(name);
+		File columnDir = new File(dir, name + ".columns");
+		File[] files = columnDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+			columnDir.delete();
+		}
+	}
+
+	/**
+	 * lists the names of the relations with files of a type in the data directory
+	 */
+	private List<String> dataFiles(String suffix) {
+		List<String> names = new ArrayList<String>();
+		File[] files = (dir == null) ? null : dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (file.isFile() && name.endsWith(suffix)) {
+					names.add(name.substring(0, name.length() - suffix.length()));
+				}
+			}
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Return the dictionary that encodes the values of the column tables
+	 * @return
+	 */
+	public ValueDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * reads all the tuples of a heap file
+	 */
+	private static List<Tuple> read(HeapFile heap) throws DatabaseException {
+		List<Tuple> tuples = new ArrayList<Tuple>();
+		HeapFile.Scanner scanner = heap.scan();
+		try {
+			try {
+				Tuple t;
+				while ((t = scanner.next()) != null) {
+					tuples.add(t);
+				}
+			} finally {
+				scanner.close();
+			}
+		} catch (IOException e) {
+			throw new DatabaseException("Failed to read " + heap, e);
+		}
+		return Collections.unmodifiableList(tuples);
+	}
+
+	/**
+	 * reads all the tuples of the column files of a relation
+	 */
+	private static List<Tuple> read(ColumnFile[] columns) {
+		int rows = columns[0].getRows();
+		List<Tuple> tuples = new ArrayList<Tuple>(rows);
+		for (int row = 0; row < rows; row++) {
+			String[] values = new String[columns.length];
+			for (int c = 0; c < columns.length; c++) {
+				values[c] = columns[c].getValue(row);
+			}
+			tuples.add(new Tuple(values));
+		}
+		return Collections.unmodifiableList(tuples);
+	}
+
+	/**
+	 * reads a part of the data file of a relation: the lines that start
+	 * in a range of its bytes
+	 */
+	private void read(NamedRelation reln, int part, int parts, Consumer<Tuple> consumer) throws DatabaseException {
+		File file = new File(dir, reln + ".csv");
+		if (!file.isFile()) {
+			throw new DatabaseException("No data file " + file + " for named relation " + reln);
+		}
+
+		int arity = reln.getSchema().size();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long start = size * part / parts;
+			long end = size * (part + 1) / parts;
+
+			// skip the end of the line that starts in the previous part
+			long position = Math.max(start - 1, 0);
+			InputStream in = new BufferedInputStream(Channels.newInputStream(channel.position(position)));
+			int b = 0;
+			if (start > 0) {
+				while ((b = in.read()) >= 0) {
+					position++;
+					if (b == '\n') {
+						break;
+					}
+				}
+			}
+
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			while (position < end && b >= 0) {
+				long lineStart = position;
+				line.reset();
+				while ((b = in.read()) >= 0) {
+					position++;
+					if (b == '\n') {
+						break;
+					}
+					line.write(b);
+				}
+
+				String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+				if (text.endsWith("\r")) {
+					text = text.substring(0, text.length() - 1);
+				}
+				if (text.isEmpty()) {
+					continue;
+				}
+				String[] values = text.split(",", -1);
+				if (values.length != arity) {
+					throw new DatabaseException(file + ": line at byte " + lineStart + ": expected " + arity
+							+ " values but found " + values.length);
+				}
+				consumer.accept(new Tuple(values));
+			}
+		} catch (IOException e) {
+			throw new DatabaseException("Failed to read " + file, e);
+		}
+	}
+
+	/**
+	 * reads the data file of a relation
+	 */
+	private List<Tuple> read(NamedRelation reln) throws DatabaseException {
+		File file = new File(dir, reln + ".csv");
+		if (!file.isFile()) {
+			throw new DatabaseException("No data file " + file + " for named relation " + reln);
+		}
+
+		int arity = reln.getSchema().size();
+		List<Tuple> tuples = new ArrayList<Tuple>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			int lines = 0;
+			while ((line = reader.readLine()) != null) {
+				lines++;
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] values = line.split(",", -1);
+				if (values.length != arity) {
+					throw new DatabaseException(file + ":" + lines + ": expected " + arity
+							+ " values but found " + values.length);
+				}
+				tuples.add(new Tuple(values));
+			}
+		} catch (IOException e) {
+			throw new DatabaseException("Failed to read " + file, e);
+		}
+		return Collections.unmodifiableList(tuples);
+	}
+}
@@ -1,11 +1,12 @@
 package sjdb;
 
-import java.util.List;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 
-public class Estimator implements PlanVisitor {
 
+public class Estimator implements PlanVisitor {
+	private static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3; //for range predicates on attributes without a histogram
 
 	public Estimator() {
 		// empty constructor
@@ -15,15 +16,13 @@ public class Estimator implements PlanVisitor {
 	 * Create output relation on Scan operator
 	 *
 	 * Example implementation of visit method for Scan operators.
+	 * 
+	 * Output relations share the schemas of their inputs where the
+	 * attributes and value counts are unchanged, so no attribute is copied.
 	 */
 	public void visit(Scan op) {
 		Relation input = op.getRelation();
-		Relation output = new Relation(input.getTupleCount());
-		
-		Iterator<Attribute> iter = input.getAttributes().iterator();
-		while (iter.hasNext()) {
-			output.addAttribute(new Attribute(iter.next()));
-		}
+		Relation output = new Relation(input.getTupleCount(), input.getSchema());
 		
 		op.setOutput(output);
 	}
@@ -33,50 +32,34 @@ public class Estimator implements PlanVisitor {
 		Relation input = op.getInput().getOutput();
 		
 		//creating the output relation with the correspondent tuple count
-		Relation output = new Relation(input.getTupleCount());
-		
-		List<Attribute> attributes = op.getAttributes();
-		List<String> attributesNames = new ArrayList<String>();
-		for(Attribute attr: attributes){
-			attributesNames.add(attr.getName());
-		}
-		
-		//adding to the output relation only the attributes projected
-		Iterator<Attribute> iter = input.getAttributes().iterator();
-		while (iter.hasNext()) {
-			Attribute attribute = new Attribute(iter.next());
-			if(attributesNames.contains(attribute.getName())) {
-				output.addAttribute(attribute);
-			}
-		}
+		//and only the attributes projected, in the order of the project
+		Relation output = new Relation(input.getTupleCount(), input.getSchema().project(op.getAttributes()));
 		
 		op.setOutput(output);
 	}
 	
 	
+	//estimates are computed in floating point and converted with Relation.count, so they cannot overflow
+	//value counts are at least 1 when dividing, as they drop to 0 for empty relations
 	public void visit(Select op) {
 		Relation input = op.getInput().getOutput();
 		Predicate predicate = op.getPredicate();
 		Attribute leftAttribute = predicate.getLeftAttribute();
 		
-		if(predicate.equalsValue()){
+		if(predicate.comparesValue()){
 			Attribute lAttr = input.getAttribute(leftAttribute);
 			
 			//creating the output relation with the correspondent tuple count
-			Relation output = new Relation(input.getTupleCount()/lAttr.getValueCount());
-			
-			//add the attributes to the output relation, with the correct value counts
-			Iterator<Attribute> iter = input.getAttributes().iterator();
-			while (iter.hasNext()) {
-				Attribute attr = new Attribute(iter.next());
-				if(attr.equals(lAttr)){
-					output.addAttribute(new Attribute(attr.getName(), 1));
-				} else {
-					output.addAttribute(attr);
-				}
+			//(using the synopsis of the attribute if it has one)
+			long size;
+			if(predicate.equalsValue() && !lAttr.hasSynopsis()){
+				size = Relation.count((double) input.getTupleCount()/Math.max(lAttr.getValueCount(), 1));
+			} else {
+				size = Relation.count(input.getTupleCount() * selectivity(lAttr, predicate));
 			}
+			Schema schema = input.getSchema().replace(new Attribute(lAttr.getName(), valueCount(lAttr, predicate)));
 			
-			op.setOutput(output);
+			op.setOutput(new Relation(size, schema));
 		
 		} else {
 			Attribute rightAttribute = predicate.getRightAttribute();
@@ -86,20 +69,12 @@ public class Estimator implements PlanVisitor {
 			Attribute rAttr = input.getAttribute(rightAttribute);
 			
 			//creating the output relation with the correspondent tuple count
-			Relation output = new Relation(input.getTupleCount()/Math.max(lAttr.getValueCount(),rAttr.getValueCount()));
+			//both attributes keep the smaller of their value counts
+			long size = Relation.count((double) input.getTupleCount()/Math.max(Math.max(lAttr.getValueCount(),rAttr.getValueCount()), 1));
+			long values = Math.min(lAttr.getValueCount(), rAttr.getValueCount());
+			Schema schema = input.getSchema().replace(new Attribute(lAttr.getName(), values), new Attribute(rAttr.getName(), values));
 			
-			//add the attributes to the output relation, with the correct value counts
-			Iterator<Attribute> iter = input.getAttributes().iterator();
-			while (iter.hasNext()) {
-				Attribute attr = new Attribute(iter.next());
-				if((attr.equals(lAttr)) || (attr.equals(rAttr))){
-					output.addAttribute(new Attribute(attr.getName(), Math.min(lAttr.getValueCount(), rAttr.getValueCount())));
-				} else {
-					output.addAttribute(attr);
-				}	
-			}
-			
-			op.setOutput(output);	
+			op.setOutput(new Relation(size, schema));	
 		}	
 	}
 	
@@ -111,18 +86,9 @@ public class Estimator implements PlanVisitor {
 		Relation inputRight = op.getRight().getOutput();
 		
 		//creating an output relation with the tuple cost being the product of the 2 costs
-		Relation output = new Relation(inputLeft.getTupleCount() * inputRight.getTupleCount());
-		
 		//the new relations consists of the attributes contained in the 2 initial relations
-		Iterator<Attribute> iterLeft = inputLeft.getAttributes().iterator();
-		while (iterLeft.hasNext()) {
-			output.addAttribute(new Attribute(iterLeft.next()));
-		}
-		
-		Iterator<Attribute> iterRight = inputRight.getAttributes().iterator();
-		while (iterRight.hasNext()) {
-			output.addAttribute(new Attribute(iterRight.next()));
-		}
+		Relation output = new Relation(Relation.count((double) inputLeft.getTupleCount() * inputRight.getTupleCount()),
+				inputLeft.getSchema().concat(inputRight.getSchema()));
 		
 		op.setOutput(output);
 	}
@@ -142,30 +108,149 @@ public class Estimator implements PlanVisitor {
 		Attribute rAttr = inputRight.getAttribute(rightAttribute);
 		
 		//creating an output relation with the correspondent tuple count
-		Relation output = new Relation((inputLeft.getTupleCount() * inputRight.getTupleCount())/Math.max(lAttr.getValueCount(), rAttr.getValueCount()));
+		long size = Relation.count((double) inputLeft.getTupleCount() * inputRight.getTupleCount()/Math.max(Math.max(lAttr.getValueCount(), rAttr.getValueCount()), 1));
 		
 		//the new relations consists of the attributes contained in the 2 initial relations
-		//with some changes to the value counts 
-		Iterator<Attribute> iterLeft = inputLeft.getAttributes().iterator();
-		while (iterLeft.hasNext()) {
-			Attribute attr = new Attribute(iterLeft.next());
-			if(attr.equals(lAttr)){
-				output.addAttribute(new Attribute(attr.getName(), Math.min(lAttr.getValueCount(), rAttr.getValueCount())));
-			} else {
-				output.addAttribute(attr);
+		//with the join attributes keeping the smaller of their value counts
+		long values = Math.min(lAttr.getValueCount(), rAttr.getValueCount());
+		Schema left = inputLeft.getSchema().replace(new Attribute(lAttr.getName(), values));
+		Schema right = inputRight.getSchema().replace(new Attribute(rAttr.getName(), values));
+		
+		op.setOutput(new Relation(size, left.concat(right)));
+	}
+	
+	
+	/**
+	 * Returns the fraction of the tuples of a relation that satisfy a
+	 * predicate comparing an attribute with values
+	 * @param attr
+	 * @param predicate
+	 * @return
+	 */
+	private static double selectivity(Attribute attr, Predicate predicate) {
+		switch(predicate.getComparison()){
+		case EQ:
+			return equalSelectivity(attr, predicate.getRightValue());
+		case NE:
+			return 1 - equalSelectivity(attr, predicate.getRightValue());
+		case IN:
+			double selectivity = 0;
+			for(String value : new LinkedHashSet<String>(predicate.getRightValues())){
+				selectivity += equalSelectivity(attr, value);
 			}
+			return Math.min(selectivity, 1);
+		default:
+			return rangeSelectivity(attr, predicate);
+		}
+	}
+	
+	/**
+	 * Returns the fraction of the tuples in which an attribute takes a value.
+	 * Without a synopsis this is 1/V. With one, a most common value takes its
+	 * own fraction, and the other values share the remaining tuples equally,
+	 * except that a value outside the range of the histogram takes none, and
+	 * a value that fills whole buckets of the histogram takes at least those
+	 * buckets.
+	 * @param attr
+	 * @param value
+	 * @return
+	 */
+	private static double equalSelectivity(Attribute attr, String value) {
+		if(!attr.hasSynopsis()){
+			return 1.0 / Math.max(attr.getValueCount(), 1);
 		}
 		
-		Iterator<Attribute> iterRight = inputRight.getAttributes().iterator();
-		while (iterRight.hasNext()) {
-			Attribute attr = new Attribute(iterRight.next());
-			if(attr.equals(rAttr)){
-				output.addAttribute(new Attribute(attr.getName(), Math.min(lAttr.getValueCount(), rAttr.getValueCount())));
-			} else {
-				output.addAttribute(attr);
+		Double frequency = attr.getMostCommonValues().get(value);
+		if(frequency != null){
+			return frequency;
+		}
+		
+		double rest = 1;
+		for(double f : attr.getMostCommonValues().values()){
+			rest -= f;
+		}
+		rest = Math.max(rest, 0);
+		long others = attr.getValueCount() - attr.getMostCommonValues().size();
+		if(others <= 0){
+			return 0;
+		}
+		
+		double selectivity = rest / others;
+		Histogram histogram = attr.getHistogram();
+		if(histogram != null){
+			if(!histogram.contains(value)){
+				return 0;
 			}
+			selectivity = Math.max(selectivity, rest * histogram.getEqualFraction(value));
 		}
+		return selectivity;
+	}
+	
+	/**
+	 * Returns the fraction of the tuples that satisfy a range predicate
+	 * (<, <=, >, >= or BETWEEN). The most common values that satisfy the
+	 * predicate count in full; the histogram gives the fraction of the
+	 * other tuples, and without one a fixed fraction is assumed.
+	 * @param attr
+	 * @param predicate
+	 * @return
+	 */
+	private static double rangeSelectivity(Attribute attr, Predicate predicate) {
+		double selectivity = 0;
+		double rest = 1;
+		for(Map.Entry<String, Double> mcv : attr.getMostCommonValues().entrySet()){
+			rest -= mcv.getValue();
+			if(predicate.matches(mcv.getKey())){
+				selectivity += mcv.getValue();
+			}
+		}
+		rest = Math.max(rest, 0);
 		
-		op.setOutput(output);
+		Histogram histogram = attr.getHistogram();
+		if(histogram == null){
+			return selectivity + rest * DEFAULT_RANGE_SELECTIVITY;
+		}
+		
+		String value = predicate.getRightValue();
+		double fraction;
+		switch(predicate.getComparison()){
+		case LT:
+			fraction = histogram.getFractionBelow(value, false);
+			break;
+		case LE:
+			fraction = histogram.getFractionBelow(value, true);
+			break;
+		case GT:
+			fraction = 1 - histogram.getFractionBelow(value, true);
+			break;
+		case GE:
+			fraction = 1 - histogram.getFractionBelow(value, false);
+			break;
+		default:
+			fraction = histogram.getFractionBelow(predicate.getRightValues().get(1), true)
+					- histogram.getFractionBelow(value, false);
+		}
+		return selectivity + rest * Math.max(fraction, 0);
+	}
+	
+	/**
+	 * Returns the number of distinct values an attribute has left after
+	 * a predicate comparing it with values
+	 * @param attr
+	 * @param predicate
+	 * @return
+	 */
+	private static long valueCount(Attribute attr, Predicate predicate) {
+		long values = attr.getValueCount();
+		switch(predicate.getComparison()){
+		case EQ:
+			return 1;
+		case NE:
+			return Math.max(values - 1, 1);
+		case IN:
+			return Math.min(values, new HashSet<String>(predicate.getRightValues()).size());
+		default:
+			return Math.max(Relation.count(values * rangeSelectivity(attr, predicate)), 1);
+		}
 	}
 }
@@ -0,0 +1,65 @@
+package sjdb;
+
+/**
+ * This interface is implemented by the policies that choose which frame of
+ * a BufferPool to evict when a page that is not in the pool is needed.
+ * The pool tells its policy about every access to a frame, and asks it for
+ * a victim; the policy offers the pool frames in the order it would
+ * rather evict them, until the pool finds one that is not pinned.
+ *
+ * accessed() and loaded() may be called by several threads at once;
+ * the pool calls victim() by one thread at a time.
+ */
+public interface EvictionPolicy {
+	/**
+	 * The frames of a buffer pool that may be evicted
+	 */
+	public interface Frames {
+		/**
+		 * Evict the page in a frame, if the frame is not pinned
+		 * @param frame
+		 * @return whether the frame was evicted
+		 */
+		boolean evict(int frame);
+
+		/**
+		 * Return whether a frame is pinned; a frame that is not may still
+		 * be pinned before it is evicted
+		 * @param frame
+		 * @return
+		 */
+		boolean isPinned(int frame);
+	}
+
+	/**
+	 * Prepare the policy for a pool of frames; called once, by the pool
+	 * @param frames Number of frames in the pool
+	 */
+	public void init(int frames);
+
+	/**
+	 * Record an access to the page in a frame
+	 * @param frame
+	 */
+	public void accessed(int frame);
+
+	/**
+	 * Record that a new page has been read into a frame, which counts as
+	 * its first access
+	 * @param frame
+	 */
+	public void loaded(int frame);
+
+	/**
+	 * Choose a frame to evict, and evict it
+	 * @param frames Frames of the pool
+	 * @return the evicted frame, or -1 if every frame is pinned
+	 */
+	public int victim(Frames frames);
+
+	/**
+	 * Return the name of the policy
+	 * @return
+	 */
+	public String getName();
+}
@@ -0,0 +1,240 @@
+package sjdb;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class executes query plans against the tuples held in a Database.
+ * It visits a logical plan to build a physical plan of iterators, which
+ * can then be run, and reports the number of tuples produced by each
+ * operator next to the number estimated for it.
+ *
+ * Plans are executed a tuple at a time, or, in vectorised mode, a batch
+ * of tuples at a time by BatchOperators, which hold the values column by
+ * column as codes (see Batch); joins are then executed by hashing.
+ * Otherwise each join is executed by the method the Optimiser chose for
+ * it (see JoinMethod), or by nested loops if none was chosen, and a select
+ * that the optimiser chose to execute by an index scan is executed by an
+ * IndexScanIterator; vectorised plans do not use indexes.
+ *
+ * The predicates of the selects directly above a scan, and the attributes
+ * kept by a project above them, are passed down to the scan (see
+ * ColumnScan), so that a relation stored in ColumnFiles is read only in
+ * the blocks and columns that are needed.
+ *
+ * An executor builds one plan at a time; use one per thread.
+ */
+public class Executor implements PlanVisitor {
+	private final Database database;
+	private final boolean vectorised;
+	private long memoryBudget = Optimiser.DEFAULT_MEMORY_BUDGET;
+	private final Deque<PhysicalOperator> stack = new ArrayDeque<PhysicalOperator>(); //physical plans of the operators visited so far
+	private IndexScanIterator probe; //replaces its scan while the inner input of an index nested loop join is built
+
+	/**
+	 * Create a new executor
+	 * @param database Database that holds the tuples of the named relations
+	 */
+	public Executor(Database database) {
+		this(database, false);
+	}
+
+	/**
+	 * Create a new executor
+	 * @param database Database that holds the tuples of the named relations
+	 * @param vectorised Whether to execute plans a batch at a time
+	 */
+	public Executor(Database database, boolean vectorised) {
+		this.database = database;
+		this.vectorised = vectorised;
+	}
+
+	/**
+	 * Set the number of tuples that a block nested loop join may hold in
+	 * memory at once
+	 * @param memoryBudget
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = Math.max(memoryBudget, 1);
+	}
+
+	/**
+	 * Build a physical plan for a logical plan
+	 * @param plan
+	 * @return
+	 */
+	public PhysicalOperator build(Operator plan) {
+		stack.clear();
+		plan.accept(this);
+		return stack.pop();
+	}
+
+	/**
+	 * Run a physical plan, and return its output tuples
+	 * @param plan
+	 * @return
+	 * @throws DatabaseException if the tuples of a relation cannot be read
+	 */
+	public List<Tuple> execute(PhysicalOperator plan) throws DatabaseException {
+		List<Tuple> tuples = new ArrayList<Tuple>();
+		plan.open();
+		try {
+			Tuple t;
+			while ((t = plan.next()) != null) {
+				tuples.add(t);
+			}
+		} finally {
+			plan.close();
+		}
+		return tuples;
+	}
+
+	/**
+	 * Print a physical plan that has been run, one operator per line with
+	 * its inputs indented below it, giving the number of tuples it produced
+	 * and the number estimated for its logical operator (if it has been
+	 * estimated)
+	 * @param plan
+	 * @param out
+	 */
+	public static void report(PhysicalOperator plan, PrintStream out) {
+		report(plan, out, "");
+	}
+
+	private static void report(PhysicalOperator op, PrintStream out, String indent) {
+		Relation output = op.getOperator().getOutput();
+		out.println(indent + op + "  rows=" + op.getRows()
+				+ ((output == null) ? "" : " est=" + output.getTupleCount()));
+		for (PhysicalOperator input : op.getInputs()) {
+			report(input, out, indent + "  ");
+		}
+	}
+
+	@Override
+	public void visit(Scan op) {
+		if (probe != null && probe.getOperator() == op) {
+			stack.push(probe);
+		} else if (vectorised) {
+			stack.push(new BatchScan(op, database));
+		} else {
+			stack.push(new ScanIterator(op, database));
+		}
+	}
+
+	@Override
+	public void visit(Project op) {
+		PhysicalOperator input = stack.pop();
+		ColumnScan scan = columnScan(input);
+		if (scan != null) {
+			// the scan reads the attributes kept by the project and those the selects test
+			Set<Attribute> attributes = new HashSet<Attribute>(op.getAttributes());
+			for (PhysicalOperator p = input; p != scan; p = p.getInputs().get(0)) {
+				Predicate predicate = ((Select) p.getOperator()).getPredicate();
+				attributes.add(predicate.getLeftAttribute());
+				if (!predicate.comparesValue()) {
+					attributes.add(predicate.getRightAttribute());
+				}
+			}
+			scan.setColumns(attributes);
+		}
+
+		if (vectorised) {
+			stack.push(new BatchProject(op, (BatchOperator) input));
+		} else {
+			stack.push(new ProjectIterator(op, input));
+		}
+	}
+
+	@Override
+	public void visit(Select op) {
+		if (vectorised) {
+			PhysicalOperator input = stack.pop();
+			addFilter(input, op.getPredicate());
+			stack.push(new BatchSelect(op, (BatchOperator) input));
+		} else if (op.isIndexed()) {
+			// the scan of the input is not needed
+			stack.pop();
+			stack.push(new IndexScanIterator(op, database));
+		} else {
+			PhysicalOperator input = stack.pop();
+			addFilter(input, op.getPredicate());
+			stack.push(new SelectIterator(op, input));
+		}
+	}
+
+	/**
+	 * passes a select's predicate down to the scan below it, if there is one
+	 */
+	private static void addFilter(PhysicalOperator input, Predicate predicate) {
+		ColumnScan scan = columnScan(input);
+		if (scan != null) {
+			scan.addFilter(predicate);
+		}
+	}
+
+	/**
+	 * returns the scan at the bottom of a chain of selects, or null if the
+	 * chain ends in another operator
+	 */
+	private static ColumnScan columnScan(PhysicalOperator op) {
+		while (op instanceof SelectIterator || op instanceof BatchSelect) {
+			op = op.getInputs().get(0);
+		}
+		return (op instanceof ColumnScan) ? (ColumnScan) op : null;
+	}
+
+	@Override
+	public void visit(Product op) {
+		// the right input was visited last
+		PhysicalOperator right = stack.pop();
+		if (vectorised) {
+			stack.push(new BatchJoin(op, (BatchOperator) stack.pop(), (BatchOperator) right));
+		} else {
+			stack.push(new NestedLoopJoinIterator(op, stack.pop(), right));
+		}
+	}
+
+	@Override
+	public void visit(Join op) {
+		PhysicalOperator right = stack.pop();
+		PhysicalOperator left = stack.pop();
+		if (vectorised) {
+			stack.push(new BatchJoin(op, (BatchOperator) left, (BatchOperator) right));
+			return;
+		}
+		if (op.getMethod() == null) {
+			stack.push(new NestedLoopJoinIterator(op, left, right));
+			return;
+		}
+		switch (op.getMethod()) {
+		case HASH:
+			stack.push(new HashJoinIterator(op, left, right, op.isBuildLeft()));
+			break;
+		case SORT_MERGE:
+			stack.push(new SortMergeJoinIterator(op, left, right));
+			break;
+		case INDEX_NESTED_LOOP: {
+			// the inner input is built again, with its scan replaced by a probe of the index
+			boolean innerLeft = op.isBuildLeft();
+			Operator inner = innerLeft ? op.getLeft() : op.getRight();
+			Attribute attr = CostModel.joinAttribute(op, innerLeft);
+			IndexScanIterator indexProbe = new IndexScanIterator(CostModel.indexedScan(inner, attr), attr, database);
+			probe = indexProbe;
+			inner.accept(this);
+			probe = null;
+			PhysicalOperator innerPlan = stack.pop();
+			stack.push(new IndexNestedLoopJoinIterator(op, innerLeft ? innerPlan : left, innerLeft ? right : innerPlan,
+					innerLeft, indexProbe));
+			break;
+		}
+		default:
+			stack.push(new BlockNestedLoopJoinIterator(op, left, right, op.isBuildLeft(),
+					(int) Math.min(memoryBudget, Integer.MAX_VALUE)));
+		}
+	}
+}
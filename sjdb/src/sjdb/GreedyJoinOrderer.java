@@ -0,0 +1,139 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * This class orders the joins of a JoinGraph greedily, for queries with
+ * too many relations to enumerate exhaustively (Greedy Operator Ordering).
+ *
+ * Starting with one plan per relation, it repeatedly combines the two
+ * plans that share a predicate and whose join has the smallest estimated
+ * size, until no such pair remains. Any plans left over (if the graph is
+ * not connected) are then combined with cartesian products.
+ *
+ * Candidate joins are sized without building them: the orderer keeps, for
+ * each pair of plans that share predicates, the product of the
+ * selectivities of those predicates (see JoinGraph.getSelectivity), and
+ * the size of a join is the product of the sizes of its inputs and their
+ * joint selectivity. When two plans are combined, the joint selectivity
+ * of the new plan with each other plan is the product of those of its
+ * inputs, so each step only updates the plans next to the new one, and
+ * its cost does not grow with the number of predicates between them.
+ * Operators are only built for the joins that are chosen.
+ */
+public class GreedyJoinOrderer {
+	private JoinGraph graph;
+
+	/**
+	 * Create a new greedy orderer for the given join graph
+	 * @param graph
+	 */
+	public GreedyJoinOrderer(JoinGraph graph) {
+		this.graph = graph;
+	}
+
+	/**
+	 * Return a plan that joins all the relations in the graph
+	 * @return
+	 */
+	public JoinPlan order() {
+		//each plan is kept in the slot of one of its relations; the other slots of its relations are null
+		JoinPlan[] plans = new JoinPlan[graph.size()];
+		List<Map<Integer, Double>> selectivities = new ArrayList<Map<Integer, Double>>(); //for each slot, the joint selectivity with each slot it shares predicates with
+		PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>();
+		int sequence = 0;
+
+		for (int i = 0; i < graph.size(); i++) {
+			plans[i] = graph.getRelation(i);
+			selectivities.add(new HashMap<Integer, Double>());
+		}
+
+		for (int p = 0; p < graph.getPredicateCount(); p++) {
+			int l = graph.getLeftRelation(p);
+			int r = graph.getRightRelation(p);
+			double selectivity = graph.getSelectivity(p);
+			selectivities.get(l).merge(r, selectivity, (a, b) -> a * b);
+			selectivities.get(r).merge(l, selectivity, (a, b) -> a * b);
+		}
+
+		for (int i = 0; i < plans.length; i++) {
+			for (Map.Entry<Integer, Double> e : selectivities.get(i).entrySet()) {
+				if (e.getKey() > i) {
+					candidates.add(new Candidate(plans, i, e.getKey(), e.getValue(), sequence++));
+				}
+			}
+		}
+
+		while (!candidates.isEmpty()) {
+			Candidate candidate = candidates.poll();
+
+			//skip candidates whose inputs have already been joined to something else
+			if (plans[candidate.leftSlot] != candidate.left || plans[candidate.rightSlot] != candidate.right) {
+				continue;
+			}
+
+			int slot = candidate.leftSlot;
+			int merged = candidate.rightSlot;
+			plans[slot] = graph.join(candidate.left, candidate.right);
+			plans[merged] = null;
+
+			//the joint selectivity of the new plan with another is the product of those of its inputs
+			Map<Integer, Double> joint = selectivities.get(slot);
+			Map<Integer, Double> other = selectivities.get(merged);
+			joint.remove(merged);
+			other.remove(slot);
+			for (Map.Entry<Integer, Double> e : other.entrySet()) {
+				joint.merge(e.getKey(), e.getValue(), (a, b) -> a * b);
+				selectivities.get(e.getKey()).remove(merged);
+			}
+			selectivities.set(merged, null);
+
+			//size the joins of the new plan with the plans it shares a predicate with
+			for (Map.Entry<Integer, Double> e : joint.entrySet()) {
+				selectivities.get(e.getKey()).put(slot, e.getValue());
+				candidates.add(new Candidate(plans, slot, e.getKey(), e.getValue(), sequence++));
+			}
+		}
+
+		List<JoinPlan> remaining = new ArrayList<JoinPlan>();
+		for (JoinPlan plan : plans) {
+			if (plan != null) {
+				remaining.add(plan);
+			}
+		}
+		return graph.combine(remaining);
+	}
+
+	/**
+	 * A candidate join of the plans in two slots, ordered by estimated size
+	 * and then by the order in which the candidates were created
+	 */
+	private static class Candidate implements Comparable<Candidate> {
+		private int leftSlot;
+		private int rightSlot;
+		private JoinPlan left;
+		private JoinPlan right;
+		private double size;
+		private int sequence;
+
+		private Candidate(JoinPlan[] plans, int leftSlot, int rightSlot, double selectivity, int sequence) {
+			this.leftSlot = leftSlot;
+			this.rightSlot = rightSlot;
+			this.left = plans[leftSlot];
+			this.right = plans[rightSlot];
+			this.size = (double) left.getOperator().getOutput().getTupleCount()
+					* right.getOperator().getOutput().getTupleCount() * selectivity;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			int c = Double.compare(size, other.size);
+			return (c != 0) ? c : Integer.compare(sequence, other.sequence);
+		}
+	}
+}
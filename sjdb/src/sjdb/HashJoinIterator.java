@@ -0,0 +1,111 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class executes a Join by hashing: when the iterator is opened,
+ * the tuples of the build side are read into a hash table keyed by the
+ * value of the join attribute, and each tuple of the other input is then
+ * looked up in the table.
+ *
+ * The output tuples have the values of the left tuple followed by those
+ * of the right, whichever input is the build side.
+ */
+public class HashJoinIterator extends PhysicalOperator {
+	private final PhysicalOperator probeSide;
+	private final PhysicalOperator buildSide;
+	private final boolean buildLeft;
+	private final Predicate predicate;
+	private final int probeKey; //position of the join attribute in the probe side
+	private final int buildKey; //position of the join attribute in the build side
+
+	private Map<Object, List<Tuple>> table;
+	private Tuple probe; //the probe tuple being matched
+	private List<Tuple> matches; //the build tuples that match it
+	private int index;
+
+	/**
+	 * Create a new hash join iterator
+	 * @param op Join to execute
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input
+	 * @param buildLeft Whether to build the hash table on the left input
+	 */
+	public HashJoinIterator(Join op, PhysicalOperator left, PhysicalOperator right, boolean buildLeft) {
+		super(op, left.getSchema().concat(right.getSchema()), left, right);
+		this.probeSide = buildLeft ? right : left;
+		this.buildSide = buildLeft ? left : right;
+		this.buildLeft = buildLeft;
+		this.predicate = op.getPredicate();
+
+		int[] keys = joinPositions(predicate, left.getSchema(), right.getSchema());
+		this.probeKey = buildLeft ? keys[1] : keys[0];
+		this.buildKey = buildLeft ? keys[0] : keys[1];
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#open()
+	 */
+	@Override
+	public void open() throws DatabaseException {
+		super.open();
+		table = new HashMap<Object, List<Tuple>>();
+		Tuple t;
+		while ((t = buildSide.next()) != null) {
+			Object key = ValueComparator.key(t.get(buildKey));
+			List<Tuple> tuples = table.get(key);
+			if (tuples == null) {
+				tuples = new ArrayList<Tuple>(1);
+				table.put(key, tuples);
+			}
+			tuples.add(t);
+		}
+		probe = null;
+		matches = Collections.emptyList();
+		index = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#fetch()
+	 */
+	@Override
+	protected Tuple fetch() {
+		if (table.isEmpty()) {
+			return null;
+		}
+		while (index == matches.size()) {
+			probe = probeSide.next();
+			if (probe == null) {
+				return null;
+			}
+			List<Tuple> tuples = table.get(ValueComparator.key(probe.get(probeKey)));
+			matches = (tuples == null) ? Collections.<Tuple>emptyList() : tuples;
+			index = 0;
+		}
+		Tuple match = matches.get(index++);
+		return buildLeft ? match.concat(probe) : probe.concat(match);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#close()
+	 */
+	@Override
+	public void close() {
+		table = null;
+		probe = null;
+		matches = null;
+		super.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "HASH JOIN [" + predicate + "]";
+	}
+}
@@ -0,0 +1,414 @@
+package sjdb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+/**
+ * This class stores the tuples of a named relation in a file of Pages, in
+ * the order in which they are inserted. Each tuple is stored as a record,
+ * identified by a RecordId, which holds the number of values and then each
+ * value with its length:
+ *
+ * <number of values><length><value>...<length><value>
+ *
+ * New records go in the last page, or in a new page if it is full; the
+ * space of deleted records is only reused by the page they were in.
+ *
+ * Pages are read and written through a BufferPool, if the file has one,
+ * and otherwise directly. A heap file can be scanned by several threads at
+ * once, but must not be changed while it is read.
+ */
+public class HeapFile {
+	private final File file;
+	private final FileChannel channel;
+	private final BufferPool pool; //null if pages are read and written directly
+	private volatile int pages;
+
+	private HeapFile(File file, FileChannel channel, BufferPool pool) throws IOException {
+		this.file = file;
+		this.channel = channel;
+		this.pool = pool;
+		this.pages = (int) (channel.size() / Page.SIZE);
+	}
+
+	/**
+	 * Create an empty heap file without a buffer pool, replacing any file
+	 * of the same name
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static HeapFile create(File file) throws IOException {
+		return create(file, null);
+	}
+
+	/**
+	 * Create an empty heap file, replacing any file of the same name
+	 * @param file
+	 * @param pool Buffer pool to cache the pages of the file in, or null
+	 * @return
+	 * @throws IOException
+	 */
+	public static HeapFile create(File file, BufferPool pool) throws IOException {
+		return new HeapFile(file, FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE), pool);
+	}
+
+	/**
+	 * Open an existing heap file without a buffer pool
+	 * @param file
+	 * @return
+	 * @throws IOException if the file cannot be read, or is not a whole number of pages
+	 */
+	public static HeapFile open(File file) throws IOException {
+		return open(file, null);
+	}
+
+	/**
+	 * Open an existing heap file
+	 * @param file
+	 * @param pool Buffer pool to cache the pages of the file in, or null
+	 * @return
+	 * @throws IOException if the file cannot be read, or is not a whole number of pages
+	 */
+	public static HeapFile open(File file, BufferPool pool) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (channel.size() % Page.SIZE != 0) {
+			channel.close();
+			throw new IOException(file + " is not a heap file: its size is not a multiple of " + Page.SIZE);
+		}
+		return new HeapFile(file, channel, pool);
+	}
+
+	/**
+	 * Return the buffer pool that caches the pages of the file
+	 * @return the pool, or null if pages are read and written directly
+	 */
+	public BufferPool getBufferPool() {
+		return pool;
+	}
+
+	/**
+	 * Return the number of pages in the file
+	 * @return
+	 */
+	public int getPageCount() {
+		return pages;
+	}
+
+	/**
+	 * Read a page of the file from disk, bypassing the buffer pool
+	 * @param number
+	 * @return
+	 * @throws IOException
+	 */
+	public Page readPage(int number) throws IOException {
+		return readPage(number, ByteBuffer.allocate(Page.SIZE));
+	}
+
+	/**
+	 * Read a page of the file from disk into a buffer
+	 * @param number
+	 * @param buf Buffer of Page.SIZE bytes, which the page uses
+	 * @return
+	 * @throws IOException
+	 */
+	Page readPage(int number, ByteBuffer buf) throws IOException {
+		if (number < 0 || number >= pages) {
+			throw new IOException("Page " + number + " is not in " + file);
+		}
+		buf.clear();
+		long position = (long) number * Page.SIZE;
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, position + buf.position()) < 0) {
+				throw new IOException("Unexpected end of " + file);
+			}
+		}
+		return new Page(number, buf);
+	}
+
+	/**
+	 * Write a page to the file on disk, bypassing the buffer pool; the page
+	 * may be the one after the last, but pages are only added by one
+	 * thread at a time (as insert() and insertAll() do)
+	 * @param page
+	 * @throws IOException
+	 */
+	public void writePage(Page page) throws IOException {
+		if (page.getNumber() < 0 || page.getNumber() > pages) {
+			throw new IOException("Page " + page.getNumber() + " cannot be written to " + file);
+		}
+		ByteBuffer buf = page.getBuffer().duplicate();
+		buf.clear();
+		long position = (long) page.getNumber() * Page.SIZE;
+		while (buf.hasRemaining()) {
+			channel.write(buf, position + buf.position());
+		}
+		if (page.getNumber() == pages) {
+			pages++;
+		}
+	}
+
+	/**
+	 * Insert a tuple
+	 * @param tuple
+	 * @return the id of its record
+	 * @throws IOException
+	 */
+	public synchronized RecordId insert(Tuple tuple) throws IOException {
+		byte[] record = encode(tuple);
+		Page page = (pages == 0) ? append() : fetch(pages - 1);
+		int slot = page.insert(record);
+		if (slot < 0) {
+			release(page, false);
+			page = append();
+			slot = page.insert(record);
+		}
+		release(page, true);
+		return new RecordId(page.getNumber(), slot);
+	}
+
+	/**
+	 * Insert tuples in order, writing each page once when it is full
+	 * @param tuples
+	 * @throws IOException
+	 */
+	public synchronized void insertAll(Iterable<Tuple> tuples) throws IOException {
+		Iterator<Tuple> it = tuples.iterator();
+		if (!it.hasNext()) {
+			return;
+		}
+
+		Page page = (pages == 0) ? append() : fetch(pages - 1);
+		boolean changed = false;
+		try {
+			while (it.hasNext()) {
+				byte[] record = encode(it.next());
+				if (page.insert(record) < 0) {
+					release(page, changed);
+					// not released again if append() fails
+					page = null;
+					page = append();
+					page.insert(record);
+				}
+				changed = true;
+			}
+		} finally {
+			if (page != null) {
+				release(page, changed);
+			}
+		}
+	}
+
+	/**
+	 * Return the tuple with a record id
+	 * @param id
+	 * @return the tuple, or null if it has been deleted
+	 * @throws IOException if the page is not in the file
+	 */
+	public Tuple get(RecordId id) throws IOException {
+		Page page = fetch(id.getPage());
+		byte[] record;
+		try {
+			record = page.get(id.getSlot());
+		} finally {
+			release(page, false);
+		}
+		return (record == null) ? null : decode(record);
+	}
+
+	/**
+	 * Delete the tuple with a record id
+	 * @param id
+	 * @return false if there was no such tuple
+	 * @throws IOException if the page is not in the file
+	 */
+	public synchronized boolean delete(RecordId id) throws IOException {
+		Page page = fetch(id.getPage());
+		boolean deleted = false;
+		try {
+			deleted = page.delete(id.getSlot());
+		} finally {
+			release(page, deleted);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Start a scan of the tuples in the file, in the order of their pages
+	 * and slots
+	 * @return
+	 */
+	public Scanner scan() {
+		return new Scanner(0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Start a scan of the tuples in a range of the pages of the file, so
+	 * that parts of the file can be scanned by different threads
+	 * @param first Number of the first page to scan
+	 * @param end Number of the page after the last to scan
+	 * @return
+	 */
+	public Scanner scan(int first, int end) {
+		return new Scanner(first, end);
+	}
+
+	/**
+	 * Close the file, writing back its dirty pages and removing them from
+	 * the buffer pool
+	 * @throws IOException
+	 * @throws IllegalStateException if a page of the file is pinned
+	 */
+	public void close() throws IOException {
+		if (pool != null) {
+			pool.drop(this);
+		}
+		channel.close();
+	}
+
+	/**
+	 * pins a page in the buffer pool, or reads it if there is none
+	 */
+	private Page fetch(int number) throws IOException {
+		return (pool == null) ? readPage(number) : pool.pin(this, number);
+	}
+
+	/**
+	 * unpins a page fetched by fetch() or append(), or writes it if it has
+	 * changed and there is no buffer pool
+	 */
+	private void release(Page page, boolean dirty) throws IOException {
+		if (pool != null) {
+			pool.unpin(this, page.getNumber(), dirty);
+		} else if (dirty) {
+			writePage(page);
+		}
+	}
+
+	/**
+	 * adds an empty page after the last; with a buffer pool, the page is
+	 * written at once and pinned, and otherwise it is written when it is
+	 * released
+	 */
+	private Page append() throws IOException {
+		Page page = new Page(pages);
+		if (pool == null) {
+			return page;
+		}
+		writePage(page);
+		return pool.pin(this, page.getNumber());
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return file.toString();
+	}
+
+	/**
+	 * Encode a tuple as a record
+	 * @param tuple
+	 * @return
+	 * @throws IOException if the tuple is too large for a page
+	 */
+	static byte[] encode(Tuple tuple) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeShort(tuple.size());
+		for (int i = 0; i < tuple.size(); i++) {
+			out.writeUTF(tuple.get(i));
+		}
+		if (bytes.size() > Page.MAX_RECORD) {
+			throw new IOException("A tuple of " + bytes.size() + " bytes is too large for a page of " + Page.SIZE);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decode a record as a tuple
+	 * @param record
+	 * @return
+	 * @throws IOException if the record is malformed
+	 */
+	static Tuple decode(byte[] record) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		String[] values = new String[in.readUnsignedShort()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readUTF();
+		}
+		return new Tuple(values);
+	}
+
+	/**
+	 * A sequential scan of a heap file, which reads one page at a time;
+	 * with a buffer pool, the page is pinned until the scan moves on from
+	 * it, or is closed
+	 */
+	public class Scanner {
+		private final int end; //the page after the last to scan
+		private Page page;
+		private int pageNumber;
+		private int slot;
+
+		private Scanner(int first, int end) {
+			this.pageNumber = first - 1;
+			this.end = end;
+		}
+
+		/**
+		 * Return the next tuple in the file
+		 * @return the tuple, or null if there are no more
+		 * @throws IOException
+		 */
+		public Tuple next() throws IOException {
+			while (true) {
+				if (page != null) {
+					while (slot < page.getSlotCount()) {
+						byte[] record = page.get(slot++);
+						if (record != null) {
+							return decode(record);
+						}
+					}
+				}
+				close();
+				if (pageNumber + 1 >= Math.min(pages, end)) {
+					return null;
+				}
+				page = fetch(++pageNumber);
+				slot = 0;
+			}
+		}
+
+		/**
+		 * Release the page being scanned; a scan that has returned null
+		 * has already done so
+		 * @throws IOException
+		 */
+		public void close() throws IOException {
+			if (page != null) {
+				Page p = page;
+				page = null;
+				release(p, false);
+			}
+		}
+
+		/**
+		 * Return the record id of the tuple last returned by next()
+		 * @return
+		 */
+		public RecordId getRecordId() {
+			return new RecordId(pageNumber, slot - 1);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents an equi-depth histogram over the values of an
+ * attribute. The histogram is given by the bounds of its buckets, in
+ * increasing order (as defined by ValueComparator): n+1 bounds describe n
+ * buckets, and each bucket holds the same number of tuples, with values
+ * between its lower and upper bound.
+ *
+ * When an attribute also has a list of most common values, the histogram
+ * describes only the tuples whose values are not in that list.
+ *
+ * A value that is both the lower and the upper bound of a bucket fills
+ * the whole bucket, so frequent values that are missing from the most
+ * common values still show up as runs of equal bounds.
+ */
+public class Histogram {
+	private final List<String> bounds;
+
+	/**
+	 * Create a new histogram
+	 * @param bounds Bucket bounds in increasing order; at least two
+	 */
+	public Histogram(List<String> bounds) {
+		if (bounds.size() < 2) {
+			throw new IllegalArgumentException("A histogram needs at least two bounds");
+		}
+		for (int i = 1; i < bounds.size(); i++) {
+			if (ValueComparator.INSTANCE.compare(bounds.get(i - 1), bounds.get(i)) > 0) {
+				throw new IllegalArgumentException("Histogram bounds out of order: " + bounds);
+			}
+		}
+		this.bounds = Collections.unmodifiableList(new ArrayList<String>(bounds));
+	}
+
+	/**
+	 * Return the bucket bounds; the list cannot be modified
+	 * @return
+	 */
+	public List<String> getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * Return the number of buckets
+	 * @return
+	 */
+	public int getBuckets() {
+		return bounds.size() - 1;
+	}
+
+	/**
+	 * Return true if the value is between the lowest and highest bounds
+	 * @param value
+	 * @return
+	 */
+	public boolean contains(String value) {
+		return ValueComparator.INSTANCE.compare(bounds.get(0), value) <= 0
+				&& ValueComparator.INSTANCE.compare(value, bounds.get(bounds.size() - 1)) <= 0;
+	}
+
+	/**
+	 * Return the fraction of the tuples in buckets whose bounds are both
+	 * equal to the value (and that therefore hold nothing but the value)
+	 * @param value
+	 * @return
+	 */
+	public double getEqualFraction(String value) {
+		int equal = 0;
+		for (int i = 1; i < bounds.size(); i++) {
+			if (ValueComparator.INSTANCE.compare(bounds.get(i - 1), value) == 0
+					&& ValueComparator.INSTANCE.compare(bounds.get(i), value) == 0) {
+				equal++;
+			}
+		}
+		return (double) equal / getBuckets();
+	}
+
+	/**
+	 * Return the estimated fraction of the tuples with values below the
+	 * given value (or equal to it, if inclusive). Within a bucket, numeric
+	 * values are assumed to be spread evenly between the bounds, and other
+	 * values to fill half of the bucket.
+	 * @param value
+	 * @param inclusive
+	 * @return
+	 */
+	public double getFractionBelow(String value, boolean inclusive) {
+		ValueComparator c = ValueComparator.INSTANCE;
+		double below = 0;
+		for (int i = 1; i < bounds.size(); i++) {
+			String low = bounds.get(i - 1);
+			String high = bounds.get(i);
+			int cl = c.compare(value, low);
+			int ch = c.compare(value, high);
+			
+			if (ch > 0 || (ch == 0 && inclusive)) {
+				below += 1;
+			} else if (cl > 0) {
+				below += within(low, high, value);
+			}
+		}
+		return below / getBuckets();
+	}
+
+	/**
+	 * estimates the fraction of a bucket below a value that lies strictly
+	 * between its bounds
+	 */
+	private static double within(String low, String high, String value) {
+		try {
+			double l = Double.parseDouble(low);
+			double h = Double.parseDouble(high);
+			double v = Double.parseDouble(value);
+			return (h > l) ? (v - l) / (h - l) : 0.5;
+		} catch (NumberFormatException e) {
+			return 0.5;
+		}
+	}
+
+	/**
+	 * Render this histogram in the syntax used in the system catalogue
+	 * @return
+	 */
+	public String render() {
+		StringBuilder ret = new StringBuilder("hist=");
+		for (int i = 0; i < bounds.size(); i++) {
+			if (i > 0) {
+				ret.append(';');
+			}
+			ret.append(bounds.get(i));
+		}
+		return ret.toString();
+	}
+}
@@ -0,0 +1,142 @@
+package sjdb;
+
+/**
+ * This class estimates the number of distinct values in a stream with the
+ * HyperLogLog sketch (Flajolet et al., 2007), in a fixed amount of memory
+ * however long the stream is. Each value is hashed to 64 bits; the first
+ * p bits choose one of 2^p registers, which keeps the longest run of
+ * leading zeros seen in the remaining bits. The standard error of the
+ * estimate is about 1.04 / sqrt(2^p): 1.6% with the default precision of
+ * 12, which takes 4KB.
+ *
+ * Values are hashed by ValueComparator.key(), so values that are equal
+ * (such as "1" and "1.0") are counted once. Sketches of the same precision
+ * can be merged, so parts of a stream can be counted separately, and a
+ * sketch is used by one thread at a time.
+ */
+public class HyperLogLog {
+	public static final int DEFAULT_PRECISION = 12;
+
+	private final int precision;
+	private final byte[] registers;
+
+	/**
+	 * Create an empty sketch of DEFAULT_PRECISION
+	 */
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * Create an empty sketch
+	 * @param precision Number of bits of the hash that choose a register, from 4 to 18
+	 */
+	public HyperLogLog(int precision) {
+		if (precision < 4 || precision > 18) {
+			throw new IllegalArgumentException("Precision must be from 4 to 18, not " + precision);
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * Add a value to the stream
+	 * @param value
+	 */
+	public void add(String value) {
+		addHash(hash(value));
+	}
+
+	/**
+	 * Add the 64-bit hash of a value to the stream
+	 * @param hash
+	 */
+	public void addHash(long hash) {
+		int register = (int) (hash >>> (64 - precision));
+		// the sentinel bit bounds the run of zeros when the rest of the hash is zero
+		long rest = (hash << precision) | (1L << (precision - 1));
+		byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+		if (rank > registers[register]) {
+			registers[register] = rank;
+		}
+	}
+
+	/**
+	 * Add the values counted by another sketch of the same precision to
+	 * this one
+	 * @param other
+	 * @throws IllegalArgumentException if the precisions differ
+	 */
+	public void merge(HyperLogLog other) {
+		if (other.precision != precision) {
+			throw new IllegalArgumentException("Cannot merge a sketch of precision " + other.precision
+					+ " into one of precision " + precision);
+		}
+		for (int i = 0; i < registers.length; i++) {
+			if (other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	/**
+	 * Return the estimated number of distinct values added
+	 * @return
+	 */
+	public long estimate() {
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte r : registers) {
+			sum += 1.0 / (1L << r);
+			if (r == 0) {
+				zeros++;
+			}
+		}
+		double alpha = (m == 16) ? 0.673 : (m == 32) ? 0.697 : (m == 64) ? 0.709 : 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+
+		// linear counting is more accurate while many registers are empty
+		if (estimate <= 2.5 * m && zeros > 0) {
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Return the precision of the sketch
+	 * @return
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Return a 64-bit hash of a value, which is the same for values that
+	 * are equal according to ValueComparator
+	 * @param value
+	 * @return
+	 */
+	public static long hash(String value) {
+		Object key = ValueComparator.key(value);
+		long h;
+		if (key instanceof Double) {
+			h = Double.doubleToLongBits((Double) key);
+		} else {
+			// FNV-1a over the characters
+			h = 0xcbf29ce484222325L;
+			for (int i = 0; i < value.length(); i++) {
+				h ^= value.charAt(i);
+				h *= 0x100000001b3L;
+			}
+			h = ~h;
+		}
+		// the finaliser of MurmurHash3, so that every bit depends on every other
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,101 @@
+package sjdb;
+
+/**
+ * This class executes a Join by index nested loops: for each tuple of the
+ * outer input, the inner input is run again with its scan replaced by an
+ * IndexScanIterator bound to the tuple's value of the join attribute, so
+ * that only the inner tuples that match are read.
+ *
+ * The output tuples have the values of the left tuple followed by those
+ * of the right, whichever input is the inner one.
+ */
+public class IndexNestedLoopJoinIterator extends PhysicalOperator {
+	private final PhysicalOperator outerSide;
+	private final PhysicalOperator innerSide;
+	private final boolean innerLeft;
+	private final IndexScanIterator probe;
+	private final Predicate predicate;
+	private final int outerKey; //position of the join attribute in the outer input
+
+	private Tuple outer; //the outer tuple whose matches are being produced
+
+	/**
+	 * Create a new index nested loop join iterator
+	 * @param op Join to execute
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input
+	 * @param innerLeft Whether the left input is the inner one
+	 * @param probe Index scan at the bottom of the inner input
+	 */
+	public IndexNestedLoopJoinIterator(Join op, PhysicalOperator left, PhysicalOperator right,
+			boolean innerLeft, IndexScanIterator probe) {
+		super(op, left.getSchema().concat(right.getSchema()), left, right);
+		this.outerSide = innerLeft ? right : left;
+		this.innerSide = innerLeft ? left : right;
+		this.innerLeft = innerLeft;
+		this.probe = probe;
+		this.predicate = op.getPredicate();
+
+		int[] keys = joinPositions(predicate, left.getSchema(), right.getSchema());
+		this.outerKey = innerLeft ? keys[1] : keys[0];
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#open()
+	 */
+	@Override
+	public void open() throws DatabaseException {
+		super.open();
+		outer = null;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#fetch()
+	 */
+	@Override
+	protected Tuple fetch() {
+		while (true) {
+			if (outer != null) {
+				Tuple inner = innerSide.next();
+				if (inner != null) {
+					return innerLeft ? inner.concat(outer) : outer.concat(inner);
+				}
+			}
+			outer = outerSide.next();
+			if (outer == null) {
+				return null;
+			}
+			probe.bind(outer.get(outerKey));
+			rescan();
+		}
+	}
+
+	/**
+	 * runs the inner input again, looking up the bound value
+	 */
+	private void rescan() {
+		innerSide.close();
+		try {
+			innerSide.open();
+		} catch (DatabaseException e) {
+			throw new IllegalStateException("Failed to look up " + outer.get(outerKey) + " in " + innerSide, e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#close()
+	 */
+	@Override
+	public void close() {
+		outer = null;
+		super.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "INDEX NESTED LOOP JOIN [" + predicate + "]";
+	}
+}
@@ -0,0 +1,113 @@
+package sjdb;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class reads the tuples of a named relation that satisfy a predicate
+ * on an attribute through the index on the attribute (see BPlusTree),
+ * rather than reading every tuple. It either executes a Select on a Scan
+ * whose predicate the optimiser chose to look up in the index, or is the
+ * probe of the inner input of an index nested loop join, which binds it
+ * to a value before each time it is opened.
+ *
+ * The tuples are produced in the order of their values in the index, and
+ * each is checked against the predicate, as a range lookup may find more
+ * tuples than match.
+ */
+public class IndexScanIterator extends PhysicalOperator {
+	private final NamedRelation relation;
+	private final Attribute attr;
+	private final Database database;
+	private final int position; //position of the attribute in the tuples
+	private final boolean probe;
+	private Predicate predicate; //looked up when the iterator is opened, or null to produce no tuples
+	private List<RecordId> ids;
+	private int index;
+
+	/**
+	 * Create an index scan that executes a select on a scan
+	 * @param op Select to execute, whose input is a Scan
+	 * @param database Database that holds the tuples and the index
+	 */
+	public IndexScanIterator(Select op, Database database) {
+		this(op, (Scan) op.getInput(), op.getPredicate().getLeftAttribute(), database, false);
+		this.predicate = op.getPredicate();
+	}
+
+	/**
+	 * Create an index scan that probes the index of a scan for one value at
+	 * a time, set by bind()
+	 * @param op Scan of the inner input of an index nested loop join
+	 * @param attr Attribute whose index is probed
+	 * @param database Database that holds the tuples and the index
+	 */
+	public IndexScanIterator(Scan op, Attribute attr, Database database) {
+		this(op, op, attr, database, true);
+	}
+
+	private IndexScanIterator(Operator op, Scan scan, Attribute attr, Database database, boolean probe) {
+		super(op, scan.getRelation().getSchema());
+		this.relation = (NamedRelation) scan.getRelation();
+		this.attr = attr;
+		this.database = database;
+		this.position = position(getSchema(), attr);
+		this.probe = probe;
+	}
+
+	/**
+	 * Look up the tuples that take a value when the iterator is next opened
+	 * @param value
+	 */
+	public void bind(String value) {
+		predicate = new Predicate(attr, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#open()
+	 */
+	@Override
+	public void open() throws DatabaseException {
+		super.open();
+		ids = (predicate == null) ? Collections.<RecordId>emptyList()
+				: database.getIndex(relation, attr).lookup(predicate);
+		index = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#fetch()
+	 */
+	@Override
+	protected Tuple fetch() {
+		while (index < ids.size()) {
+			RecordId id = ids.get(index++);
+			Tuple t;
+			try {
+				t = database.getTuple(relation, id);
+			} catch (DatabaseException e) {
+				throw new IllegalStateException("Failed to read " + id + " of " + relation, e);
+			}
+			if (t != null && predicate.matches(t.get(position))) {
+				return t;
+			}
+		}
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#close()
+	 */
+	@Override
+	public void close() {
+		ids = null;
+		super.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "INDEX SCAN " + relation + " [" + (probe ? attr + "=?" : predicate.toString()) + "]";
+	}
+}
@@ -1,50 +1,81 @@
 package sjdb;
 
+import java.io.PrintStream;
+
 public class Inspector implements PlanVisitor {
+	private PrintStream out;
 
 	public Inspector() {
-		// TODO Auto-generated constructor stub
+		this(System.out);
+	}
+
+	/**
+	 * Create an inspector that prints to the given stream
+	 * @param out
+	 */
+	public Inspector(PrintStream out) {
+		this.out = out;
 	}
 
 	@Override
 	public void visit(Scan op) {
 		// TODO Auto-generated method stub
-		System.out.println(op.toString());
-		System.out.println("  in:  " + op.getRelation().render());
-		System.out.println("  out: " + op.getOutput().render());
+		out.println(op.toString());
+		out.println("  in:  " + op.getRelation().render());
+		out.println("  out: " + op.getOutput().render());
+		printCost(op);
 	}
 
 	@Override
 	public void visit(Project op) {
 		// TODO Auto-generated method stub
-		System.out.println(op.toString());
-		System.out.println("  in:  " + op.getInput().getOutput().render());
-		System.out.println("  out: " + op.getOutput().render());
+		out.println(op.toString());
+		out.println("  in:  " + op.getInput().getOutput().render());
+		out.println("  out: " + op.getOutput().render());
+		printCost(op);
 	}
 
 	@Override
 	public void visit(Select op) {
 		// TODO Auto-generated method stub
-		System.out.println(op.toString());
-		System.out.println("  in:  " + op.getInput().getOutput().render());
-		System.out.println("  out: " + op.getOutput().render());
+		out.println(op.toString());
+		out.println("  in:  " + op.getInput().getOutput().render());
+		out.println("  out: " + op.getOutput().render());
+		if (op.isIndexed()) {
+			out.println("  alg: index scan");
+		}
+		printCost(op);
 	}
 
 	@Override
 	public void visit(Product op) {
 		// TODO Auto-generated method stub
-		System.out.println(op.toString());
-		System.out.println("  inl: " + op.getLeft().getOutput().render());
-		System.out.println("  inr: " + op.getRight().getOutput().render());
-		System.out.println("  out: " + op.getOutput().render());
+		out.println(op.toString());
+		out.println("  inl: " + op.getLeft().getOutput().render());
+		out.println("  inr: " + op.getRight().getOutput().render());
+		out.println("  out: " + op.getOutput().render());
+		printCost(op);
 	}
 
 	@Override
 	public void visit(Join op) {
 		// TODO Auto-generated method stub
-		System.out.println(op.toString());
-		System.out.println("  inl: " + op.getLeft().getOutput().render());
-		System.out.println("  inr: " + op.getRight().getOutput().render());
-		System.out.println("  out: " + op.getOutput().render());
+		out.println(op.toString());
+		out.println("  inl: " + op.getLeft().getOutput().render());
+		out.println("  inr: " + op.getRight().getOutput().render());
+		out.println("  out: " + op.getOutput().render());
+		if (op.getMethod() != null) {
+			out.println("  alg: " + op.getMethod().describe(op.isBuildLeft()));
+		}
+		printCost(op);
+	}
+
+	/**
+	 * prints the cost of an operator and its inputs, if it has been costed
+	 */
+	private void printCost(Operator op) {
+		if (op.getCost() != null) {
+			out.println("  cost: " + op.getCost().render());
+		}
 	}
 }
@@ -6,6 +6,8 @@ package sjdb;
  */
 public class Join extends BinaryOperator {
 	private Predicate predicate;
+	private JoinMethod method; //chosen by the optimiser, or null
+	private boolean buildLeft;
 	/**
 	 * Create a new join operator.
 	 * @param left Left child operator
@@ -21,6 +23,34 @@ public class Join extends BinaryOperator {
 		return this.predicate;
 	}
 	
+	/**
+	 * Return the algorithm chosen to execute this join, or null if none
+	 * has been chosen
+	 * @return
+	 */
+	public JoinMethod getMethod() {
+		return this.method;
+	}
+	
+	/**
+	 * Return true if the left input is the build side of the join (the
+	 * input held in memory)
+	 * @return
+	 */
+	public boolean isBuildLeft() {
+		return this.buildLeft;
+	}
+	
+	/**
+	 * Set the algorithm to execute this join with
+	 * @param method
+	 * @param buildLeft Whether the left input is the build side
+	 */
+	public void setMethod(JoinMethod method, boolean buildLeft) {
+		this.method = method;
+		this.buildLeft = buildLeft;
+	}
+	
 	/* (non-Javadoc)
 	 * @see sjdb.BinaryOperator#accept(sjdb.OperatorVisitor)
 	 */
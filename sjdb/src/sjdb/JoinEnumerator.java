@@ -0,0 +1,175 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class finds the cheapest join order for a JoinGraph by dynamic
+ * programming. The best plan is computed for every connected set of
+ * relations, in order of increasing size, by considering every way of
+ * splitting the set into two connected sets that share a predicate and
+ * combining their best plans. Both left-deep and bushy trees are
+ * considered; cartesian products are only used to combine the connected
+ * components of a graph that is not connected.
+ *
+ * Sets of relations are represented as bit masks, so the graph may
+ * contain at most 63 relations; the cost of the search grows
+ * exponentially with the number of relations.
+ */
+public class JoinEnumerator {
+	public static final int MAX_RELATIONS = 63;
+
+	private JoinGraph graph;
+	private long[] neighbours;
+
+	/**
+	 * Create a new enumerator for the given join graph
+	 * @param graph
+	 */
+	public JoinEnumerator(JoinGraph graph) {
+		if (graph.size() > MAX_RELATIONS) {
+			throw new IllegalArgumentException("Cannot enumerate joins of more than " + MAX_RELATIONS + " relations");
+		}
+		this.graph = graph;
+		this.neighbours = new long[graph.size()];
+		for (int i = 0; i < graph.size(); i++) {
+			neighbours[i] = toMask(graph.getNeighbours(i));
+		}
+	}
+
+	/**
+	 * Return the cheapest plan that joins all the relations in the graph
+	 * @return
+	 */
+	public JoinPlan enumerate() {
+		Map<Long, JoinPlan> best = new HashMap<Long, JoinPlan>();
+		List<JoinPlan> components = new ArrayList<JoinPlan>();
+
+		long remaining = (1L << graph.size()) - 1;
+		while (remaining != 0) {
+			long component = component(Long.numberOfTrailingZeros(remaining));
+			components.add(enumerate(component, best));
+			remaining &= ~component;
+		}
+
+		return graph.combine(components);
+	}
+
+	/**
+	 * finds the best plan for a connected component of the graph
+	 */
+	private JoinPlan enumerate(long component, Map<Long, JoinPlan> best) {
+		List<Long> level = new ArrayList<Long>();
+		for (int i = 0; i < graph.size(); i++) {
+			if ((component & (1L << i)) != 0) {
+				best.put(1L << i, graph.getRelation(i));
+				level.add(1L << i);
+			}
+		}
+
+		for (int size = 2; size <= Long.bitCount(component); size++) {
+			level = extend(level);
+			planLevel(level, best);
+		}
+
+		return best.get(component);
+	}
+
+	/**
+	 * finds the best plans for connected sets of the same size; the best plans
+	 * for all smaller sets must already be in the table
+	 */
+	protected void planLevel(List<Long> level, Map<Long, JoinPlan> best) {
+		for (long set : level) {
+			best.put(set, bestSplit(set, best));
+		}
+	}
+
+	/**
+	 * creates the connected sets with one more relation than the given sets
+	 */
+	private List<Long> extend(List<Long> level) {
+		Set<Long> next = new HashSet<Long>();
+		for (long set : level) {
+			long candidates = neighbourhood(set) & ~set;
+			while (candidates != 0) {
+				long relation = Long.lowestOneBit(candidates);
+				next.add(set | relation);
+				candidates &= ~relation;
+			}
+		}
+
+		//sort so that the enumeration order doesn't depend on hashing
+		List<Long> sorted = new ArrayList<Long>(next);
+		Collections.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * finds the cheapest way of combining two connected subsets of a set
+	 * that share a predicate; the subsets of the set must already have been
+	 * planned
+	 */
+	protected JoinPlan bestSplit(long set, Map<Long, JoinPlan> best) {
+		JoinPlan cheapest = null;
+		long first = Long.lowestOneBit(set);
+
+		//every split is considered once, with the lowest relation on the left
+		for (long left = (set - 1) & set; left != 0; left = (left - 1) & set) {
+			if ((left & first) == 0) {
+				continue;
+			}
+			long right = set & ~left;
+
+			JoinPlan leftPlan = best.get(left);
+			JoinPlan rightPlan = best.get(right);
+			if (leftPlan == null || rightPlan == null || (neighbourhood(left) & right) == 0) {
+				continue;
+			}
+
+			JoinPlan plan = graph.join(leftPlan, rightPlan);
+			if (cheapest == null || plan.getCost() < cheapest.getCost()) {
+				cheapest = plan;
+			}
+		}
+
+		return cheapest;
+	}
+
+	/**
+	 * finds the connected component that contains the given relation
+	 */
+	private long component(int relation) {
+		long component = 1L << relation;
+		long frontier = component;
+		while (frontier != 0) {
+			frontier = neighbourhood(frontier) & ~component;
+			component |= frontier;
+		}
+		return component;
+	}
+
+	/**
+	 * returns the relations that share a predicate with any relation in the set
+	 */
+	private long neighbourhood(long set) {
+		long result = 0;
+		while (set != 0) {
+			int relation = Long.numberOfTrailingZeros(set);
+			result |= neighbours[relation];
+			set &= set - 1;
+		}
+		return result;
+	}
+
+	private static long toMask(BitSet set) {
+		long[] words = set.toLongArray();
+		return words.length == 0 ? 0 : words[0];
+	}
+}
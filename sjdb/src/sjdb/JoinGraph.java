@@ -0,0 +1,326 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class represents the join graph of a query: the relations to be
+ * joined (after selects and projects have been pushed down onto them) and
+ * the attr=attr predicates that connect them.
+ *
+ * It is used by the join ordering strategies to build and cost candidate
+ * plans. Combining two plans creates a Join on the first predicate that
+ * connects them (or a Product if there is none), a Select for each further
+ * connecting predicate, and, unless the plan covers every relation, a
+ * Project that removes the attributes that are not needed any more higher
+ * up in the plan. The operators are costed by
+ * a CostModel, which also chooses the method of each join, and the cost
+ * of a plan is the total cost of its operators.
+ */
+public class JoinGraph {
+	private List<JoinPlan> leaves = new ArrayList<JoinPlan>();
+	private List<Predicate> predicates;
+	private int[] predicateLeft; //the relation containing the left attribute of each predicate
+	private int[] predicateRight; //the relation containing the right attribute of each predicate
+	private BitSet[] neighbours;
+	private BitSet[] incident; //the predicates that refer to each relation
+	private Map<String, List<Integer>> attributePredicates = new HashMap<String, List<Integer>>();
+
+	private Set<String> required; //names of the attributes needed in the final result
+	private Estimator estimator;
+	private CostModel costModel;
+
+	/**
+	 * Create a new join graph
+	 * @param relations Operator trees over the relations to be joined
+	 * @param predicates Predicates of the form attr=attr between attributes of different relations
+	 * @param required Names of the attributes needed in the final result
+	 * @param estimator Estimator used to size the candidate plans
+	 * @param costModel Cost model used to cost the candidate plans
+	 */
+	public JoinGraph(List<Operator> relations, List<Predicate> predicates, Set<String> required,
+			Estimator estimator, CostModel costModel) {
+		this.predicates = predicates;
+		this.required = required;
+		this.estimator = estimator;
+		this.costModel = costModel;
+
+		//maps each attribute name to the relation that contains it
+		Map<String, Integer> owner = new HashMap<String, Integer>();
+		for (int i = 0; i < relations.size(); i++) {
+			Operator op = relations.get(i);
+			op.accept(estimator);
+			op.accept(costModel);
+			for (Attribute a : op.getOutput().getAttributes()) {
+				owner.put(a.getName(), i);
+			}
+			leaves.add(new JoinPlan(op, i, op.getCost().getTotal()));
+		}
+
+		neighbours = new BitSet[relations.size()];
+		incident = new BitSet[relations.size()];
+		for (int i = 0; i < neighbours.length; i++) {
+			neighbours[i] = new BitSet();
+			incident[i] = new BitSet();
+		}
+
+		predicateLeft = new int[predicates.size()];
+		predicateRight = new int[predicates.size()];
+		for (int i = 0; i < predicates.size(); i++) {
+			Predicate predicate = predicates.get(i);
+			Integer l = owner.get(predicate.getLeftAttribute().getName());
+			Integer r = owner.get(predicate.getRightAttribute().getName());
+
+			if (l == null || r == null || l.equals(r)) {
+				throw new IllegalArgumentException("Predicate " + predicate + " does not join two relations");
+			}
+			predicateLeft[i] = l;
+			predicateRight[i] = r;
+			neighbours[l].set(r);
+			neighbours[r].set(l);
+			incident[l].set(i);
+			incident[r].set(i);
+			addAttributePredicate(predicate.getLeftAttribute(), i);
+			addAttributePredicate(predicate.getRightAttribute(), i);
+		}
+	}
+
+	private void addAttributePredicate(Attribute attr, int predicate) {
+		List<Integer> list = attributePredicates.get(attr.getName());
+		if (list == null) {
+			list = new ArrayList<Integer>();
+			attributePredicates.put(attr.getName(), list);
+		}
+		list.add(predicate);
+	}
+
+	/**
+	 * Return the number of relations in the graph
+	 * @return
+	 */
+	public int size() {
+		return leaves.size();
+	}
+
+	/**
+	 * Return the plan for a single relation
+	 * @param relation Position of the relation
+	 * @return
+	 */
+	public JoinPlan getRelation(int relation) {
+		return leaves.get(relation);
+	}
+
+	/**
+	 * Return the relations that share a predicate with the given relation;
+	 * the returned set must not be modified
+	 * @param relation Position of the relation
+	 * @return
+	 */
+	public BitSet getNeighbours(int relation) {
+		return neighbours[relation];
+	}
+
+	/**
+	 * Return true if there is a predicate between the two sets of relations
+	 * @param left
+	 * @param right
+	 * @return
+	 */
+	public boolean isConnected(BitSet left, BitSet right) {
+		return !connecting(left, right).isEmpty();
+	}
+
+	/**
+	 * Combine two plans over disjoint sets of relations
+	 * @param left Left input plan
+	 * @param right Right input plan
+	 * @return the combined plan
+	 */
+	public JoinPlan join(JoinPlan left, JoinPlan right) {
+		Operator op = null;
+
+		BitSet connecting = connecting(left.getRelations(), right.getRelations());
+		for (int i = connecting.nextSetBit(0); i >= 0; i = connecting.nextSetBit(i + 1)) {
+			Predicate predicate = predicates.get(i);
+			if (op == null) {
+				//the first connecting predicate becomes the join predicate
+				Join join = new Join(left.getOperator(), right.getOperator(), orient(predicate, left.getOperator().getOutput()));
+				estimator.visit(join);
+				costModel.chooseMethod(join);
+				costModel.visit(join);
+				op = join;
+			} else {
+				//any other connecting predicate is applied on top of the join
+				Select select = new Select(op, predicate);
+				estimator.visit(select);
+				costModel.visit(select);
+				op = select;
+			}
+		}
+
+		if (op == null) {
+			Product product = new Product(left.getOperator(), right.getOperator());
+			estimator.visit(product);
+			costModel.visit(product);
+			op = product;
+		}
+
+		BitSet relations = (BitSet) left.getRelations().clone();
+		relations.or(right.getRelations());
+
+		//the final plan is projected by the optimiser, in the order of the query
+		if (relations.cardinality() < leaves.size()) {
+			op = project(op, relations);
+		}
+		return new JoinPlan(op, left, right, op.getCost().getTotal());
+	}
+
+	/**
+	 * Return the number of predicates in the graph
+	 * @return
+	 */
+	public int getPredicateCount() {
+		return predicates.size();
+	}
+
+	/**
+	 * Return the relation that contains the left attribute of a predicate
+	 * @param predicate Position of the predicate
+	 * @return the position of the relation
+	 */
+	public int getLeftRelation(int predicate) {
+		return predicateLeft[predicate];
+	}
+
+	/**
+	 * Return the relation that contains the right attribute of a predicate
+	 * @param predicate Position of the predicate
+	 * @return the position of the relation
+	 */
+	public int getRightRelation(int predicate) {
+		return predicateRight[predicate];
+	}
+
+	/**
+	 * Return the fraction of the product of its two relations that a
+	 * predicate keeps, by the Estimator's formula applied to the value
+	 * counts of the plans for the single relations; the selectivities of
+	 * the predicates between two sets of relations can be multiplied to
+	 * rank candidate joins without building them
+	 * @param predicate Position of the predicate
+	 * @return
+	 */
+	public double getSelectivity(int predicate) {
+		Predicate p = predicates.get(predicate);
+		Relation l = leaves.get(predicateLeft[predicate]).getOperator().getOutput();
+		Relation r = leaves.get(predicateRight[predicate]).getOperator().getOutput();
+		long values = Math.max(l.getAttribute(p.getLeftAttribute()).getValueCount(),
+				r.getAttribute(p.getRightAttribute()).getValueCount());
+		return 1.0 / Math.max(values, 1);
+	}
+
+	/**
+	 * Combine plans that share no predicates with cartesian products, in
+	 * order of increasing size; used for graphs that are not connected
+	 * @param plans Plans over disjoint sets of relations
+	 * @return the combined plan
+	 */
+	public JoinPlan combine(List<JoinPlan> plans) {
+		List<JoinPlan> sorted = new ArrayList<JoinPlan>(plans);
+		Collections.sort(sorted, (a, b) -> Long.compare(a.getOperator().getOutput().getTupleCount(),
+				b.getOperator().getOutput().getTupleCount()));
+
+		JoinPlan plan = sorted.get(0);
+		for (int i = 1; i < sorted.size(); i++) {
+			plan = join(plan, sorted.get(i));
+		}
+		return plan;
+	}
+
+	/**
+	 * Add a project on top of an operator if some of its attributes are
+	 * not needed by the final result or by a predicate to a relation that
+	 * has not been joined yet
+	 * @param op Operator
+	 * @param relations Relations covered by the operator
+	 * @return
+	 */
+	private Operator project(Operator op, BitSet relations) {
+		List<Attribute> attrToProject = new ArrayList<Attribute>();
+		for (Attribute a : op.getOutput().getAttributes()) {
+			if (required.contains(a.getName()) || isJoinAttribute(a, relations)) {
+				attrToProject.add(a);
+			}
+		}
+
+		//if you project all attributes there's no need to add a project operator
+		if (attrToProject.size() == op.getOutput().getAttributes().size()) {
+			return op;
+		}
+
+		Project project = new Project(op, attrToProject);
+		estimator.visit(project);
+		costModel.visit(project);
+		return project;
+	}
+
+	/**
+	 * checks if an attribute is used by a predicate to a relation that
+	 * has not been joined yet
+	 */
+	private boolean isJoinAttribute(Attribute attr, BitSet relations) {
+		List<Integer> list = attributePredicates.get(attr.getName());
+		if (list != null) {
+			for (int i : list) {
+				if (relations.get(predicateLeft[i]) != relations.get(predicateRight[i])) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * finds the predicates between two sets of relations, looking only at
+	 * the predicates that refer to the smaller set
+	 */
+	private BitSet connecting(BitSet left, BitSet right) {
+		BitSet smaller = (left.cardinality() <= right.cardinality()) ? left : right;
+		BitSet result = new BitSet();
+		for (int r = smaller.nextSetBit(0); r >= 0; r = smaller.nextSetBit(r + 1)) {
+			BitSet candidates = incident[r];
+			for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+				if (connects(i, left, right)) {
+					result.set(i);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * checks if a predicate joins a relation in the left set to one in the right set
+	 */
+	private boolean connects(int predicate, BitSet left, BitSet right) {
+		int l = predicateLeft[predicate];
+		int r = predicateRight[predicate];
+		return (left.get(l) && right.get(r)) || (left.get(r) && right.get(l));
+	}
+
+	/**
+	 * swaps the sides of a predicate if needed, so that its left attribute
+	 * belongs to the given (left input) relation
+	 */
+	private Predicate orient(Predicate predicate, Relation left) {
+		if (left.getSchema().contains(predicate.getLeftAttribute())) {
+			return predicate;
+		}
+		return new Predicate(predicate.getRightAttribute(), predicate.getLeftAttribute());
+	}
+}
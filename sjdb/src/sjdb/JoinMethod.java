@@ -0,0 +1,49 @@
+package sjdb;
+
+/**
+ * The algorithm chosen to execute a Join. The optimiser chooses one for
+ * each join, together with its build side: the input held in memory (the
+ * input the hash table is built on, or the input read in blocks by block
+ * nested loops), or for an index nested loop join the inner input, whose
+ * index is probed.
+ */
+public enum JoinMethod {
+	/**
+	 * Build a hash table on one input, and probe it with the other
+	 */
+	HASH,
+	/**
+	 * Sort both inputs on the join attributes, and merge them
+	 */
+	SORT_MERGE,
+	/**
+	 * Read one input in blocks that fit in memory, and scan the other
+	 * input once for each block
+	 */
+	BLOCK_NESTED_LOOP,
+	/**
+	 * For each tuple of one input, look up the matching tuples of the
+	 * other in the index on its join attribute; the other input must be
+	 * a scan of a named relation, under any selects and projects
+	 */
+	INDEX_NESTED_LOOP;
+
+	/**
+	 * Return a description of this method, with the build side if it has one
+	 * @param buildLeft Whether the left input is the build side
+	 * @return
+	 */
+	public String describe(boolean buildLeft) {
+		String side = buildLeft ? "left" : "right";
+		switch (this) {
+		case HASH:
+			return "hash join, building on the " + side;
+		case SORT_MERGE:
+			return "sort-merge join";
+		case INDEX_NESTED_LOOP:
+			return "index nested loop join, probing the index of the " + side;
+		default:
+			return "block nested loop join, with blocks of the " + side;
+		}
+	}
+}
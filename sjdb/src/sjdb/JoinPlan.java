@@ -0,0 +1,96 @@
+package sjdb;
+
+import java.util.BitSet;
+
+/**
+ * This class represents a candidate plan for joining a subset of the
+ * relations in a query. It records the operator tree that computes the
+ * join, the set of relations (by position in the JoinGraph) that the
+ * tree covers, the accumulated cost of the tree, and the two sub-plans
+ * that were combined to produce it (both null for a single relation).
+ */
+public class JoinPlan {
+	private Operator operator;
+	private BitSet relations;
+	private double cost;
+	private JoinPlan left;
+	private JoinPlan right;
+
+	/**
+	 * Create a plan for a single relation
+	 * @param operator Operator tree over the relation
+	 * @param relation Position of the relation in the join graph
+	 * @param cost Cost of the operator tree
+	 */
+	public JoinPlan(Operator operator, int relation, double cost) {
+		this.operator = operator;
+		this.relations = new BitSet();
+		this.relations.set(relation);
+		this.cost = cost;
+	}
+
+	/**
+	 * Create a plan that combines two sub-plans
+	 * @param operator Operator tree computing the combination
+	 * @param left Left sub-plan
+	 * @param right Right sub-plan
+	 * @param cost Accumulated cost of the plan
+	 */
+	public JoinPlan(Operator operator, JoinPlan left, JoinPlan right, double cost) {
+		this.operator = operator;
+		this.relations = (BitSet) left.relations.clone();
+		this.relations.or(right.relations);
+		this.left = left;
+		this.right = right;
+		this.cost = cost;
+	}
+
+	/**
+	 * Return the operator tree for this plan
+	 * @return Operator tree
+	 */
+	public Operator getOperator() {
+		return this.operator;
+	}
+
+	/**
+	 * Return the set of relations covered by this plan; the returned set
+	 * must not be modified
+	 * @return Relation positions
+	 */
+	public BitSet getRelations() {
+		return this.relations;
+	}
+
+	/**
+	 * Return the accumulated cost of this plan
+	 * @return Cost
+	 */
+	public double getCost() {
+		return this.cost;
+	}
+
+	/**
+	 * Return the left sub-plan, or null if this plan covers a single relation
+	 * @return Left sub-plan
+	 */
+	public JoinPlan getLeft() {
+		return this.left;
+	}
+
+	/**
+	 * Return the right sub-plan, or null if this plan covers a single relation
+	 * @return Right sub-plan
+	 */
+	public JoinPlan getRight() {
+		return this.right;
+	}
+
+	/**
+	 * Return true if this plan covers a single relation
+	 * @return
+	 */
+	public boolean isLeaf() {
+		return this.left == null;
+	}
+}
@@ -0,0 +1,132 @@
+package sjdb;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class evicts the frames of a BufferPool by the LRU-K algorithm
+ * (O'Neil et al., 1993). The times of the last K accesses to the page in
+ * each frame are kept, and the victim is the unpinned frame whose Kth
+ * most recent access is the oldest. A page accessed fewer than K times
+ * is evicted first, the least recently used of them first, so a page
+ * read once by a sequential scan does not push out pages that are used
+ * again and again, as it would under LRU.
+ *
+ * Times are counted in accesses to the pool, not in seconds. The victim
+ * is found by a single pass over the frames, without sorting them.
+ */
+public class LruKPolicy implements EvictionPolicy {
+	public static final int DEFAULT_K = 2;
+
+	private final int k;
+	private final AtomicLong clock = new AtomicLong();
+	private long[][] history; //for each frame, the times of its last k accesses, the most recent first; 0 if none
+
+	/**
+	 * Create a new LRU-K policy with K of DEFAULT_K
+	 */
+	public LruKPolicy() {
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * Create a new LRU-K policy
+	 * @param k Number of accesses to remember for each frame
+	 */
+	public LruKPolicy(int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("K must be at least 1, not " + k);
+		}
+		this.k = k;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.EvictionPolicy#init(int)
+	 */
+	@Override
+	public void init(int frames) {
+		history = new long[frames][k];
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.EvictionPolicy#accessed(int)
+	 */
+	@Override
+	public void accessed(int frame) {
+		long[] times = history[frame];
+		synchronized (times) {
+			System.arraycopy(times, 0, times, 1, k - 1);
+			times[0] = clock.incrementAndGet();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.EvictionPolicy#loaded(int)
+	 */
+	@Override
+	public void loaded(int frame) {
+		long[] times = history[frame];
+		synchronized (times) {
+			Arrays.fill(times, 0);
+			times[0] = clock.incrementAndGet();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.EvictionPolicy#victim(sjdb.EvictionPolicy.Frames)
+	 */
+	@Override
+	public int victim(Frames frames) {
+		// frames are ordered by their kth access, then their last access, then their number;
+		// if the best frame is pinned before it can be evicted, the next best is looked for
+		long afterKth = -1;
+		long afterLast = -1;
+		int afterFrame = -1;
+		while (true) {
+			int best = -1;
+			long bestKth = Long.MAX_VALUE;
+			long bestLast = Long.MAX_VALUE;
+			for (int i = 0; i < history.length; i++) {
+				if (frames.isPinned(i)) {
+					continue;
+				}
+				long kth;
+				long last;
+				synchronized (history[i]) {
+					kth = history[i][k - 1];
+					last = history[i][0];
+				}
+				if (before(afterKth, afterLast, afterFrame, kth, last, i)
+						&& (best < 0 || before(kth, last, i, bestKth, bestLast, best))) {
+					best = i;
+					bestKth = kth;
+					bestLast = last;
+				}
+			}
+			if (best < 0 || frames.evict(best)) {
+				return best;
+			}
+			afterKth = bestKth;
+			afterLast = bestLast;
+			afterFrame = best;
+		}
+	}
+
+	/**
+	 * checks if the first frame comes before the second in the order of eviction
+	 */
+	private static boolean before(long kth1, long last1, int frame1, long kth2, long last2, int frame2) {
+		if (kth1 != kth2) {
+			return kth1 < kth2;
+		}
+		return (last1 != last2) ? last1 < last2 : frame1 < frame2;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.EvictionPolicy#getName()
+	 */
+	@Override
+	public String getName() {
+		return "lru-" + k;
+	}
+}
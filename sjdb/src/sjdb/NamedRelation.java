@@ -13,15 +13,101 @@ public class NamedRelation extends Relation {
 	 */
 	private String name;
 	
+	/**
+	 * The version of the statistics of the named relation
+	 */
+	private long version;
+	
+	/**
+	 * The number of pages that hold the tuples of the named relation, or 0
+	 * if it is not known
+	 */
+	private long pages;
+	
+	/**
+	 * Set once the named relation is in a catalogue, after which it
+	 * cannot be changed
+	 */
+	private volatile boolean published;
+	
 	/**
 	 * Create a new named relation with a given name and tuple count
 	 * @param name The name of the relation
 	 * @param size The tuple count
 	 */
-	public NamedRelation(String name, int size) {
+	public NamedRelation(String name, long size) {
 		super(size);
 		this.name = name;
 	}
+	
+	/**
+	 * Create a new named relation with a given name, tuple count, schema
+	 * and version
+	 * @param name The name of the relation
+	 * @param size The tuple count
+	 * @param schema The attributes
+	 * @param version The version of the statistics
+	 */
+	public NamedRelation(String name, long size, Schema schema, long version) {
+		this(name, size, schema, version, 0);
+	}
+	
+	/**
+	 * Create a new named relation with a given name, tuple count, schema,
+	 * version and page count
+	 * @param name The name of the relation
+	 * @param size The tuple count
+	 * @param schema The attributes
+	 * @param version The version of the statistics
+	 * @param pages The number of pages that hold the tuples, or 0 if not known
+	 */
+	public NamedRelation(String name, long size, Schema schema, long version, long pages) {
+		super(size, schema);
+		this.name = name;
+		this.version = version;
+		this.pages = pages;
+	}
+	
+	/**
+	 * Return the version of the statistics of this relation. The catalogue
+	 * never changes a relation once it is in the directory; it replaces it
+	 * with a new relation with a higher version, so anything derived from
+	 * a relation is up to date as long as the version in the catalogue is
+	 * the same.
+	 * @return the version
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Return the number of pages that hold the tuples of this relation in
+	 * its HeapFile, or 0 if it is not known
+	 * @return the page count
+	 */
+	public long getPageCount() {
+		return pages;
+	}
+	
+	/**
+	 * Mark this relation as being in a catalogue, so that it can no longer
+	 * be changed
+	 */
+	void publish() {
+		this.published = true;
+	}
+	
+	/* (non-Javadoc)
+	 * @see sjdb.Relation#addAttribute(sjdb.Attribute)
+	 */
+	@Override
+	public void addAttribute(Attribute attribute) {
+		if (published) {
+			throw new IllegalStateException("Named relation " + name
+					+ " is in a catalogue and cannot be changed; use Catalogue.addAttribute()");
+		}
+		super.addAttribute(attribute);
+	}
 
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
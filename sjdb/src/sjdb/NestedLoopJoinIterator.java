@@ -0,0 +1,119 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class executes a Product, or a Join, by nested loops: the tuples
+ * of the right input are read into memory when the iterator is opened,
+ * and each tuple of the left input is paired with each of them. For a
+ * join, only the pairs that satisfy the predicate are produced.
+ *
+ * The output tuples have the values of the left tuple followed by those
+ * of the right.
+ */
+public class NestedLoopJoinIterator extends PhysicalOperator {
+	private final PhysicalOperator left;
+	private final PhysicalOperator right;
+	private final Predicate predicate; //null for a product
+	private final int leftPosition; //positions of the predicate's attributes in the output
+	private final int rightPosition;
+
+	private List<Tuple> inner;
+	private Tuple outer;
+	private int index;
+
+	/**
+	 * Create a new iterator that executes a product
+	 * @param op Product to execute
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input
+	 */
+	public NestedLoopJoinIterator(Product op, PhysicalOperator left, PhysicalOperator right) {
+		this(op, null, left, right);
+	}
+
+	/**
+	 * Create a new iterator that executes a join
+	 * @param op Join to execute
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input
+	 */
+	public NestedLoopJoinIterator(Join op, PhysicalOperator left, PhysicalOperator right) {
+		this(op, op.getPredicate(), left, right);
+	}
+
+	private NestedLoopJoinIterator(Operator op, Predicate predicate, PhysicalOperator left, PhysicalOperator right) {
+		super(op, left.getSchema().concat(right.getSchema()), left, right);
+		this.left = left;
+		this.right = right;
+		this.predicate = predicate;
+		this.leftPosition = (predicate == null) ? -1 : position(getSchema(), predicate.getLeftAttribute());
+		this.rightPosition = (predicate == null) ? -1 : position(getSchema(), predicate.getRightAttribute());
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#open()
+	 */
+	@Override
+	public void open() throws DatabaseException {
+		super.open();
+		inner = new ArrayList<Tuple>();
+		Tuple t;
+		while ((t = right.next()) != null) {
+			inner.add(t);
+		}
+		outer = null;
+		index = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#fetch()
+	 */
+	@Override
+	protected Tuple fetch() {
+		if (inner.isEmpty()) {
+			return null;
+		}
+		while (true) {
+			if (outer == null || index == inner.size()) {
+				outer = left.next();
+				index = 0;
+				if (outer == null) {
+					return null;
+				}
+			}
+			Tuple t = inner.get(index++);
+			if (predicate == null || ValueComparator.INSTANCE.compare(value(outer, t, leftPosition),
+					value(outer, t, rightPosition)) == 0) {
+				return outer.concat(t);
+			}
+		}
+	}
+
+	/**
+	 * returns the value at a position of the output, without building the
+	 * output tuple
+	 */
+	private String value(Tuple l, Tuple r, int i) {
+		return (i < l.size()) ? l.get(i) : r.get(i - l.size());
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#close()
+	 */
+	@Override
+	public void close() {
+		inner = null;
+		outer = null;
+		super.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return (predicate == null) ? "PRODUCT" : "NESTED LOOP JOIN [" + predicate + "]";
+	}
+}
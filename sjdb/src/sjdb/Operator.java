@@ -23,6 +23,11 @@ public abstract class Operator {
 	 * The relation produced by this operator as output.
 	 */
 	protected Relation output;
+	/**
+	 * The estimated cost of computing the output of this operator, with
+	 * the cost of its inputs.
+	 */
+	protected Cost cost;
 	
 	public Operator() {
 		this.inputs = new ArrayList<Operator>();
@@ -63,6 +68,23 @@ public abstract class Operator {
 		this.output = reln;
 	}
 	
+	/**
+	 * Return the estimated cost of this operator and its inputs, or null
+	 * if it has not been costed.
+	 * @return Cost
+	 */
+	public Cost getCost() {
+		return this.cost;
+	}
+	
+	/**
+	 * Set the estimated cost of this operator and its inputs.
+	 * @param cost Cost
+	 */
+	public void setCost(Cost cost) {
+		this.cost = cost;
+	}
+	
 	/**
 	 * Accept a visitor to this operator.
 	 * @param visitor Visitor to be accepted
@@ -2,37 +2,119 @@ package sjdb;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class Optimiser{
-	private Catalogue catalogue;
-
-	private List<Predicate> predicates = new ArrayList<Predicate>(); //used to push the selects down
-	private List<Attribute> attributes = new ArrayList<Attribute>(); //used to keep track of what attributes are used
+	public static final int DEFAULT_GREEDY_THRESHOLD = 10; //number of relations from which the joins are ordered greedily
+	public static final long DEFAULT_MEMORY_BUDGET = 100000; //number of tuples a join can hold in memory
+	
+	private static final long SEED = 0; //seed for the randomised improvement, so that plans are reproducible
 	
-	private List<Operator> ilst = new ArrayList<Operator>(); //the initial list of operators
-	private List<Operator> olst = new ArrayList<Operator>(); //the optimised list of operators
+	private final Catalogue catalogue;
+	private final int greedyThreshold;
+	private final long memoryBudget;
+	private volatile long timeBudget = 0; //time in ms for improving greedily ordered joins
+	private volatile int iterationBudget = Integer.MAX_VALUE; //number of moves for improving greedily ordered joins
+	private volatile ForkJoinPool pool = null; //pool for enumerating joins in parallel, if any
 	
-	private Estimator estimator = new Estimator(); 
-	private Boolean isFinalProject = false; //used in the case of 'select *' as input
+	private final Estimator estimator = new Estimator(); //has no state, so it is shared by all calls
+	
+	/**
+	 * The state of a single call to optimise(); the optimiser itself only
+	 * holds its configuration, so one instance can be used by many threads
+	 * at once
+	 */
+	private static class Query {
+		private List<Predicate> predicates = new ArrayList<Predicate>(); //used to push the selects down
+		private List<Attribute> attributes = new ArrayList<Attribute>(); //used to keep track of what attributes are used
+		private List<Attribute> projected = new ArrayList<Attribute>(); //the attributes in the result of the query
+		
+		private List<Operator> ilst = new ArrayList<Operator>(); //the initial list of operators
+		private List<Operator> olst = new ArrayList<Operator>(); //the optimised list of operators
+		
+		private Boolean isFinalProject = false; //used in the case of 'select *' as input
+	}
 	
 	public Optimiser(Catalogue catalogue){
+		this(catalogue, DEFAULT_GREEDY_THRESHOLD);
+	}
+	
+	/**
+	 * @param catalogue
+	 * @param greedyThreshold queries that join at least this many relations have their joins
+	 * ordered greedily instead of by exhaustive enumeration
+	 */
+	public Optimiser(Catalogue catalogue, int greedyThreshold){
+		this(catalogue, greedyThreshold, DEFAULT_MEMORY_BUDGET);
+	}
+	
+	/**
+	 * @param catalogue
+	 * @param greedyThreshold queries that join at least this many relations have their joins
+	 * ordered greedily instead of by exhaustive enumeration
+	 * @param memoryBudget number of tuples a join can hold in memory, used to choose
+	 * the method of each join
+	 */
+	public Optimiser(Catalogue catalogue, int greedyThreshold, long memoryBudget){
 		this.catalogue = catalogue;
+		this.greedyThreshold = greedyThreshold;
+		this.memoryBudget = Math.max(memoryBudget, 1);
+	}
+	
+	/**
+	 * returns the number of tuples a join can hold in memory
+	 * @return
+	 */
+	public long getMemoryBudget(){
+		return memoryBudget;
+	}
+	
+	/**
+	 * returns a cost model for the optimiser's catalogue and memory budget,
+	 * which costs plans as the optimiser does
+	 * @return
+	 */
+	public CostModel getCostModel(){
+		return new CostModel(catalogue, memoryBudget);
+	}
+
+	/**
+	 * sets the budget for improving greedily ordered joins by randomised search;
+	 * the search stops when either the time or the number of moves runs out
+	 * @param timeBudget time in milliseconds, or 0 to leave the greedy order as it is
+	 * @param iterationBudget maximum number of moves to try
+	 */
+	public void setImprovementBudget(long timeBudget, int iterationBudget){
+		this.timeBudget = timeBudget;
+		this.iterationBudget = iterationBudget;
 	}
 
 	/**
-	 * returns the optimised query plan (doesnt re-order joins)
+	 * sets the pool on which exhaustive join enumeration runs in parallel;
+	 * the plans found are the same as when enumerating on the calling thread
+	 * @param pool the pool to use, or null to enumerate on the calling thread
+	 */
+	public void setForkJoinPool(ForkJoinPool pool){
+		this.pool = pool;
+	}
+
+	/**
+	 * returns the optimised query plan, with the joins re-ordered by estimated cost
+	 * and a method chosen for each join; the plan is estimated and costed
 	 * @param cPlan
 	 * @return
 	 */
 	public Operator optimise(Operator cPlan){
+		Query query = new Query();
 		
-		parseCanonicalQuery(cPlan);
-		transformQueryPlan(cPlan);
-		Operator optimisedPlan = olst.get(olst.size()-1);
+		parseCanonicalQuery(query, cPlan);
+		transformQueryPlan(query, cPlan);
+		Operator optimisedPlan = query.olst.get(query.olst.size()-1);
 		
 		return optimisedPlan;
 	}
@@ -41,68 +123,85 @@ public class Optimiser{
 	/**
 	 * Parses the canonical query plan given as input
 	 * Stores the predicates, attributes, scans and products in lists to use for optimisation
+	 * @param query State of the current call
 	 * @param op Canonical query plan
 	 */
 	
-	public void parseCanonicalQuery(Operator op){
+	private void parseCanonicalQuery(Query query, Operator op){
 		
 		//checks the type of operation
 		//adds to the specific list and may call the method again
 		if(op instanceof Scan){
-			ilst.add((Scan)op);
+			query.ilst.add((Scan)op);
 		} else if (op instanceof Project) {
 			for (Attribute attribute: (((Project) op).getAttributes())){
-				attributes.add(attribute);
+				query.attributes.add(attribute);
+				query.projected.add(attribute);
 			}
-			ilst.add((Project)op);
-			isFinalProject = true;
-			parseCanonicalQuery(((Project) op).getInput());
+			query.ilst.add((Project)op);
+			query.isFinalProject = true;
+			parseCanonicalQuery(query, ((Project) op).getInput());
 		} else if (op instanceof Select){
 			Predicate predicate = ((Select) op).getPredicate();
-		    predicates.add(predicate);
+		    query.predicates.add(predicate);
 		    
-		    if(!predicate.equalsValue()){
-		    	attributes.add(predicate.getLeftAttribute());
-		    	attributes.add(predicate.getRightAttribute());
+		    if(!predicate.comparesValue()){
+		    	query.attributes.add(predicate.getLeftAttribute());
+		    	query.attributes.add(predicate.getRightAttribute());
 		    }
 		    
-		    ilst.add((Select)op);
-		    parseCanonicalQuery(((Select) op).getInput());
+		    query.ilst.add((Select)op);
+		    parseCanonicalQuery(query, ((Select) op).getInput());
 		} else if (op instanceof Product){
-			ilst.add((Product)op);
-			parseCanonicalQuery(((Product) op).getLeft());
-			parseCanonicalQuery(((Product) op).getRight());
+			query.ilst.add((Product)op);
+			parseCanonicalQuery(query, ((Product) op).getLeft());
+			parseCanonicalQuery(query, ((Product) op).getRight());
 		} 
 	}
 	
 	/**
 	 * optimises the query plan
-	 * does the optimisation of each operator one by one
+	 * pushes the selects and projects down onto the scans, then picks the
+	 * cheapest order in which to join the resulting operators
+	 * @param query State of the current call
 	 * @param cPlan original query plan
 	 */
-	public void transformQueryPlan(Operator cPlan){
-		Collections.reverse(ilst);
+	private void transformQueryPlan(Query query, Operator cPlan){
+		Collections.reverse(query.ilst);
 		
 		Boolean movedSelect = false;		
 		
-		if(!isFinalProject) {
-			getAllAttributes(cPlan, attributes);
+		if(!query.isFinalProject) {
+			getAllAttributes(cPlan, query.attributes);
+			getAllAttributes(cPlan, query.projected);
+		}
+		
+		Set<String> attrNames = getAttributeNames(query.attributes);
+		
+		//the cost model caches the widths of attributes, which may change with the catalogue, so one is made per query
+		CostModel costModel = getCostModel();
+		
+		//the predicates by the name of their left attribute, so that each scan only looks at those that may refer to it
+		Map<String, List<Integer>> byLeftAttribute = new HashMap<String, List<Integer>>();
+		for(int i = 0; i < query.predicates.size(); i++){
+			byLeftAttribute.computeIfAbsent(query.predicates.get(i).getLeftAttribute().getName(),
+					name -> new ArrayList<Integer>()).add(i);
 		}
+		boolean[] pushed = new boolean[query.predicates.size()];
 		
-		for(Operator op : ilst){
+		for(Operator op : query.ilst){
 			if(op instanceof Scan){
 				Scan scan = new Scan((NamedRelation)(((Scan)op).getRelation()));
 				
 				//this can be a separate method
 				//checking which attributes to project
 				List<Attribute> attrToProject = new ArrayList<Attribute>();
-				List<String> attrNames = getAttributeNames(attributes);
 				Boolean projectAllAttrs = true;
 
 				//selecting the list of attributes to project on top of scan
 				for(Attribute a : scan.getOutput().getAttributes()){
 					if(attrNames.contains(a.getName())){
-						attrToProject.add(new Attribute(a));
+						attrToProject.add(a);
 					} else {
 						projectAllAttrs = false;
 					}
@@ -111,42 +210,58 @@ public class Optimiser{
 				movedSelect = false;
 				
 				//going through all the predicates to check if a select can be pushed down on top of this scan
-				if (!predicates.isEmpty()){
-					ListIterator<Predicate> iter = predicates.listIterator();
+				if (!query.predicates.isEmpty()){
+					List<Integer> found = new ArrayList<Integer>();
 					
-					Select select = null;
-					while(iter.hasNext()){
-						Predicate predicate = iter.next();
-						
-						//check if it's a attr=value predicate
-					    if(predicate.equalsValue()){
-					    	Attribute lAttr = predicate.getLeftAttribute();
-					    	
-					    	//checks if the predicate refers to this scan
-							if(containsAttribute(op.getOutput(), lAttr)){
-								
-								//if there is already a select pushed down to the scan, build new selects on top of it
-								if(movedSelect){
-									select = new Select(select, predicate);
-								} else {
-									//push down the select to the scan
-									select = new Select(scan, predicate);
-									movedSelect = true;
-								}
-								
-								iter.remove();
+					for(Attribute a : op.getOutput().getAttributes()){
+						List<Integer> candidates = byLeftAttribute.get(a.getName());
+						if(candidates == null){
+							continue;
+						}
+						for(int i : candidates){
+							Predicate predicate = query.predicates.get(i);
+							
+							//checks if the predicate refers only to this scan
+							//(attr compared with values, or attr=attr with both attributes in the relation)
+							if(!pushed[i] && (predicate.comparesValue() || containsAttribute(op.getOutput(), predicate.getRightAttribute()))){
+								found.add(i);
+								pushed[i] = true;
 							}
-					    }
+						}
+					}
+					
+					//the predicates are kept in the order of the query
+					Collections.sort(found);
+					List<Predicate> scanPredicates = new ArrayList<Predicate>();
+					for(int i : found){
+						scanPredicates.add(query.predicates.get(i));
+					}
+					
+					//only the select on the scan can be executed by an index scan
+					moveIndexedFirst(scan, scanPredicates);
+					
+					Select select = null;
+					for(Predicate predicate : scanPredicates){
+						//if there is already a select pushed down to the scan, build new selects on top of it
+						if(movedSelect){
+							select = new Select(select, predicate);
+						} else {
+							//push down the select to the scan, and use an index if it is cheaper
+							select = new Select(scan, predicate);
+							select.accept(estimator);
+							costModel.chooseAccess(select);
+							movedSelect = true;
+						}
 					}
 					
 					//to make sure select is not null
 					if(movedSelect){
 						//if you project all attributes there's no need to add a project operator
 						if(projectAllAttrs){
-							olst.add(select);
+							query.olst.add(select);
 						} else {
 							Project project = new Project(select, attrToProject);
-							olst.add(project);
+							query.olst.add(project);
 						}
 						
 					}					
@@ -156,124 +271,95 @@ public class Optimiser{
 					
 					//if you project all attributes there's no need to add a project operator
 					if(projectAllAttrs){
-						olst.add(scan);
+						query.olst.add(scan);
 					} else {
 						Project project = new Project(scan, attrToProject);
-						olst.add(project);
+						query.olst.add(project);
 					}
 				}	
-			} else if (op instanceof Project) {
-				continue;
-			} else if (op instanceof Select){
-				continue;
-			} else if (op instanceof Product){
-				movedSelect = false;
-				Product product = new Product(getOperator(((Product) op).getLeft()), getOperator(((Product) op).getRight()));
-
-				product.accept(estimator);
-				estimator.visit(product);
-				
-				if (!predicates.isEmpty()){
-					ListIterator<Predicate> iter = predicates.listIterator();
-					
-					Select select = null;
-					Join join = null;
-					while(iter.hasNext()){
-						Predicate predicate = iter.next();
-						
-						//check if it's a attr1=attr2 predicate
-					    if(!predicate.equalsValue()){
-					    	Attribute lAttr = predicate.getLeftAttribute();
-							Attribute rAttr = predicate.getRightAttribute();
-							
-							Relation prod = product.getOutput();
-							if(containsAttribute(prod, lAttr) && containsAttribute(prod, rAttr)){
-
-								if(movedSelect){
-									if(select == null){
-										select = new Select(join, predicate);
-									} else {
-										select = new Select(select, predicate);
-									} 
-								} else {
-
-									//combine product and select into a join
-									join = new Join(product.getLeft(), product.getRight(), predicate);
-									join.accept(estimator);
-									estimator.visit(join);
-									
-									movedSelect = true;
-								}
-								
-								//remove the join attributes from the list of remaining attributes needed in the plan	
-								attributes.remove(lAttr);
-								attributes.remove(rAttr);
-
-								iter.remove();
-							}	
-						}
-					}
-					
-					if(movedSelect){
-						//list of names for easier comparison
-						List<Attribute> attrToProject = new ArrayList<Attribute>();
-						List<String> attrNames = getAttributeNames(attributes);
-						
-						int countLAttr = Collections.frequency(attrNames, join.getPredicate().getLeftAttribute().getName());
-						int countRAttr = Collections.frequency(attrNames, join.getPredicate().getRightAttribute().getName());
-						
-						
-						//if the 2 attributes in the join predicate are used somewhere else
-						//then don't project anything; else project the rest of the attributes
-						if(countLAttr>0 && countRAttr>0){
-							if(select == null){
-								olst.add(join);
-							} else {
-								olst.add(select);
-							}
-							
-						} else {
-							//selecting the list of attributes to project on top of join
-							for(Attribute a : join.getOutput().getAttributes()){
-								if(attrNames.contains(a.getName())){
-									attrToProject.add(new Attribute(a));
-								} 
-							} 
-							
-							Project project = null;
-							if(select == null){
-								project = new Project(join, attrToProject);
-							} else {
-								project = new Project(select, attrToProject);
-							}
-							
-							olst.add(project);
-						}
-					}
-				}
-				
-				//if there was no select operation pushed down on top of product, then just add the product
-				if(!movedSelect){
-					olst.add(product);
-				}
 			}
 		}
+		
+		//the remaining predicates are all of the form attr=attr, between two relations
+		List<Predicate> remaining = new ArrayList<Predicate>();
+		for(int i = 0; i < query.predicates.size(); i++){
+			if(!pushed[i]){
+				remaining.add(query.predicates.get(i));
+			}
+		}
+		query.predicates = remaining;
+		JoinGraph graph = new JoinGraph(new ArrayList<Operator>(query.olst), query.predicates, getAttributeNames(query.projected), estimator, costModel);
+		JoinPlan joined;
+		ForkJoinPool pool = this.pool;
+		long timeBudget = this.timeBudget;
+		int iterationBudget = this.iterationBudget;
+		
+		//exhaustive enumeration grows exponentially with the number of relations
+		if(graph.size() < greedyThreshold && graph.size() <= JoinEnumerator.MAX_RELATIONS){
+			JoinEnumerator enumerator = (pool == null) ? new JoinEnumerator(graph) : new ParallelJoinEnumerator(graph, pool);
+			joined = enumerator.enumerate();
+		} else {
+			joined = new GreedyJoinOrderer(graph).order();
+			
+			if(timeBudget > 0){
+				joined = new RandomisedJoinOrderer(graph, SEED).improve(joined, timeBudget, iterationBudget);
+			}
+		}
+		
+		query.olst.add(finalProject(query, joined.getOperator(), costModel));
+	}
+	
+	/**
+	 * adds a project of the query's result attributes, in the order of the query,
+	 * on top of the joined operators, unless they already produce exactly those;
+	 * a project on top of them is replaced, as it keeps a superset of the attributes
+	 * @param query State of the current call
+	 * @param op Joined operators
+	 * @param costModel
+	 * @return
+	 */
+	private Operator finalProject(Query query, Operator op, CostModel costModel){
+		List<Attribute> output = op.getOutput().getAttributes();
+		Boolean sameOrder = output.size() == query.projected.size();
+		for(int i = 0; sameOrder && i < output.size(); i++){
+			sameOrder = output.get(i).getName().equals(query.projected.get(i).getName());
+		}
+		if(sameOrder){
+			return op;
+		}
+		
+		Operator input = (op instanceof Project) ? ((Project) op).getInput() : op;
+		Project project = new Project(input, query.projected);
+		estimator.visit(project);
+		costModel.visit(project);
+		return project;
 	}
-
+	
 	/**
-	 * used as helper function, gets all scans present in an operator
-	 * @param op operator
-	 * @param allScans a set of scans
+	 * moves the predicate that selects the fewest tuples of a scan among
+	 * those that can be looked up in an index to the front of a list
+	 * @param scan
+	 * @param predicates predicates on the scan
 	 */
-	private void getAllScans(Operator op, Set<String> allScans){
+	private void moveIndexedFirst(Scan scan, List<Predicate> predicates){
+		int best = -1;
+		long bestSize = Long.MAX_VALUE;
+		scan.accept(estimator);
 		
-		if(op instanceof Scan){
-			allScans.add(((Scan) op).getRelation().toString());
-		} else if(op instanceof UnaryOperator){
-			getAllScans(((UnaryOperator) op).getInput(), allScans);
-		} else {
-			getAllScans(op.getInputs().get(0), allScans);
-			getAllScans(op.getInputs().get(1), allScans);
+		for(int i = 0; i < predicates.size(); i++){
+			Predicate predicate = predicates.get(i);
+			if(BPlusTree.supports(predicate) && CostModel.indexedScan(scan, predicate.getLeftAttribute()) != null){
+				Select select = new Select(scan, predicate);
+				estimator.visit(select);
+				if(select.getOutput().getTupleCount() < bestSize){
+					best = i;
+					bestSize = select.getOutput().getTupleCount();
+				}
+			}
+		}
+		
+		if(best > 0){
+			predicates.add(0, predicates.remove(best));
 		}
 	}
 	
@@ -297,28 +383,6 @@ public class Optimiser{
 	}
 	
 	
-	/**
-	 * gets the operator that corresponds to the changed versions of the inputs to a product or join
-	 * used to create the final operator
-	 * @param op operator
-	 * @return
-	 */
-	private Operator getOperator(Operator op){
-		Set<String> allScans = new HashSet<String>();
-		getAllScans(op, allScans);
-		
-		for(Operator operator:olst){
-			Set<String> allScansOpt = new HashSet<String>();
-			getAllScans(operator, allScansOpt);
-			if(allScans.equals(allScansOpt)){
-				return operator;
-			}
-		}
-		return null;
-		
-	}
-	
-	
 	 /**
 	  * checks if a relation contains a certain attribute
 	  * @param rel relation
@@ -326,21 +390,16 @@ public class Optimiser{
 	  * @return
 	  */
 	private Boolean containsAttribute(Relation rel, Attribute attr){
-		for (Attribute a : rel.getAttributes()){
-			if(a.getName().equals(attr.getName())){
-				return true;
-			}
-		}
-		return false;
+		return rel.getSchema().contains(attr);
 	}
 	
 	/**
-	 * creates a list of attribute names from a list of attributes
+	 * creates a set of attribute names from a list of attributes
 	 * @param attrs
 	 * @return
 	 */
-	private List<String> getAttributeNames(List<Attribute> attrs){
-		List<String> attrNames = new ArrayList<String>();
+	private Set<String> getAttributeNames(List<Attribute> attrs){
+		Set<String> attrNames = new HashSet<String>();
 		for (Attribute a:attrs){
 			attrNames.add(a.getName());
 		}
@@ -0,0 +1,205 @@
+package sjdb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class represents a page of a HeapFile, in the slotted-page layout:
+ *
+ * - header: the number of slots, and the offset of the first record
+ * - slot directory: the offset and length of the record in each slot; the
+ *   offset of an empty slot (whose record has been deleted) is 0
+ * - free space
+ * - records, packed towards the end of the page
+ *
+ * The slot directory grows from the start of the page and the records
+ * from the end, so a record keeps its slot when others are inserted or
+ * deleted, and when the page is compacted to reclaim the space of
+ * deleted records. Empty slots are reused by later inserts.
+ */
+public class Page {
+	public static final int SIZE = 4096; //bytes
+
+	private static final int HEADER_SIZE = 4;
+	private static final int SLOT_SIZE = 4;
+	public static final int MAX_RECORD = SIZE - HEADER_SIZE - SLOT_SIZE; //the largest record that fits in an empty page
+
+	private final int number;
+	private final ByteBuffer buf; //only accessed with absolute gets and puts
+
+	/**
+	 * Create a new empty page
+	 * @param number Number of the page in its file
+	 */
+	public Page(int number) {
+		this.number = number;
+		this.buf = ByteBuffer.allocate(SIZE);
+		setSlotCount(0);
+		setRecordStart(SIZE);
+	}
+
+	/**
+	 * Create a page from the bytes read from a file
+	 * @param number Number of the page in its file
+	 * @param buf SIZE bytes, which are not copied
+	 */
+	Page(int number, ByteBuffer buf) {
+		this.number = number;
+		this.buf = buf;
+	}
+
+	/**
+	 * Return the number of the page in its file
+	 * @return
+	 */
+	public int getNumber() {
+		return number;
+	}
+
+	/**
+	 * Return the number of slots, including empty ones
+	 * @return
+	 */
+	public int getSlotCount() {
+		return buf.getShort(0);
+	}
+
+	/**
+	 * Return the number of bytes free for records and slots, once the page
+	 * has been compacted
+	 * @return
+	 */
+	public int getFreeSpace() {
+		int slots = getSlotCount();
+		int used = HEADER_SIZE + slots * SLOT_SIZE;
+		for (int i = 0; i < slots; i++) {
+			if (offset(i) != 0) {
+				used += length(i);
+			}
+		}
+		return SIZE - used;
+	}
+
+	/**
+	 * Insert a record, compacting the page if needed
+	 * @param record
+	 * @return the slot of the record, or -1 if the page is too full
+	 */
+	public int insert(byte[] record) {
+		int slots = getSlotCount();
+		int slot = 0;
+		while (slot < slots && offset(slot) != 0) {
+			slot++;
+		}
+		int needed = record.length + ((slot == slots) ? SLOT_SIZE : 0);
+
+		if (contiguousFree() < needed) {
+			if (getFreeSpace() < needed) {
+				return -1;
+			}
+			compact();
+		}
+
+		int start = getRecordStart() - record.length;
+		for (int i = 0; i < record.length; i++) {
+			buf.put(start + i, record[i]);
+		}
+		setRecordStart(start);
+		if (slot == slots) {
+			setSlotCount(slots + 1);
+		}
+		setSlot(slot, start, record.length);
+		return slot;
+	}
+
+	/**
+	 * Return the record in a slot
+	 * @param slot
+	 * @return a copy of the record, or null if the slot is empty or out of range
+	 */
+	public byte[] get(int slot) {
+		if (slot < 0 || slot >= getSlotCount() || offset(slot) == 0) {
+			return null;
+		}
+		byte[] record = new byte[length(slot)];
+		int offset = offset(slot);
+		for (int i = 0; i < record.length; i++) {
+			record[i] = buf.get(offset + i);
+		}
+		return record;
+	}
+
+	/**
+	 * Delete the record in a slot, leaving the slot empty
+	 * @param slot
+	 * @return false if the slot was already empty or out of range
+	 */
+	public boolean delete(int slot) {
+		if (slot < 0 || slot >= getSlotCount() || offset(slot) == 0) {
+			return false;
+		}
+		setSlot(slot, 0, 0);
+		return true;
+	}
+
+	/**
+	 * Return the bytes of the page, to be written to its file
+	 * @return
+	 */
+	ByteBuffer getBuffer() {
+		return buf;
+	}
+
+	/**
+	 * moves the records to the end of the page, to join up the space of
+	 * deleted records with the free space
+	 */
+	private void compact() {
+		int slots = getSlotCount();
+		byte[] records = new byte[SIZE];
+		int start = SIZE;
+		for (int i = 0; i < slots; i++) {
+			int offset = offset(i);
+			if (offset != 0) {
+				int length = length(i);
+				start -= length;
+				for (int b = 0; b < length; b++) {
+					records[start + b] = buf.get(offset + b);
+				}
+				setSlot(i, start, length);
+			}
+		}
+		for (int b = start; b < SIZE; b++) {
+			buf.put(b, records[b]);
+		}
+		setRecordStart(start);
+	}
+
+	private int contiguousFree() {
+		return getRecordStart() - HEADER_SIZE - getSlotCount() * SLOT_SIZE;
+	}
+
+	private int getRecordStart() {
+		return buf.getShort(2) & 0xffff;
+	}
+
+	private void setSlotCount(int slots) {
+		buf.putShort(0, (short) slots);
+	}
+
+	private void setRecordStart(int start) {
+		buf.putShort(2, (short) start);
+	}
+
+	private int offset(int slot) {
+		return buf.getShort(HEADER_SIZE + slot * SLOT_SIZE) & 0xffff;
+	}
+
+	private int length(int slot) {
+		return buf.getShort(HEADER_SIZE + slot * SLOT_SIZE + 2) & 0xffff;
+	}
+
+	private void setSlot(int slot, int offset, int length) {
+		buf.putShort(HEADER_SIZE + slot * SLOT_SIZE, (short) offset);
+		buf.putShort(HEADER_SIZE + slot * SLOT_SIZE + 2, (short) length);
+	}
+}
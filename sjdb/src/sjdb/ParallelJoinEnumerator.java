@@ -0,0 +1,87 @@
+package sjdb;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class finds the cheapest join order for a JoinGraph in the same
+ * way as JoinEnumerator, but plans the sets of relations of each size in
+ * parallel on a ForkJoinPool.
+ *
+ * The best plan for a set only depends on the best plans for smaller sets,
+ * so the sets of one size can be planned independently once the previous
+ * size is complete. The plans for a size are collected by position and only
+ * added to the table after all of them have been found, and each set is
+ * planned exactly as in the single-threaded enumerator, so the result is
+ * the same whatever the number of threads.
+ */
+public class ParallelJoinEnumerator extends JoinEnumerator {
+	private static final int SETS_PER_TASK = 16; //number of sets below which a task is not split further
+
+	private ForkJoinPool pool;
+
+	/**
+	 * Create a new parallel enumerator for the given join graph
+	 * @param graph
+	 * @param pool Pool to run the enumeration on
+	 */
+	public ParallelJoinEnumerator(JoinGraph graph, ForkJoinPool pool) {
+		super(graph);
+		this.pool = pool;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.JoinEnumerator#planLevel(java.util.List, java.util.Map)
+	 */
+	@Override
+	protected void planLevel(List<Long> level, Map<Long, JoinPlan> best) {
+		if (level.size() <= SETS_PER_TASK) {
+			super.planLevel(level, best);
+			return;
+		}
+
+		JoinPlan[] plans = new JoinPlan[level.size()];
+		pool.invoke(new PlanTask(level, best, plans, 0, level.size()));
+
+		for (int i = 0; i < plans.length; i++) {
+			best.put(level.get(i), plans[i]);
+		}
+	}
+
+	/**
+	 * A task that plans a range of the sets of one size; the table of best
+	 * plans is only read while the tasks run
+	 */
+	private class PlanTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private List<Long> level;
+		private Map<Long, JoinPlan> best;
+		private JoinPlan[] plans;
+		private int from;
+		private int to;
+
+		private PlanTask(List<Long> level, Map<Long, JoinPlan> best, JoinPlan[] plans, int from, int to) {
+			this.level = level;
+			this.best = best;
+			this.plans = plans;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SETS_PER_TASK) {
+				for (int i = from; i < to; i++) {
+					plans[i] = bestSplit(level.get(i), best);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new PlanTask(level, best, plans, from, middle),
+						new PlanTask(level, best, plans, middle, to));
+			}
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is an immutable map that shares its structure with the maps
+ * it is made from: put() returns a new map and leaves this one unchanged.
+ *
+ * The map is a hash array mapped trie (Bagwell, 2001). Each level of the
+ * trie is indexed by the next 5 bits of the hash of a key, and holds only
+ * the children that are present, so a put copies just the nodes on the
+ * path to the key: O(log n) work, however large the map. Keys with the
+ * same hash are chained in the same entry.
+ *
+ * Since the maps never change, they can be read by any number of threads
+ * without locking once they have been published.
+ */
+public class PersistentMap<K, V> {
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+	private static final Node EMPTY = new Node(0, new Object[0]);
+
+	private final Node root;
+	private final int size;
+
+	/**
+	 * Create an empty map
+	 */
+	public PersistentMap() {
+		this(EMPTY, 0);
+	}
+
+	private PersistentMap(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * Return the number of keys in the map
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the value of a key, or null if the map does not contain it
+	 * @param key
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(K key) {
+		int hash = key.hashCode();
+		Object child = root;
+		for (int shift = 0; child instanceof Node; shift += BITS) {
+			Node node = (Node) child;
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((node.bitmap & bit) == 0) {
+				return null;
+			}
+			child = node.children[node.index(bit)];
+		}
+		for (Entry e = (Entry) child; e != null; e = e.next) {
+			if (e.hash == hash && e.key.equals(key)) {
+				return (V) e.value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Return a map with the same keys and values as this one, except that
+	 * the key has the given value
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	public PersistentMap<K, V> put(K key, V value) {
+		boolean[] added = new boolean[1];
+		Node next = (Node) put(root, 0, key.hashCode(), key, value, added);
+		return new PersistentMap<K, V>(next, added[0] ? size + 1 : size);
+	}
+
+	/**
+	 * returns a copy of a child of the trie, at the level given by shift,
+	 * with the key set to the value
+	 */
+	private static Object put(Object child, int shift, int hash, Object key, Object value, boolean[] added) {
+		if (child instanceof Node) {
+			Node node = (Node) child;
+			int bit = 1 << ((hash >>> shift) & MASK);
+			int i = node.index(bit);
+			Object[] children;
+			if ((node.bitmap & bit) == 0) {
+				children = new Object[node.children.length + 1];
+				System.arraycopy(node.children, 0, children, 0, i);
+				System.arraycopy(node.children, i, children, i + 1, node.children.length - i);
+				children[i] = new Entry(key, value, hash, null);
+				added[0] = true;
+			} else {
+				children = node.children.clone();
+				children[i] = put(children[i], shift + BITS, hash, key, value, added);
+			}
+			return new Node(node.bitmap | bit, children);
+		}
+
+		Entry entry = (Entry) child;
+		if (entry.hash != hash) {
+			// the hashes differ in some later bits, so the entry is pushed down a level
+			Node node = new Node(1 << ((entry.hash >>> shift) & MASK), new Object[] {entry});
+			return put(node, shift, hash, key, value, added);
+		}
+		return replace(entry, hash, key, value, added);
+	}
+
+	/**
+	 * returns a copy of a chain of entries with the same hash, with the key
+	 * set to the value
+	 */
+	private static Entry replace(Entry entry, int hash, Object key, Object value, boolean[] added) {
+		if (entry == null) {
+			added[0] = true;
+			return new Entry(key, value, hash, null);
+		}
+		if (entry.key.equals(key)) {
+			return new Entry(key, value, hash, entry.next);
+		}
+		return new Entry(entry.key, entry.value, hash, replace(entry.next, hash, key, value, added));
+	}
+
+	/**
+	 * Return the keys of the map, in no particular order
+	 * @return
+	 */
+	public List<K> keys() {
+		List<K> keys = new ArrayList<K>(size);
+		addKeys(root, keys);
+		return keys;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addKeys(Object child, List<K> keys) {
+		if (child instanceof Node) {
+			for (Object c : ((Node) child).children) {
+				addKeys(c, keys);
+			}
+		} else {
+			for (Entry e = (Entry) child; e != null; e = e.next) {
+				keys.add((K) e.key);
+			}
+		}
+	}
+
+	/**
+	 * A level of the trie: the bitmap has a bit set for each child present,
+	 * and the children are kept in the order of their bits
+	 */
+	private static class Node {
+		private final int bitmap;
+		private final Object[] children; //each a Node or an Entry
+
+		private Node(int bitmap, Object[] children) {
+			this.bitmap = bitmap;
+			this.children = children;
+		}
+
+		/**
+		 * returns the position in children of the child for a bit
+		 */
+		private int index(int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+	}
+
+	/**
+	 * A key and its value, and the next key with the same hash, if any
+	 */
+	private static class Entry {
+		private final Object key;
+		private final Object value;
+		private final int hash;
+		private final Entry next;
+
+		private Entry(Object key, Object value, int hash, Entry next) {
+			this.key = key;
+			this.value = value;
+			this.hash = hash;
+			this.next = next;
+		}
+	}
+}
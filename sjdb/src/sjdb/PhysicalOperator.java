@@ -0,0 +1,152 @@
+package sjdb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This abstract class represents an operator in a physical query plan,
+ * which executes an operator of a logical plan. Physical operators are
+ * iterators in the Volcano style:
+ *
+ * - open() prepares the operator (and its inputs) to produce tuples
+ * - next() returns the next output tuple, or null when there are no more
+ * - close() releases anything held since open()
+ *
+ * Each operator counts the tuples it produces, so that the estimates of
+ * a plan can be checked against the real sizes once it has run. An
+ * operator that is opened more than once (such as the inner input of a
+ * block nested loop join) counts the tuples of every run. Physical
+ * plans are built from logical plans by Executor; a physical plan is used
+ * by one thread at a time.
+ */
+public abstract class PhysicalOperator {
+	private final Operator operator;
+	private final Schema schema;
+	private final List<PhysicalOperator> inputs;
+	private long rows;
+
+	/**
+	 * Create a new physical operator
+	 * @param operator Logical operator that this operator executes
+	 * @param schema Attributes of the output tuples, in order
+	 * @param inputs Child operators
+	 */
+	protected PhysicalOperator(Operator operator, Schema schema, PhysicalOperator... inputs) {
+		this.operator = operator;
+		this.schema = schema;
+		this.inputs = Collections.unmodifiableList(Arrays.asList(inputs));
+	}
+
+	/**
+	 * Prepare this operator and its inputs to produce tuples; subclasses
+	 * that override this must call it first
+	 * @throws DatabaseException if the tuples of a relation cannot be read
+	 */
+	public void open() throws DatabaseException {
+		for (PhysicalOperator input : inputs) {
+			input.open();
+		}
+	}
+
+	/**
+	 * Return the next output tuple, or null if there are no more
+	 * @return
+	 */
+	public Tuple next() {
+		Tuple t = fetch();
+		if (t != null) {
+			rows++;
+		}
+		return t;
+	}
+
+	/**
+	 * Produce the next output tuple, or null if there are no more
+	 * @return
+	 */
+	protected abstract Tuple fetch();
+
+	/**
+	 * Release anything held by this operator and its inputs; subclasses
+	 * that override this must call it
+	 */
+	public void close() {
+		for (PhysicalOperator input : inputs) {
+			input.close();
+		}
+	}
+
+	/**
+	 * Return the logical operator executed by this operator
+	 * @return
+	 */
+	public Operator getOperator() {
+		return operator;
+	}
+
+	/**
+	 * Return the attributes of the output tuples, in order
+	 * @return
+	 */
+	public Schema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Return the child operators of this operator; the list cannot be
+	 * modified
+	 * @return
+	 */
+	public List<PhysicalOperator> getInputs() {
+		return inputs;
+	}
+
+	/**
+	 * Return the number of tuples produced since the operator was built
+	 * @return
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Add to the number of tuples produced, for operators that produce
+	 * tuples other than through next()
+	 * @param n
+	 */
+	protected void addRows(long n) {
+		rows += n;
+	}
+
+	/**
+	 * Return the position of an attribute in a schema
+	 * @param schema
+	 * @param attr
+	 * @return
+	 * @throws IllegalArgumentException if the schema does not contain the attribute
+	 */
+	protected static int position(Schema schema, Attribute attr) {
+		int i = schema.indexOf(attr);
+		if (i < 0) {
+			throw new IllegalArgumentException("Attribute " + attr + " not found in " + schema.getAttributes());
+		}
+		return i;
+	}
+
+	/**
+	 * Return the positions of the attributes of an attr=attr join predicate
+	 * in the left and right inputs, whichever way round the predicate is
+	 * @param predicate
+	 * @param left Schema of the left input
+	 * @param right Schema of the right input
+	 * @return the position in the left input, then the position in the right input
+	 * @throws IllegalArgumentException if the predicate does not compare an attribute of each input
+	 */
+	protected static int[] joinPositions(Predicate predicate, Schema left, Schema right) {
+		if (left.contains(predicate.getLeftAttribute())) {
+			return new int[] {position(left, predicate.getLeftAttribute()), position(right, predicate.getRightAttribute())};
+		}
+		return new int[] {position(left, predicate.getRightAttribute()), position(right, predicate.getLeftAttribute())};
+	}
+}
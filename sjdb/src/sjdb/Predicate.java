@@ -1,18 +1,69 @@
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
- * This class is used to represent the predicates associated with 
- * joins and select operators. Note that, while a string value is
- * required for predicates of the form attr=value, this values is 
- * only used by the toString() method; a future version of
- * Attribute which uses more expressive synopses may change this.
- * 
+ * This class is used to represent the predicates associated with
+ * joins and select operators. A predicate is either of the form
+ * attr=attr, or compares an attribute with one or more values:
+ *
+ * attr="value", attr<>"value", attr<"value", attr<="value",
+ * attr>"value", attr>="value", attr BETWEEN "low" AND "high",
+ * attr IN ("value",...,"value")
+ *
+ * Values are compared with ValueComparator, so numbers are ordered
+ * numerically. The values are looked up in the synopsis of the
+ * attribute (its most common values and histogram), if it has one,
+ * to estimate the size of the selection.
+ *
  * @author nmg
  */
 public class Predicate {
+	/**
+	 * The comparison made by a predicate
+	 */
+	public enum Comparison {
+		EQ("="), NE("<>"), LT("<"), LE("<="), GT(">"), GE(">="), BETWEEN(" BETWEEN "), IN(" IN ");
+
+		private final String symbol;
+
+		private Comparison(String symbol) {
+			this.symbol = symbol;
+		}
+
+		/**
+		 * Return the comparison as written in a query
+		 * @return
+		 */
+		public String getSymbol() {
+			return symbol;
+		}
+
+		/**
+		 * Return the comparison with the given symbol (one of =, <>, !=,
+		 * <, <=, >, >=), or null if there is none
+		 * @param symbol
+		 * @return
+		 */
+		public static Comparison fromSymbol(String symbol) {
+			if (symbol.equals("!=")) {
+				return NE;
+			}
+			for (Comparison c : values()) {
+				if (c.symbol.equals(symbol)) {
+					return c;
+				}
+			}
+			return null;
+		}
+	}
+
 	private Attribute leftAttribute;
 	private Attribute rightAttribute;
-	private String rightValue;
+	private Comparison comparison;
+	private List<String> rightValues;
 
 	/**
 	 * Create a predicate of the form attr=attr
@@ -22,6 +73,7 @@ public class Predicate {
 	public Predicate(Attribute left, Attribute right) {
 		this.leftAttribute = left;
 		this.rightAttribute = right;
+		this.comparison = Comparison.EQ;
 	}
 
 	/**
@@ -30,8 +82,51 @@ public class Predicate {
 	 * @param value
 	 */
 	public Predicate(Attribute left, String value) {
+		this(left, Comparison.EQ, value);
+	}
+
+	/**
+	 * Create a predicate that compares an attribute with a value
+	 * @param left
+	 * @param comparison One of EQ, NE, LT, LE, GT and GE
+	 * @param value
+	 */
+	public Predicate(Attribute left, Comparison comparison, String value) {
+		if (comparison == Comparison.BETWEEN || comparison == Comparison.IN) {
+			throw new IllegalArgumentException(comparison + " does not compare with a single value");
+		}
 		this.leftAttribute = left;
-		this.rightValue = value;
+		this.comparison = comparison;
+		this.rightValues = Collections.singletonList(value);
+	}
+
+	/**
+	 * Create a predicate of the form attr BETWEEN low AND high (inclusive)
+	 * @param left
+	 * @param low
+	 * @param high
+	 */
+	public Predicate(Attribute left, String low, String high) {
+		this.leftAttribute = left;
+		this.comparison = Comparison.BETWEEN;
+		List<String> values = new ArrayList<String>(2);
+		values.add(low);
+		values.add(high);
+		this.rightValues = Collections.unmodifiableList(values);
+	}
+
+	/**
+	 * Create a predicate of the form attr IN (value,...,value)
+	 * @param left
+	 * @param values
+	 */
+	public Predicate(Attribute left, List<String> values) {
+		if (values.isEmpty()) {
+			throw new IllegalArgumentException("IN needs at least one value");
+		}
+		this.leftAttribute = left;
+		this.comparison = Comparison.IN;
+		this.rightValues = Collections.unmodifiableList(new ArrayList<String>(values));
 	}
 
 	/**
@@ -39,9 +134,26 @@ public class Predicate {
 	 * @return
 	 */
 	public boolean equalsValue() {
-		return this.rightValue != null;
+		return this.rightValues != null && this.comparison == Comparison.EQ;
+	}
+
+	/**
+	 * Return true if this predicate compares an attribute with values,
+	 * rather than with another attribute
+	 * @return
+	 */
+	public boolean comparesValue() {
+		return this.rightValues != null;
 	}
-	
+
+	/**
+	 * Return the comparison made by this predicate
+	 * @return
+	 */
+	public Comparison getComparison() {
+		return this.comparison;
+	}
+
 	/**
 	 * Return ATTR for predicates of the form ATTR=attr or ATTR=value
 	 * @return left attribute
@@ -49,7 +161,7 @@ public class Predicate {
 	public Attribute getLeftAttribute() {
 		return this.leftAttribute;
 	}
-	
+
 	/**
 	 * Return ATTR for predicates of the form attr=ATTR
 	 * @return right attribute
@@ -57,23 +169,83 @@ public class Predicate {
 	public Attribute getRightAttribute() {
 		return this.rightAttribute;
 	}
-	
+
 	/**
-	 * Return VALUE for predicates of the form attr=VALUE
+	 * Return VALUE for predicates of the form attr=VALUE (and the first
+	 * value for predicates that compare with more than one)
 	 * @return right value
 	 */
 	public String getRightValue() {
-		return this.rightValue;
+		return (this.rightValues == null) ? null : this.rightValues.get(0);
+	}
+
+	/**
+	 * Return the values compared with, for predicates that compare an
+	 * attribute with values: the value, the low and high values of BETWEEN,
+	 * or the values of IN
+	 * @return right values
+	 */
+	public List<String> getRightValues() {
+		return this.rightValues;
 	}
-	
+
+	/**
+	 * Return true if a value of the left attribute satisfies this predicate;
+	 * only for predicates that compare an attribute with values
+	 * @param value
+	 * @return
+	 */
+	public boolean matches(String value) {
+		ValueComparator c = ValueComparator.INSTANCE;
+		switch (this.comparison) {
+		case EQ:
+			return c.compare(value, getRightValue()) == 0;
+		case NE:
+			return c.compare(value, getRightValue()) != 0;
+		case LT:
+			return c.compare(value, getRightValue()) < 0;
+		case LE:
+			return c.compare(value, getRightValue()) <= 0;
+		case GT:
+			return c.compare(value, getRightValue()) > 0;
+		case GE:
+			return c.compare(value, getRightValue()) >= 0;
+		case BETWEEN:
+			return c.compare(value, this.rightValues.get(0)) >= 0 && c.compare(value, this.rightValues.get(1)) <= 0;
+		default:
+			for (String v : this.rightValues) {
+				if (c.compare(value, v) == 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		if (this.rightValue == null) {
-			return this.leftAttribute.toString() + "=" + this.rightAttribute.toString(); 
-		} else {
-			return this.leftAttribute.toString() + "=\"" + this.rightValue + "\"";
+		if (this.rightValues == null) {
+			return this.leftAttribute.toString() + "=" + this.rightAttribute.toString();
 		}
+
+		String ret = this.leftAttribute.toString() + this.comparison.getSymbol();
+		switch (this.comparison) {
+		case BETWEEN:
+			return ret + quote(this.rightValues.get(0)) + " AND " + quote(this.rightValues.get(1));
+		case IN:
+			ret += "(";
+			for (int i = 0; i < this.rightValues.size(); i++) {
+				ret += ((i > 0) ? "," : "") + quote(this.rightValues.get(i));
+			}
+			return ret + ")";
+		default:
+			return ret + quote(getRightValue());
+		}
+	}
+
+	private static String quote(String value) {
+		return "\"" + value + "\"";
 	}
 }
@@ -0,0 +1,51 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class executes a Project, producing the projected values of each
+ * input tuple. Duplicate tuples are not removed. The attributes are kept
+ * in the order of the Project, as in its output relation.
+ */
+public class ProjectIterator extends PhysicalOperator {
+	private final PhysicalOperator input;
+	private final int[] positions;
+
+	/**
+	 * Create a new project iterator
+	 * @param op Project to execute
+	 * @param input Iterator over the input of the project
+	 */
+	public ProjectIterator(Project op, PhysicalOperator input) {
+		super(op, input.getSchema().project(op.getAttributes()), input);
+		this.input = input;
+
+		List<Attribute> attrs = getSchema().getAttributes();
+		this.positions = new int[attrs.size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = position(input.getSchema(), attrs.get(i));
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#fetch()
+	 */
+	@Override
+	protected Tuple fetch() {
+		Tuple t = input.next();
+		return (t == null) ? null : t.project(positions);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder ret = new StringBuilder("PROJECT [");
+		List<Attribute> attrs = getSchema().getAttributes();
+		for (int i = 0; i < attrs.size(); i++) {
+			ret.append((i > 0) ? "," : "").append(attrs.get(i).getName());
+		}
+		return ret.append("]").toString();
+	}
+}
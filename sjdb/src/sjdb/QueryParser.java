@@ -5,6 +5,7 @@ package sjdb;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
@@ -18,10 +19,15 @@ import java.util.regex.Matcher;
  * FROM <relation name>,<relation name>,...,<relation name>
  * WHERE <predicate>,<predicate>,...,<predicate>
  * 
- * where <predicate> is of one of the following two forms:
+ * where <predicate> is of one of the following forms:
  * 
- * <attribute name>="<value>"
  * <attribute name>=<attribute name>
+ * <attribute name><comparison><value>
+ * <attribute name> BETWEEN <value> AND <value>
+ * <attribute name> IN (<value>,<value>,...,<value>)
+ * 
+ * <comparison> is one of =, <>, !=, <, <=, > and >=, and <value> is either
+ * a number or a string in double quotes.
  * 
  * The WHERE line (corresponding to the select operators) is optional and 
  * may be omitted; the other lines are required.
@@ -32,26 +38,33 @@ import java.util.regex.Matcher;
  * with the given attributes.
  * 
  * Note that the author of this class was extremely lazy, and so the parsing 
- * is unforgiving and may be sensitive to extraneous whitespace. In particular, 
- * values in predicates that contain spaces (or for that matter commas) will 
- * break the parsing of the WHERE clause.
+ * is unforgiving and may be sensitive to extraneous whitespace. Quoted values
+ * may contain spaces and commas, but not double quotes.
  * 
  * @author nmg
  */
 public class QueryParser {
+	private static final Pattern VALUE = Pattern.compile("\"([^\"]*)\"|([-+]?\\d+(?:\\.\\d+)?)");
+	private static final Pattern COMPARISON = Pattern.compile("(\\w+)\\s*(<=|>=|<>|!=|=|<|>)\\s*(.+)");
+	private static final Pattern BETWEEN = Pattern.compile("(\\w+)\\s+BETWEEN\\s+(" + VALUE + ")\\s+AND\\s+(" + VALUE + ")",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern IN = Pattern.compile("(\\w+)\\s+IN\\s*\\((.*)\\)", Pattern.CASE_INSENSITIVE);
+	
 	private BufferedReader reader;
 	private Catalogue catalogue;
 
 	/**
 	 * Create a new QueryParser. This class is intended to be used once only;
-	 * repeated calls to parse() may cause unexpected behaviour.
+	 * repeated calls to parse() may cause unexpected behaviour. The query
+	 * is read against a snapshot of the catalogue taken here, so all of
+	 * its relations come from the same version of the catalogue.
 	 * 
 	 * @param catalogue
 	 * @param input
 	 * @throws Exception
 	 */
 	public QueryParser(Catalogue catalogue, Reader input) throws Exception {
-		this.catalogue = catalogue;
+		this.catalogue = catalogue.snapshot();
 		this.reader = new BufferedReader(input);
 	}
 	
@@ -138,16 +151,46 @@ public class QueryParser {
 	private Operator parseSelect(String line, Operator op) {
 		String[] prds = line.split("WHERE\\s+");
 
-		String[] pred = prds[1].split("\\s*,\\s*");
+		List<String> pred = split(prds[1]);
 		Operator ret = op;
 		
-		for (int i=0; i<pred.length; i++) {
-			ret = buildSelect(pred[i].trim(), ret);
+		for (int i=0; i<pred.size(); i++) {
+			ret = buildSelect(pred.get(i), ret);
 		}
 		
 		return ret;
 	}
 	
+	/**
+	 * Split a list on the commas that are not inside double quotes or
+	 * parentheses, and trim the parts.
+	 * @param list
+	 * @return
+	 */
+	private static List<String> split(String list) {
+		List<String> parts = new ArrayList<String>();
+		boolean quoted = false;
+		int depth = 0;
+		int start = 0;
+		
+		for (int i = 0; i < list.length(); i++) {
+			char c = list.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (!quoted && c == '(') {
+				depth++;
+			} else if (!quoted && c == ')') {
+				depth--;
+			} else if (!quoted && depth == 0 && c == ',') {
+				parts.add(list.substring(start, i).trim());
+				start = i + 1;
+			}
+		}
+		parts.add(list.substring(start).trim());
+		
+		return parts;
+	}
+	
 	/**
 	 * Build a chain of select operators.
 	 * @param pred
@@ -155,20 +198,48 @@ public class QueryParser {
 	 * @return
 	 */
 	private Operator buildSelect(String pred, Operator op) {
-		Pattern p = Pattern.compile("(\\w+)=\"(\\w+)\"");
-		Matcher m = p.matcher(pred);
+		Matcher m;
 		Predicate ret;
 		
-		if (m.matches()) {
-			ret = new Predicate(new Attribute(m.group(1)), m.group(2));
+		if ((m = BETWEEN.matcher(pred)).matches()) {
+			ret = new Predicate(new Attribute(m.group(1)), value(m.group(2)), value(m.group(5)));
+		} else if ((m = IN.matcher(pred)).matches()) {
+			List<String> values = new ArrayList<String>();
+			for (String v : split(m.group(2))) {
+				values.add(value(v));
+			}
+			ret = new Predicate(new Attribute(m.group(1)), values);
+		} else if ((m = COMPARISON.matcher(pred)).matches()) {
+			Predicate.Comparison comparison = Predicate.Comparison.fromSymbol(m.group(2));
+			String right = m.group(3);
+			
+			if (VALUE.matcher(right).matches()) {
+				ret = new Predicate(new Attribute(m.group(1)), comparison, value(right));
+			} else if (comparison == Predicate.Comparison.EQ) {
+				ret = new Predicate(new Attribute(m.group(1)), new Attribute(right));
+			} else {
+				throw new IllegalArgumentException("Only = can compare two attributes: " + pred);
+			}
 		} else {
-			String[] atts = pred.split("=");
-			ret = new Predicate(new Attribute(atts[0]), new Attribute(atts[1]));
+			throw new IllegalArgumentException("Bad predicate: " + pred);
 		}
 		
 		return new Select(op, ret);
 	}
 	
+	/**
+	 * Return the value of a quoted string or number
+	 * @param value
+	 * @return
+	 */
+	private static String value(String value) {
+		Matcher m = VALUE.matcher(value.trim());
+		if (!m.matches()) {
+			throw new IllegalArgumentException("Bad value: " + value);
+		}
+		return (m.group(1) != null) ? m.group(1) : m.group(2);
+	}
+	
 	/**
 	 * Parse a "SELECT ..." line and build the corresponding project operator.
 	 * @param line
@@ -0,0 +1,158 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class improves a join order for a JoinGraph by simulated annealing,
+ * for join graphs that are too large to enumerate exhaustively.
+ *
+ * Starting from a given plan, it repeatedly picks a random join in the plan
+ * and applies one of the following moves to it, rebuilding the joins on the
+ * path from it to the root of the plan:
+ *
+ * - swap:            A JOIN B            => B JOIN A
+ * - associate left:  (A JOIN B) JOIN C   => A JOIN (B JOIN C)
+ * - associate right: A JOIN (B JOIN C)   => (A JOIN B) JOIN C
+ * - exchange:        (A JOIN B) JOIN C   => (A JOIN C) JOIN B
+ *
+ * A move that makes the plan cheaper is always kept; a move that makes it
+ * more expensive is kept with a probability that falls as the budget is
+ * used up. The search is an anytime algorithm: when the time or iteration
+ * budget runs out the cheapest plan seen so far is returned.
+ */
+public class RandomisedJoinOrderer {
+	private static final double INITIAL_TEMPERATURE = 0.5;
+
+	private JoinGraph graph;
+	private Random random;
+
+	/**
+	 * Create a new randomised orderer for the given join graph
+	 * @param graph
+	 * @param seed Seed for the random choice of moves
+	 */
+	public RandomisedJoinOrderer(JoinGraph graph, long seed) {
+		this.graph = graph;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Improve a plan that joins all the relations in the graph
+	 * @param plan Plan to start from
+	 * @param timeBudget Maximum time to spend, in milliseconds
+	 * @param iterationBudget Maximum number of moves to try
+	 * @return the cheapest plan found
+	 */
+	public JoinPlan improve(JoinPlan plan, long timeBudget, int iterationBudget) {
+		long start = System.currentTimeMillis();
+		JoinPlan current = plan;
+		JoinPlan best = plan;
+
+		for (int i = 0; i < iterationBudget; i++) {
+			long elapsed = System.currentTimeMillis() - start;
+			if (elapsed >= timeBudget) {
+				break;
+			}
+
+			List<JoinPlan> joins = new ArrayList<JoinPlan>();
+			collectJoins(current, joins);
+			if (joins.isEmpty()) {
+				break;
+			}
+
+			JoinPlan target = joins.get(random.nextInt(joins.size()));
+			JoinPlan moved = move(target);
+			if (moved == null) {
+				continue;
+			}
+			JoinPlan candidate = replace(current, target, moved);
+
+			//the temperature falls linearly as the budget is used up
+			double used = Math.max((double) elapsed / timeBudget, (double) i / iterationBudget);
+			double temperature = INITIAL_TEMPERATURE * (1 - used);
+
+			if (accept(current.getCost(), candidate.getCost(), temperature)) {
+				current = candidate;
+				if (current.getCost() < best.getCost()) {
+					best = current;
+				}
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * decides whether to move from a plan to a candidate plan; the cost
+	 * increase is taken relative to the current cost, so the temperature
+	 * doesn't depend on the size of the relations
+	 */
+	private boolean accept(double cost, double candidateCost, double temperature) {
+		if (candidateCost <= cost) {
+			return true;
+		}
+		if (temperature <= 0) {
+			return false;
+		}
+		double increase = (candidateCost - cost) / Math.max(cost, 1);
+		return random.nextDouble() < Math.exp(-increase / temperature);
+	}
+
+	/**
+	 * applies a random move to a join, returning null if the chosen move
+	 * cannot be applied to it
+	 */
+	private JoinPlan move(JoinPlan join) {
+		JoinPlan left = join.getLeft();
+		JoinPlan right = join.getRight();
+
+		switch (random.nextInt(4)) {
+		case 0:
+			return graph.join(right, left);
+		case 1:
+			if (left.isLeaf()) {
+				return null;
+			}
+			return graph.join(left.getLeft(), graph.join(left.getRight(), right));
+		case 2:
+			if (right.isLeaf()) {
+				return null;
+			}
+			return graph.join(graph.join(left, right.getLeft()), right.getRight());
+		default:
+			if (left.isLeaf()) {
+				return null;
+			}
+			return graph.join(graph.join(left.getLeft(), right), left.getRight());
+		}
+	}
+
+	/**
+	 * rebuilds a plan with one of its sub-plans replaced
+	 */
+	private JoinPlan replace(JoinPlan plan, JoinPlan target, JoinPlan replacement) {
+		if (plan == target) {
+			return replacement;
+		}
+		if (plan.isLeaf()) {
+			return plan;
+		}
+
+		JoinPlan left = replace(plan.getLeft(), target, replacement);
+		JoinPlan right = replace(plan.getRight(), target, replacement);
+		if (left == plan.getLeft() && right == plan.getRight()) {
+			return plan;
+		}
+		return graph.join(left, right);
+	}
+
+	private void collectJoins(JoinPlan plan, List<JoinPlan> joins) {
+		if (!plan.isLeaf()) {
+			joins.add(plan);
+			collectJoins(plan.getLeft(), joins);
+			collectJoins(plan.getRight(), joins);
+		}
+	}
+}
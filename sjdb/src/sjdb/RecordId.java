@@ -0,0 +1,65 @@
+package sjdb;
+
+/**
+ * This class identifies a record in a HeapFile by the number of the page
+ * that holds it and its slot in the page. A record keeps its id for as
+ * long as it is in the file, even when its page is compacted.
+ */
+public class RecordId {
+	private final int page;
+	private final int slot;
+
+	/**
+	 * Create a new record id
+	 * @param page Number of the page, counting from 0
+	 * @param slot Slot in the page, counting from 0
+	 */
+	public RecordId(int page, int slot) {
+		this.page = page;
+		this.slot = slot;
+	}
+
+	/**
+	 * Return the number of the page that holds the record
+	 * @return
+	 */
+	public int getPage() {
+		return page;
+	}
+
+	/**
+	 * Return the slot of the record in its page
+	 * @return
+	 */
+	public int getSlot() {
+		return slot;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return page * 31 + slot;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof RecordId)) {
+			return false;
+		}
+		RecordId rhs = (RecordId) obj;
+		return page == rhs.page && slot == rhs.slot;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "(" + page + "," + slot + ")";
+	}
+}
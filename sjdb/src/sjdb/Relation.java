@@ -1,6 +1,5 @@
 package sjdb;
 
-import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -11,26 +10,53 @@ import java.util.ArrayList;
  * @author nmg
  */
 public class Relation {
-	private List<Attribute> attributes;
-	private int size;
+	private List<Attribute> attributes; //attributes added one at a time, or null if created with a schema
+	private Schema schema; //built from the attributes when first needed
+	private long size;
 
 	/**
 	 * Create a new relation with the given tuple count
 	 */
-	protected Relation(int size) {
+	protected Relation(long size) {
 		this.attributes = new ArrayList<Attribute>();
 		this.size = size;
 	}
 	
 	/**
-	 * Return the list of attributes contained in this relation
+	 * Create a new relation with the given tuple count and schema; the
+	 * schema is shared rather than copied, unless some of its attributes
+	 * have more distinct values than the relation has tuples
+	 */
+	protected Relation(long size, Schema schema) {
+		this.schema = schema.limit(size);
+		this.size = size;
+	}
+	
+	/**
+	 * Return the list of attributes contained in this relation; the list
+	 * cannot be modified
 	 * 
 	 * @return the attributes
 	 */
 	public List<Attribute> getAttributes() {
-		return attributes;
+		return getSchema().getAttributes();
 	}
 	
+	/**
+	 * Return the schema of this relation
+	 * 
+	 * @return the schema
+	 */
+	public Schema getSchema() {
+		Schema schema = this.schema;
+		if (schema == null) {
+			// relations in the catalogue are shared between threads, which
+			// may each build an equal schema here
+			schema = new Schema(attributes);
+			this.schema = schema;
+		}
+		return schema;
+	}
 	
 	/**
 	 * Get an attribute from this relation, using another attribute as
@@ -41,7 +67,8 @@ public class Relation {
 	 * @return
 	 */
 	public Attribute getAttribute(Attribute attribute) {
-		return this.attributes.get(this.attributes.indexOf(attribute));
+		Schema schema = getSchema();
+		return schema.getAttributes().get(schema.indexOf(attribute));
 	}
 
 	/**
@@ -52,11 +79,15 @@ public class Relation {
 	 * @param attribute the attribute to add
 	 */
 	public void addAttribute(Attribute attribute) {
+		if (attributes == null) {
+			attributes = new ArrayList<Attribute>(schema.getAttributes());
+		}
+		schema = null;
 		if (attribute.getValueCount() > this.size) {
 			// If the attribute has more distinct values than there are tuples
 			// in this relation, limit the distinct values to the number of
 			// tuples
-			this.attributes.add(new Attribute(attribute.getName(), this.size));
+			this.attributes.add(new Attribute(attribute, this.size));
 		} else {
 			this.attributes.add(attribute);	
 		}
@@ -67,11 +98,31 @@ public class Relation {
 	 * 
 	 * @return the tuples
 	 */
-	public int getTupleCount() {
+	public long getTupleCount() {
 		return size;
 	}
 	
 	
+	/**
+	 * Convert an estimated number of tuples or distinct values to a count.
+	 * Estimates are computed in floating point so that products of large
+	 * relations cannot overflow; they are rounded down (as integer division
+	 * would), and limited to the range 0 to Long.MAX_VALUE.
+	 * 
+	 * @param estimate the estimate
+	 * @return the count
+	 */
+	public static long count(double estimate) {
+		if (!(estimate > 0)) {
+			// also catches NaN, e.g. from 0 * infinity
+			return 0;
+		}
+		if (estimate >= Long.MAX_VALUE) {
+			return Long.MAX_VALUE;
+		}
+		return (long) Math.floor(estimate);
+	}
+	
 	/**
 	 * Render this relation and its statistics in a form suitable for debugging 
 	 * (i.e. the syntax used in the system catalogue)
@@ -82,11 +133,11 @@ public class Relation {
 	 * @return the rendering of this relation
 	 */
 	public String render() {
-		String ret = size + "";
-		Iterator<Attribute> iter = this.attributes.iterator();
-		while (iter.hasNext()) {
-			ret += ":" + iter.next().render();
+		StringBuilder ret = new StringBuilder();
+		ret.append(size);
+		for (Attribute attribute : getAttributes()) {
+			ret.append(':').append(attribute.render());
 		}
-		return ret;
+		return ret.toString();
 	}
 }
@@ -3,6 +3,14 @@
  */
 package sjdb;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author nmg
@@ -11,29 +19,338 @@ import java.io.*;
 public class SJDB {
 
 	/**
+	 * Usage:
+	 *
+	 * SJDB <catalogue>                   plan one query read from stdin
+	 * SJDB <catalogue> -batch            plan every query read from stdin
+	 * SJDB <catalogue> -dir <directory>  plan every .txt query file in a directory
+	 * SJDB <catalogue> -save <snapshot>  write a binary snapshot of the catalogue
+	 *
+	 * With -data <directory>, each optimised plan is also executed against
+	 * the tuples in the directory (see Database), and the number of tuples
+	 * produced by each operator is printed next to its estimate. With
+	 * -vectorised as well, the plans are executed a batch of tuples at a time.
+	 * With -heap, the .csv files in the directory are first stored in heap
+	 * files, which are scanned a page at a time; with -columnar, they are
+	 * stored instead in column files (see ColumnFile), whose scans skip the
+	 * blocks and columns a query does not need. The page counts of the heap
+	 * files in the directory are recorded in the catalogue, and used by the
+	 * cost model. The pages of the heap files are cached in a buffer pool of
+	 * -pool <pages> frames (BufferPool.DEFAULT_FRAMES by default), which
+	 * evicts pages by -eviction clock or -eviction lru-k; its hits, misses
+	 * and evictions are printed at the end.
+	 * With -analyse as well, the statistics in the catalogue are replaced by
+	 * statistics computed from the tuples in the directory (see Analyser),
+	 * on -threads <n> threads, before the queries are planned or the
+	 * catalogue is saved.
+	 * With -memory <tuples>, the joins are planned and executed as though
+	 * each could hold only that many tuples in memory (see JoinMethod).
+	 *
+	 * The catalogue may be a text catalogue or a binary snapshot; snapshots
+	 * are read lazily, so they open in about the same time whatever their size.
+	 *
+	 * In the batch modes the catalogue is loaded once, the queries are planned
+	 * by a single optimiser, and the throughput is reported at the end. With
+	 * -threads <n> the catalogue is loaded and the queries are planned on
+	 * n threads; the plans are still printed in the order of the queries.
+	 *
 	 * @param args
 	 */
 	public static void main(String[] args) throws Exception {
-		// read serialised catalogue from file and parse
+		if (args.length == 0) {
+			usage();
+			return;
+		}
+
 		String catFile = args[0];
-		Catalogue cat = new Catalogue();
-		CatalogueParser catParser = new CatalogueParser(catFile, cat);
-		catParser.parse();
+		boolean batch = false;
+		String dir = null;
+		String save = null;
+		String dataDir = null;
+		boolean vectorised = false;
+		boolean heap = false;
+		boolean columnar = false;
+		boolean analyse = false;
+		int frames = BufferPool.DEFAULT_FRAMES;
+		String eviction = "clock";
+		long memory = Optimiser.DEFAULT_MEMORY_BUDGET;
+		int threads = 1;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-batch")) {
+				batch = true;
+			} else if (args[i].equals("-dir") && i + 1 < args.length) {
+				dir = args[++i];
+			} else if (args[i].equals("-save") && i + 1 < args.length) {
+				save = args[++i];
+			} else if (args[i].equals("-data") && i + 1 < args.length) {
+				dataDir = args[++i];
+			} else if (args[i].equals("-vectorised")) {
+				vectorised = true;
+			} else if (args[i].equals("-heap")) {
+				heap = true;
+			} else if (args[i].equals("-columnar")) {
+				columnar = true;
+			} else if (args[i].equals("-analyse")) {
+				analyse = true;
+			} else if (args[i].equals("-pool") && i + 1 < args.length) {
+				frames = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-eviction") && i + 1 < args.length
+					&& (args[i + 1].equals("clock") || args[i + 1].equals("lru-k"))) {
+				eviction = args[++i];
+			} else if (args[i].equals("-memory") && i + 1 < args.length) {
+				memory = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else {
+				usage();
+				return;
+			}
+		}
+
+		Database data = null;
+		if (dataDir != null) {
+			EvictionPolicy policy = eviction.equals("clock") ? new ClockPolicy() : new LruKPolicy();
+			data = new Database(new File(dataDir), new BufferPool(frames, policy));
+		}
+
+		// open a snapshot, or read serialised catalogue from file and load it
+		Catalogue cat;
+		if (CatalogueSnapshot.isSnapshot(new File(catFile))) {
+			cat = new Catalogue(CatalogueSnapshot.open(new File(catFile)));
+		} else {
+			cat = new Catalogue();
+			CatalogueLoader catLoader = new CatalogueLoader(new File(catFile), cat);
+			catLoader.setThreads(threads);
+			catLoader.load();
+		}
 		
-		// read stdin, parse, and build canonical query plan
-		QueryParser queryParser = new QueryParser(cat, new InputStreamReader(System.in));
-		Operator plan = queryParser.parse();
-				
-		// create estimator visitor and apply it to canonical plan
+		// store the relations in heap or column files if asked to, and record their page counts
+		if (data != null) {
+			if (heap) {
+				data.storeAll(cat);
+			}
+			if (columnar) {
+				data.storeAllColumns(cat);
+			}
+			data.updatePageCounts(cat);
+			if (analyse) {
+				Analyser analyser = new Analyser(data);
+				analyser.setThreads(threads);
+				long start = System.nanoTime();
+				int analysed = analyser.analyseAll(cat);
+				System.out.println(String.format("-- analysed %d relations in %.1f ms", analysed,
+						(System.nanoTime() - start) / 1e6));
+			}
+		}
+		
+		if (save != null) {
+			cat.writeSnapshot(new File(save));
+			if (data != null) {
+				data.close();
+			}
+			return;
+		}
+
+		// one optimiser is shared by all the queries
+		Optimiser opt = new Optimiser(cat, Optimiser.DEFAULT_GREEDY_THRESHOLD, memory);
+		List<String> names = new ArrayList<String>();
+		List<String> queries = new ArrayList<String>();
+
+		if (dir != null) {
+			readQueryFiles(new File(dir), new File(catFile), names, queries);
+			batch(cat, opt, data, vectorised, names, queries, threads);
+		} else if (batch) {
+			readQueries(new BufferedReader(new InputStreamReader(System.in)), names, queries);
+			batch(cat, opt, data, vectorised, names, queries, threads);
+		} else {
+			// read stdin, parse, and build canonical query plan
+			QueryParser queryParser = new QueryParser(cat, new InputStreamReader(System.in));
+			Operator plan = queryParser.parse();
+
+			plan(opt, plan, data, vectorised, System.out);
+		}
+
+		if (data != null && data.getBufferPool().getHits() + data.getBufferPool().getMisses() > 0) {
+			System.out.println("-- buffer pool: " + data.getBufferPool().render());
+		}
+		if (data != null) {
+			data.close();
+		}
+	}
+
+	private static void usage() {
+		System.err.println("usage: SJDB <catalogue> [-batch | -dir <directory> | -save <snapshot>] [-data <directory> [-heap | -columnar] [-analyse] [-pool <pages>] [-eviction clock|lru-k] [-vectorised]] [-memory <tuples>] [-threads <n>]");
+	}
+
+	/**
+	 * Estimate, cost and print a canonical query plan, then optimise it
+	 * and estimate, cost and print the optimised plan, and execute it if
+	 * there is a database
+	 * @param opt
+	 * @param plan
+	 * @param data Tuples to execute the plan against, or null
+	 * @param vectorised Whether to execute the plan a batch at a time
+	 * @param out
+	 */
+	private static void plan(Optimiser opt, Operator plan, Database data, boolean vectorised, PrintStream out)
+			throws DatabaseException {
+		// create estimator and cost model visitors and apply them to canonical plan
 		Estimator est = new Estimator();
-		Inspector insp = new Inspector();
+		CostModel costs = opt.getCostModel();
+		Inspector insp = new Inspector(out);
 		plan.accept(est);
+		plan.accept(costs);
 		plan.accept(insp);
-		
+
 		// create optimised plan
-		Optimiser opt = new Optimiser(cat);
 		Operator optPlan = opt.optimise(plan);
 		optPlan.accept(est);
+		optPlan.accept(costs);
 		optPlan.accept(insp);
+
+		if (data != null) {
+			Executor exec = new Executor(data, vectorised);
+			exec.setMemoryBudget(opt.getMemoryBudget());
+			PhysicalOperator physPlan = exec.build(optPlan);
+			exec.execute(physPlan);
+			Executor.report(physPlan, out);
+		}
+	}
+
+	/**
+	 * Plan a list of queries against a catalogue that has already been
+	 * loaded, and report the throughput
+	 * @param cat
+	 * @param opt Optimiser shared by all the threads
+	 * @param data Tuples to execute the plans against, or null
+	 * @param vectorised Whether to execute the plans a batch at a time
+	 * @param names Names of the queries, used to label the output
+	 * @param queries Query texts
+	 * @param threads Number of threads to plan the queries on
+	 */
+	private static void batch(final Catalogue cat, final Optimiser opt, final Database data, final boolean vectorised,
+			List<String> names, List<String> queries, int threads) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		int failed = 0;
+		long start = System.nanoTime();
+
+		for (final String query : queries) {
+			results.add(executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					ByteArrayOutputStream buf = new ByteArrayOutputStream();
+					PrintStream out = new PrintStream(buf);
+					// QueryParser reads the keywords in upper case
+					String text = query.trim();
+					if (!isSelect(text) || !text.startsWith("SELECT")) {
+						throw new IllegalArgumentException("Query must start with a SELECT line, not: "
+								+ text.split("\n", 2)[0]);
+					}
+					QueryParser queryParser = new QueryParser(cat, new StringReader(query));
+					plan(opt, queryParser.parse(), data, vectorised, out);
+					out.flush();
+					return buf.toString();
+				}
+			}));
+		}
+
+		for (int i = 0; i < queries.size(); i++) {
+			System.out.println("-- " + names.get(i));
+			try {
+				System.out.print(results.get(i).get());
+			} catch (ExecutionException e) {
+				// report the failure and carry on with the next query
+				System.out.println("error: " + e.getCause());
+				failed++;
+			}
+		}
+		executor.shutdown();
+
+		double ms = (System.nanoTime() - start) / 1e6;
+		System.out.println("-- " + queries.size() + " queries (" + failed + " failed) in "
+				+ String.format("%.1f", ms) + " ms, "
+				+ String.format("%.1f", queries.size() / (ms / 1000)) + " queries/s");
+	}
+
+	/**
+	 * Split a stream into queries; each query starts with a SELECT line and
+	 * runs up to the next one. Lines are trimmed, blank lines are ignored,
+	 * and any text before the first SELECT line is kept as a query of its
+	 * own, so that it is reported as failing rather than lost
+	 * @param reader
+	 * @param names
+	 * @param queries
+	 * @throws IOException
+	 */
+	private static void readQueries(BufferedReader reader, List<String> names, List<String> queries) throws IOException {
+		StringBuilder query = null;
+		String line;
+
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+			if (query == null || isSelect(line)) {
+				if (query != null) {
+					queries.add(query.toString());
+				}
+				query = new StringBuilder();
+				names.add("query " + (names.size() + 1));
+			}
+			query.append(line).append('\n');
+		}
+
+		if (query != null) {
+			queries.add(query.toString());
+		}
+	}
+
+	/**
+	 * Return whether a line is a SELECT line, in any case
+	 * @param line Trimmed line
+	 * @return
+	 */
+	private static boolean isSelect(String line) {
+		return line.regionMatches(true, 0, "SELECT", 0, 6)
+				&& (line.length() == 6 || Character.isWhitespace(line.charAt(6)));
+	}
+
+	/**
+	 * Read each .txt file in a directory as one query, in name order,
+	 * skipping the catalogue file if it is in the same directory
+	 * @param dir
+	 * @param catFile
+	 * @param names
+	 * @param queries
+	 * @throws IOException
+	 */
+	private static void readQueryFiles(File dir, File catFile, List<String> names, List<String> queries) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			throw new FileNotFoundException(dir.toString());
+		}
+		Arrays.sort(files);
+
+		for (File file : files) {
+			if (!file.isFile() || !file.getName().endsWith(".txt")
+					|| file.getCanonicalFile().equals(catFile.getCanonicalFile())) {
+				continue;
+			}
+
+			StringBuilder query = new StringBuilder();
+			BufferedReader reader = new BufferedReader(new FileReader(file));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					query.append(line).append('\n');
+				}
+			} finally {
+				reader.close();
+			}
+
+			names.add(file.getName());
+			queries.add(query.toString());
+		}
 	}
 }
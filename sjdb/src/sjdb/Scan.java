@@ -1,7 +1,6 @@
 package sjdb;
 
 import java.util.List;
-import java.util.Iterator;
 
 /**
  * This class implements a Scan operator that feeds a NamedRelation into
@@ -20,12 +19,7 @@ public class Scan extends Operator {
 	 */
 	public Scan(NamedRelation relation) {
 		this.relation = relation;
-		this.output = new Relation(relation.getTupleCount());
-		Iterator<Attribute> iter = relation.getAttributes().iterator();
-		
-		while (iter.hasNext()) {
-			this.output.addAttribute(new Attribute(iter.next()));
-		}
+		this.output = new Relation(relation.getTupleCount(), relation.getSchema());
 	}
 
 	/* (non-Javadoc)
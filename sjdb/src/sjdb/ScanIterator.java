@@ -0,0 +1,180 @@
+package sjdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This class executes a Scan, producing the tuples of a named relation
+ * held in a Database. A relation stored in a HeapFile is read a page at
+ * a time, by a sequential scan of the file, which keeps the page it is
+ * reading pinned in the buffer pool until it moves on or is closed.
+ *
+ * A relation stored in ColumnFiles is read a block at a time, skipping
+ * the blocks ruled out by the filters and reading only the columns set
+ * (see ColumnScan).
+ */
+public class ScanIterator extends PhysicalOperator implements ColumnScan {
+	private final NamedRelation relation;
+	private final Database database;
+	private final List<Predicate> filters = new ArrayList<Predicate>();
+	private boolean[] read; //the columns to read, or null to read them all
+	private Iterator<Tuple> tuples; //the tuples held in memory, if the relation has no heap file or column files
+	private HeapFile.Scanner scanner;
+	private ColumnFile[] columns;
+	private int block; //the next block of the column files
+	private int row; //the next tuple of the current block
+	private int end; //the end of the current block
+	private long blocksRead;
+	private long blocksSkipped;
+
+	/**
+	 * Create a new scan iterator
+	 * @param op Scan to execute
+	 * @param database Database that holds the tuples
+	 */
+	public ScanIterator(Scan op, Database database) {
+		super(op, op.getRelation().getSchema());
+		this.relation = (NamedRelation) op.getRelation();
+		this.database = database;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.ColumnScan#addFilter(sjdb.Predicate)
+	 */
+	@Override
+	public void addFilter(Predicate predicate) {
+		if (predicate.comparesValue()) {
+			filters.add(predicate);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.ColumnScan#setColumns(java.util.Collection)
+	 */
+	@Override
+	public void setColumns(Collection<Attribute> attributes) {
+		read = new boolean[getSchema().size()];
+		for (Attribute attr : attributes) {
+			read[position(getSchema(), attr)] = true;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#open()
+	 */
+	@Override
+	public void open() throws DatabaseException {
+		super.open();
+		columns = database.getColumnFiles(relation);
+		if (columns != null) {
+			block = 0;
+			row = 0;
+			end = 0;
+			return;
+		}
+		HeapFile heap = database.getHeapFile(relation);
+		if (heap != null) {
+			scanner = heap.scan();
+		} else {
+			tuples = database.getTuples(relation).iterator();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#fetch()
+	 */
+	@Override
+	protected Tuple fetch() {
+		if (columns != null) {
+			return fetchColumns();
+		}
+		if (scanner != null) {
+			try {
+				return scanner.next();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return tuples.hasNext() ? tuples.next() : null;
+	}
+
+	/**
+	 * produces the next tuple from the column files
+	 */
+	private Tuple fetchColumns() {
+		while (row == end) {
+			if (block == columns[0].getBlockCount()) {
+				return null;
+			}
+			row = block * ColumnFile.BLOCK_ROWS;
+			end = Math.min(row + ColumnFile.BLOCK_ROWS, columns[0].getRows());
+			if (ColumnFile.mayMatch(columns, getSchema(), block, filters)) {
+				blocksRead++;
+			} else {
+				blocksSkipped++;
+				row = end;
+			}
+			block++;
+		}
+
+		String[] values = new String[columns.length];
+		for (int c = 0; c < columns.length; c++) {
+			if (read == null || read[c]) {
+				values[c] = columns[c].getValue(row);
+			}
+		}
+		row++;
+		return new Tuple(values);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#close()
+	 */
+	@Override
+	public void close() {
+		tuples = null;
+		columns = null;
+		if (scanner != null) {
+			try {
+				scanner.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				scanner = null;
+			}
+		}
+		super.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		if (blocksRead + blocksSkipped == 0) {
+			return "SCAN " + relation;
+		}
+		return "SCAN " + relation + " [" + describeColumns(read) + ", " + blocksRead + " blocks read, "
+				+ blocksSkipped + " skipped]";
+	}
+
+	/**
+	 * Describe the columns read by a scan of column files
+	 * @param read The columns read, or null if they all are
+	 * @return
+	 */
+	static String describeColumns(boolean[] read) {
+		if (read == null) {
+			return "all columns";
+		}
+		int n = 0;
+		for (boolean r : read) {
+			n += r ? 1 : 0;
+		}
+		return n + " of " + read.length + " columns";
+	}
+}
@@ -0,0 +1,200 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents the schema of a relation: an ordered list of
+ * attributes, with their value counts, and an index from attribute names
+ * to their positions.
+ *
+ * A schema cannot be modified once it has been created, so relations
+ * can share it; operators whose output has the same attributes as their
+ * input (or the attributes of two inputs, or a subset of them) reuse the
+ * input schemas rather than copying every attribute. Operations that
+ * change value counts return a new schema, and return this schema if
+ * nothing changes.
+ */
+public class Schema {
+	/**
+	 * The schema with no attributes
+	 */
+	public static final Schema EMPTY = new Schema(Collections.<Attribute>emptyList());
+
+	private final List<Attribute> attributes;
+	private volatile Map<String, Integer> index; //built on the first lookup
+
+	/**
+	 * Create a new schema with the given attributes
+	 * @param attributes Attributes, in order; the list is copied
+	 */
+	public Schema(List<Attribute> attributes) {
+		this(attributes.toArray(new Attribute[attributes.size()]));
+	}
+
+	private Schema(Attribute[] attributes) {
+		this.attributes = Collections.unmodifiableList(Arrays.asList(attributes));
+	}
+
+	/**
+	 * creates a schema with the same names in the same positions as
+	 * another, so that it can share the other's index
+	 */
+	private Schema(Attribute[] attributes, Schema names) {
+		this(attributes);
+		this.index = names.index;
+	}
+
+	/**
+	 * Return the attributes of this schema; the list cannot be modified
+	 * @return
+	 */
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Return the number of attributes in this schema
+	 * @return
+	 */
+	public int size() {
+		return attributes.size();
+	}
+
+	/**
+	 * Return the position of the attribute with the same name as the
+	 * given attribute, or -1 if there is none
+	 * @param attribute
+	 * @return
+	 */
+	public int indexOf(Attribute attribute) {
+		return indexOf(attribute.getName());
+	}
+
+	/**
+	 * Return the position of the attribute with the given name, or -1 if
+	 * there is none
+	 * @param name
+	 * @return
+	 */
+	public int indexOf(String name) {
+		Integer i = index().get(name);
+		return (i == null) ? -1 : i;
+	}
+
+	/**
+	 * Return true if this schema has an attribute with the same name as
+	 * the given attribute
+	 * @param attribute
+	 * @return
+	 */
+	public boolean contains(Attribute attribute) {
+		return index().containsKey(attribute.getName());
+	}
+
+	/**
+	 * Return a schema in which no attribute has more distinct values than
+	 * the given tuple count
+	 * @param size Tuple count
+	 * @return
+	 */
+	public Schema limit(long size) {
+		Attribute[] limited = null;
+		for (int i = 0; i < attributes.size(); i++) {
+			Attribute a = attributes.get(i);
+			if (a.getValueCount() > size) {
+				if (limited == null) {
+					limited = attributes.toArray(new Attribute[attributes.size()]);
+				}
+				limited[i] = new Attribute(a, size);
+			}
+		}
+		return (limited == null) ? this : new Schema(limited, this);
+	}
+
+	/**
+	 * Return a schema in which the given attributes replace the attributes
+	 * of the same name; attributes not in this schema are ignored
+	 * @param replacements
+	 * @return
+	 */
+	public Schema replace(Attribute... replacements) {
+		Attribute[] replaced = attributes.toArray(new Attribute[attributes.size()]);
+		for (Attribute r : replacements) {
+			int i = indexOf(r);
+			if (i >= 0) {
+				replaced[i] = r;
+			}
+		}
+		return new Schema(replaced, this);
+	}
+
+	/**
+	 * Return a schema with the attributes of this schema followed by
+	 * those of another
+	 * @param other
+	 * @return
+	 */
+	public Schema concat(Schema other) {
+		if (other.size() == 0) {
+			return this;
+		}
+		if (size() == 0) {
+			return other;
+		}
+		Attribute[] both = new Attribute[size() + other.size()];
+		for (int i = 0; i < size(); i++) {
+			both[i] = attributes.get(i);
+		}
+		for (int i = 0; i < other.size(); i++) {
+			both[size() + i] = other.attributes.get(i);
+		}
+		return new Schema(both);
+	}
+
+	/**
+	 * Return a schema with only the attributes of this schema that have
+	 * the same names as the given attributes, in the order they are given;
+	 * a name given more than once is kept the first time
+	 * @param names Attributes to keep
+	 * @return
+	 */
+	public Schema project(List<Attribute> names) {
+		boolean[] keep = new boolean[size()];
+		List<Attribute> projected = new ArrayList<Attribute>(names.size());
+		boolean same = true; //whether the attributes kept are all of those of this schema, in order
+		for (Attribute a : names) {
+			int i = indexOf(a);
+			if (i >= 0 && !keep[i]) {
+				keep[i] = true;
+				same &= (i == projected.size());
+				projected.add(attributes.get(i));
+			}
+		}
+		if (same && projected.size() == size()) {
+			return this;
+		}
+		return new Schema(projected);
+	}
+
+	/**
+	 * builds the name index, keeping the first position of any repeated
+	 * name; a race only means that two threads build equal maps, and the
+	 * volatile field publishes them safely
+	 */
+	private Map<String, Integer> index() {
+		Map<String, Integer> map = index;
+		if (map == null) {
+			map = new HashMap<String, Integer>(attributes.size() * 2);
+			for (int i = 0; i < attributes.size(); i++) {
+				map.putIfAbsent(attributes.get(i).getName(), i);
+			}
+			index = map;
+		}
+		return map;
+	}
+}
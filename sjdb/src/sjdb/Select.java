@@ -9,6 +9,7 @@ package sjdb;
  */
 public class Select extends UnaryOperator {
 	private Predicate predicate;
+	private boolean indexed; //chosen by the optimiser
 	
 	/**
 	 * @param input
@@ -22,6 +23,24 @@ public class Select extends UnaryOperator {
 		return this.predicate;
 	}
 	
+	/**
+	 * Return true if this select is executed by looking up its predicate
+	 * in the index on its attribute, rather than by scanning its input
+	 * (which is then a Scan)
+	 * @return
+	 */
+	public boolean isIndexed() {
+		return this.indexed;
+	}
+	
+	/**
+	 * Set whether this select is executed by an index scan
+	 * @param indexed
+	 */
+	public void setIndexed(boolean indexed) {
+		this.indexed = indexed;
+	}
+	
 	public void accept(PlanVisitor visitor) {
 		super.accept(visitor);
 		visitor.visit(this);
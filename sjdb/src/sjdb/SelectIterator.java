@@ -0,0 +1,49 @@
+package sjdb;
+
+/**
+ * This class executes a Select, producing the input tuples that satisfy
+ * its predicate.
+ */
+public class SelectIterator extends PhysicalOperator {
+	private final PhysicalOperator input;
+	private final Predicate predicate;
+	private final int left; //position of the left attribute
+	private final int right; //position of the right attribute, or -1 if the predicate compares with values
+
+	/**
+	 * Create a new select iterator
+	 * @param op Select to execute
+	 * @param input Iterator over the input of the select
+	 */
+	public SelectIterator(Select op, PhysicalOperator input) {
+		super(op, input.getSchema(), input);
+		this.input = input;
+		this.predicate = op.getPredicate();
+		this.left = position(input.getSchema(), predicate.getLeftAttribute());
+		this.right = predicate.comparesValue() ? -1 : position(input.getSchema(), predicate.getRightAttribute());
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#fetch()
+	 */
+	@Override
+	protected Tuple fetch() {
+		Tuple t;
+		while ((t = input.next()) != null) {
+			boolean match = (right < 0) ? predicate.matches(t.get(left))
+					: ValueComparator.INSTANCE.compare(t.get(left), t.get(right)) == 0;
+			if (match) {
+				return t;
+			}
+		}
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SELECT [" + predicate + "]";
+	}
+}
@@ -0,0 +1,165 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class executes a Join by sorting both inputs on their join
+ * attributes when the iterator is opened, and merging them: each group of
+ * left tuples with the same value is paired with the group of right tuples
+ * with that value.
+ *
+ * The inputs are sorted by the keys of ValueComparator.key() in
+ * ValueComparator.KEY_ORDER, a total order in which equal values are
+ * adjacent.
+ */
+public class SortMergeJoinIterator extends PhysicalOperator {
+	private final PhysicalOperator left;
+	private final PhysicalOperator right;
+	private final Predicate predicate;
+	private final int leftKey; //position of the join attribute in the left input
+	private final int rightKey; //position of the join attribute in the right input
+
+	private List<Keyed> lefts;
+	private List<Keyed> rights;
+	private int l; //start of the next left group
+	private int r; //start of the next right group
+	private int groupEnd; //end of the current left group
+	private int rightStart; //the current right group
+	private int rightEnd;
+	private int i; //the left tuple being paired in the current group
+	private int j; //the right tuple to pair it with next
+
+	/**
+	 * Create a new sort-merge join iterator
+	 * @param op Join to execute
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input
+	 */
+	public SortMergeJoinIterator(Join op, PhysicalOperator left, PhysicalOperator right) {
+		super(op, left.getSchema().concat(right.getSchema()), left, right);
+		this.left = left;
+		this.right = right;
+		this.predicate = op.getPredicate();
+
+		int[] keys = joinPositions(predicate, left.getSchema(), right.getSchema());
+		this.leftKey = keys[0];
+		this.rightKey = keys[1];
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#open()
+	 */
+	@Override
+	public void open() throws DatabaseException {
+		super.open();
+		lefts = sort(left, leftKey);
+		rights = sort(right, rightKey);
+		l = 0;
+		r = 0;
+		i = groupEnd = 0;
+		j = rightStart = rightEnd = 0;
+	}
+
+	/**
+	 * reads an input and sorts it on its join attribute
+	 */
+	private static List<Keyed> sort(PhysicalOperator input, int key) {
+		List<Keyed> tuples = new ArrayList<Keyed>();
+		Tuple t;
+		while ((t = input.next()) != null) {
+			tuples.add(new Keyed(ValueComparator.key(t.get(key)), t));
+		}
+		Collections.sort(tuples, new Comparator<Keyed>() {
+			public int compare(Keyed a, Keyed b) {
+				return ValueComparator.KEY_ORDER.compare(a.key, b.key);
+			}
+		});
+		return tuples;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#fetch()
+	 */
+	@Override
+	protected Tuple fetch() {
+		while (true) {
+			if (i < groupEnd) {
+				// pairing the current groups
+				Tuple t = lefts.get(i).tuple.concat(rights.get(j).tuple);
+				if (++j == rightEnd) {
+					j = rightStart;
+					i++;
+				}
+				return t;
+			}
+
+			// find the next pair of groups with equal keys
+			while (l < lefts.size() && r < rights.size()) {
+				int c = ValueComparator.KEY_ORDER.compare(lefts.get(l).key, rights.get(r).key);
+				if (c < 0) {
+					l++;
+				} else if (c > 0) {
+					r++;
+				} else {
+					break;
+				}
+			}
+			if (l == lefts.size() || r == rights.size()) {
+				return null;
+			}
+
+			Object key = lefts.get(l).key;
+			i = l;
+			groupEnd = end(lefts, l, key);
+			j = rightStart = r;
+			rightEnd = end(rights, r, key);
+			l = groupEnd;
+			r = rightEnd;
+		}
+	}
+
+	/**
+	 * returns the end of the group of tuples with the given key
+	 */
+	private static int end(List<Keyed> tuples, int start, Object key) {
+		int end = start + 1;
+		while (end < tuples.size() && ValueComparator.KEY_ORDER.compare(tuples.get(end).key, key) == 0) {
+			end++;
+		}
+		return end;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PhysicalOperator#close()
+	 */
+	@Override
+	public void close() {
+		lefts = null;
+		rights = null;
+		super.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SORT-MERGE JOIN [" + predicate + "]";
+	}
+
+	/**
+	 * A tuple with the key of its join attribute
+	 */
+	private static class Keyed {
+		private final Object key;
+		private final Tuple tuple;
+
+		private Keyed(Object key, Tuple tuple) {
+			this.key = key;
+			this.tuple = tuple;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package sjdb;
+
+import java.util.Arrays;
+
+/**
+ * This class represents a tuple of a relation during query execution:
+ * a list of values, in the order of the attributes of the schema of the
+ * operator that produced it. Values are strings, and are compared with
+ * ValueComparator.
+ *
+ * A tuple cannot be modified once it has been created, so operators pass
+ * tuples on, and keep them, without copying them.
+ */
+public class Tuple {
+	private final String[] values;
+
+	/**
+	 * Create a new tuple
+	 * @param values Values, in the order of the schema; the array is not copied
+	 */
+	public Tuple(String... values) {
+		this.values = values;
+	}
+
+	/**
+	 * Return the number of values in this tuple
+	 * @return
+	 */
+	public int size() {
+		return values.length;
+	}
+
+	/**
+	 * Return the value at a position in this tuple
+	 * @param i
+	 * @return
+	 */
+	public String get(int i) {
+		return values[i];
+	}
+
+	/**
+	 * Return a tuple with the values of this tuple followed by those of
+	 * another
+	 * @param other
+	 * @return
+	 */
+	public Tuple concat(Tuple other) {
+		String[] both = Arrays.copyOf(values, values.length + other.values.length);
+		System.arraycopy(other.values, 0, both, values.length, other.values.length);
+		return new Tuple(both);
+	}
+
+	/**
+	 * Return a tuple with the values at the given positions of this tuple
+	 * @param positions
+	 * @return
+	 */
+	public Tuple project(int[] positions) {
+		String[] projected = new String[positions.length];
+		for (int i = 0; i < positions.length; i++) {
+			projected[i] = values[positions[i]];
+		}
+		return new Tuple(projected);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(values);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return (obj instanceof Tuple) && Arrays.equals(values, ((Tuple) obj).values);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder ret = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				ret.append(',');
+			}
+			ret.append(values[i]);
+		}
+		return ret.toString();
+	}
+}
@@ -0,0 +1,75 @@
+package sjdb;
+
+import java.util.Comparator;
+
+/**
+ * This class orders attribute values, which are held as strings: two
+ * values that are both numbers are compared numerically, and any other
+ * values are compared as strings.
+ */
+public class ValueComparator implements Comparator<String> {
+	/**
+	 * The comparator; it has no state, so it is shared
+	 */
+	public static final ValueComparator INSTANCE = new ValueComparator();
+
+	/**
+	 * Orders the keys returned by key(): numbers in numeric order, then
+	 * other values as strings. This is a total order in which equal values
+	 * are adjacent, which INSTANCE is not, as it does not order numbers and
+	 * other values consistently.
+	 */
+	public static final Comparator<Object> KEY_ORDER = new Comparator<Object>() {
+		public int compare(Object a, Object b) {
+			if (a instanceof Double) {
+				return (b instanceof Double) ? Double.compare((Double) a, (Double) b) : -1;
+			}
+			return (b instanceof Double) ? 1 : ((String) a).compareTo((String) b);
+		}
+	};
+
+	private ValueComparator() {
+		// use INSTANCE
+	}
+
+	@Override
+	public int compare(String a, String b) {
+		Double x = toNumber(a);
+		Double y = toNumber(b);
+		if (x != null && y != null) {
+			return Double.compare(x, y);
+		}
+		return a.compareTo(b);
+	}
+
+	/**
+	 * Return a key for a value, for hashing and sorting: values that are
+	 * equal have equal keys. The key is a Double for numbers, and the value itself
+	 * for other values.
+	 * @param value
+	 * @return
+	 */
+	public static Object key(String value) {
+		Double number = toNumber(value);
+		return (number != null) ? number : value;
+	}
+
+	/**
+	 * returns the value as a number, or null if it isn't one
+	 */
+	private static Double toNumber(String value) {
+		if (value.isEmpty()) {
+			return null;
+		}
+		char c = value.charAt(0);
+		if (!(Character.isDigit(c) || c == '-' || c == '+' || c == '.')) {
+			// cheap test to avoid an exception for most strings
+			return null;
+		}
+		try {
+			return Double.valueOf(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package sjdb;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class encodes attribute values as ints, for vectorised execution.
+ * Values that are equal according to ValueComparator (such as "1" and
+ * "1.0") have the same code, so equality tests and hashing can use the
+ * codes alone; a code decodes to the first spelling of its value that
+ * was encoded.
+ *
+ * Values may be decoded from several threads while others are encoded.
+ */
+public class ValueDictionary {
+	private final Map<Object, Integer> codes = new HashMap<Object, Integer>(); //keyed by ValueComparator.key()
+	private volatile String[] values = new String[1024];
+	private volatile int size;
+
+	/**
+	 * Return the code of a value, giving it the next code if it has none
+	 * @param value
+	 * @return
+	 */
+	public synchronized int encode(String value) {
+		Object key = ValueComparator.key(value);
+		Integer code = codes.get(key);
+		if (code == null) {
+			code = size;
+			if (code == values.length) {
+				values = Arrays.copyOf(values, code * 2);
+			}
+			values[code] = value;
+			codes.put(key, code);
+			size = code + 1;
+		}
+		return code;
+	}
+
+	/**
+	 * Return the value with the given code
+	 * @param code
+	 * @return
+	 */
+	public String decode(int code) {
+		return values[code];
+	}
+
+	/**
+	 * Return the number of codes given so far
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+}
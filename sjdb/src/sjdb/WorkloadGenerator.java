@@ -0,0 +1,281 @@
+package sjdb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class generates synthetic workloads: a serialised catalogue in the
+ * format read by CatalogueParser, and queries over it in the format read
+ * by QueryParser.
+ *
+ * Relation i is called Ri and has the attributes ri_0, ri_1, ... . The
+ * first attribute is a key (one distinct value per tuple), and the value
+ * counts of the others are drawn from the chosen distribution. The queries
+ * join every relation, with predicates of the form ri_1=rj_0 laid out in
+ * one of the following shapes:
+ *
+ * - chain:  R0 - R1 - R2 - ... - Rn-1
+ * - star:   R0 joined to every other relation
+ * - cycle:  a chain with Rn-1 joined back to R0
+ * - clique: every relation joined to every other relation
+ *
+ * Each query also selects on an attribute of R0 and projects an attribute
+ * of the first and last relations. The generator can also write tuples
+ * that match the catalogue, in the data files read by Database: the key
+ * of Ri takes the values 0 to n-1, and the values of each other attribute
+ * are drawn uniformly from 0 to its value count - 1. The same seed always
+ * produces the same workload.
+ *
+ * Usage: WorkloadGenerator <directory> <relations> <shape>[,<shape>...]
+ *            [-seed <n>] [-tuples <min> <max>] [-attributes <n>] [-values uniform|loguniform] [-data]
+ *
+ * This writes <directory>/cat.txt and one <directory>/<shape>.txt per shape,
+ * and with -data one <directory>/Ri.csv per relation.
+ */
+public class WorkloadGenerator {
+	public enum Shape { CHAIN, STAR, CYCLE, CLIQUE }
+
+	/**
+	 * How the value counts of the non-key attributes are drawn: uniformly
+	 * between 1 and the tuple count, or uniformly on a log scale (so that
+	 * most attributes have few distinct values)
+	 */
+	public enum Values { UNIFORM, LOGUNIFORM }
+
+	private int relations;
+	private int minTuples = 10;
+	private int maxTuples = 1000;
+	private int attributes = 3;
+	private Values values = Values.UNIFORM;
+	private long seed = 0;
+
+	/**
+	 * Create a generator for a workload over the given number of relations
+	 * @param relations
+	 */
+	public WorkloadGenerator(int relations) {
+		this.relations = relations;
+	}
+
+	/**
+	 * Set the seed for the random tuple and value counts
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Set the range of tuple counts of the relations
+	 * @param min
+	 * @param max
+	 */
+	public void setTuples(int min, int max) {
+		this.minTuples = min;
+		this.maxTuples = max;
+	}
+
+	/**
+	 * Set the number of attributes per relation (at least 2: a key and a
+	 * join attribute)
+	 * @param attributes
+	 */
+	public void setAttributes(int attributes) {
+		this.attributes = Math.max(attributes, 2);
+	}
+
+	/**
+	 * Set the distribution of the value counts of the non-key attributes
+	 * @param values
+	 */
+	public void setValues(Values values) {
+		this.values = values;
+	}
+
+	/**
+	 * Write the catalogue
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeCatalogue(File file) throws IOException {
+		long[][] counts = counts();
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			for (int i = 0; i < relations; i++) {
+				StringBuilder line = new StringBuilder("R" + i + ":" + counts[i][0]);
+				for (int j = 0; j < attributes; j++) {
+					line.append(":" + attribute(i, j) + "," + counts[i][j]);
+				}
+				out.println(line);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write tuples that match the catalogue, one file per relation
+	 * @param dir
+	 * @throws IOException
+	 */
+	public void writeData(File dir) throws IOException {
+		long[][] counts = counts();
+		Random random = new Random(seed + 1);
+		for (int i = 0; i < relations; i++) {
+			PrintWriter out = new PrintWriter(new FileWriter(new File(dir, "R" + i + ".csv")));
+			try {
+				StringBuilder line = new StringBuilder();
+				for (long t = 0; t < counts[i][0]; t++) {
+					line.setLength(0);
+					line.append(t);
+					for (int j = 1; j < attributes; j++) {
+						line.append(',').append((long) (random.nextDouble() * counts[i][j]));
+					}
+					out.println(line);
+				}
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * returns the tuple count of each relation followed by the value counts
+	 * of its other attributes (the key's value count is the tuple count)
+	 */
+	private long[][] counts() {
+		Random random = new Random(seed);
+		long[][] counts = new long[relations][attributes];
+		for (int i = 0; i < relations; i++) {
+			int tuples = minTuples + random.nextInt(maxTuples - minTuples + 1);
+			counts[i][0] = tuples;
+			for (int j = 1; j < attributes; j++) {
+				counts[i][j] = valueCount(random, tuples);
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Write a query of the given shape
+	 * @param file
+	 * @param shape
+	 * @throws IOException
+	 */
+	public void writeQuery(File file, Shape shape) throws IOException {
+		List<String> names = new ArrayList<String>();
+		List<String> predicates = new ArrayList<String>();
+
+		for (int i = 0; i < relations; i++) {
+			names.add("R" + i);
+		}
+
+		switch (shape) {
+		case CHAIN:
+		case CYCLE:
+			for (int i = 1; i < relations; i++) {
+				predicates.add(attribute(i - 1, 1) + "=" + attribute(i, 0));
+			}
+			if (shape == Shape.CYCLE && relations > 2) {
+				predicates.add(attribute(relations - 1, 1) + "=" + attribute(0, 0));
+			}
+			break;
+		case STAR:
+			for (int i = 1; i < relations; i++) {
+				predicates.add(attribute(0, 1) + "=" + attribute(i, 0));
+			}
+			break;
+		case CLIQUE:
+			for (int i = 0; i < relations; i++) {
+				for (int j = i + 1; j < relations; j++) {
+					predicates.add(attribute(i, 1) + "=" + attribute(j, 0));
+				}
+			}
+			break;
+		}
+
+		int last = attributes - 1;
+		if (attributes > 2) {
+			predicates.add(attribute(0, last) + "=\"1\"");
+		}
+
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.println("SELECT " + attribute(0, last) + (relations > 1 ? "," + attribute(relations - 1, last) : ""));
+			out.println("FROM " + join(names));
+			if (!predicates.isEmpty()) {
+				out.println("WHERE " + join(predicates));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private long valueCount(Random random, int tuples) {
+		switch (values) {
+		case LOGUNIFORM:
+			return Math.max(1, Math.round(Math.pow(tuples, random.nextDouble())));
+		default:
+			return 1 + random.nextInt(tuples);
+		}
+	}
+
+	private static String attribute(int relation, int attribute) {
+		return "r" + relation + "_" + attribute;
+	}
+
+	private static String join(List<String> parts) {
+		StringBuilder b = new StringBuilder();
+		for (String part : parts) {
+			if (b.length() > 0) {
+				b.append(",");
+			}
+			b.append(part);
+		}
+		return b.toString();
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("usage: WorkloadGenerator <directory> <relations> <shape>[,<shape>...]"
+					+ " [-seed <n>] [-tuples <min> <max>] [-attributes <n>] [-values uniform|loguniform] [-data]");
+			return;
+		}
+
+		File dir = new File(args[0]);
+		int relations = Integer.parseInt(args[1]);
+		String[] shapes = args[2].split(",");
+		WorkloadGenerator generator = new WorkloadGenerator(relations);
+		boolean data = false;
+
+		for (int i = 3; i < args.length; i++) {
+			if (args[i].equals("-seed")) {
+				generator.setSeed(Long.parseLong(args[++i]));
+			} else if (args[i].equals("-tuples")) {
+				generator.setTuples(Integer.parseInt(args[++i]), Integer.parseInt(args[++i]));
+			} else if (args[i].equals("-attributes")) {
+				generator.setAttributes(Integer.parseInt(args[++i]));
+			} else if (args[i].equals("-values")) {
+				generator.setValues(Values.valueOf(args[++i].toUpperCase()));
+			} else if (args[i].equals("-data")) {
+				data = true;
+			} else {
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		dir.mkdirs();
+		generator.writeCatalogue(new File(dir, "cat.txt"));
+		for (String shape : shapes) {
+			generator.writeQuery(new File(dir, shape.toLowerCase() + ".txt"), Shape.valueOf(shape.toUpperCase()));
+		}
+		if (data) {
+			generator.writeData(dir);
+		}
+	}
+}